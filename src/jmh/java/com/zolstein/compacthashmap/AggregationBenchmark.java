@@ -0,0 +1,78 @@
+package com.zolstein.compacthashmap;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Read-modify-write operations on a populated map: counting with merge,
+ * memoizing with computeIfAbsent, and getOrDefault.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class AggregationBenchmark {
+
+  private static final int ORDER_LENGTH = 1 << 16;
+  private static final Integer ONE = 1;
+
+  @Param({"compact", "hashmap"})
+  public String impl;
+
+  @Param({"100", "10000", "100000"})
+  public int size;
+
+  private Map<Long, Integer> map;
+  private Long[] keys;
+  private int[] order;
+  private int cursor;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    keys = MapBenchmark.genKeys(0, size);
+    order = MapBenchmark.genOrder(ORDER_LENGTH, size, 0x8765432101234567L);
+    map = MapBenchmark.newMap(impl);
+    for (Long key : keys) {
+      map.put(key, 0);
+    }
+  }
+
+  private Long nextKey() {
+    return keys[order[cursor++ & (ORDER_LENGTH - 1)]];
+  }
+
+  @Benchmark
+  public Integer mergeCount() {
+    // Values stay within the Integer cache, so the sum does not allocate
+    return map.merge(nextKey(), ONE, (a, b) -> (a + b) & 0x7F);
+  }
+
+  @Benchmark
+  public Integer computeIfAbsentHit() {
+    return map.computeIfAbsent(nextKey(), k -> ONE);
+  }
+
+  @Benchmark
+  public Integer computeIfPresent() {
+    return map.computeIfPresent(nextKey(), (k, v) -> (v + 1) & 0x7F);
+  }
+
+  @Benchmark
+  public Integer getOrDefault() {
+    return map.getOrDefault(nextKey(), ONE);
+  }
+}
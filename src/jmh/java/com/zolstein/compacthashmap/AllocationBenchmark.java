@@ -0,0 +1,120 @@
+package com.zolstein.compacthashmap;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Allocation per operation on the lookup, update and cursor paths. Run with
+ * the GC profiler and read gc.alloc.rate.norm, which should be ~0 B/op for
+ * everything except iterateEntries, the per-entry-allocating baseline for
+ * iterateCursor (whose only allocation is the cursor):
+ *
+ *   bin/benchmark AllocationBenchmark -prof gc
+ *
+ * Escape analysis is disabled in the forked JVM, so a result of zero means
+ * the paths allocate nothing, not that C2 happened to scalar-replace it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-XX:-DoEscapeAnalysis")
+public class AllocationBenchmark {
+
+  private static final int ORDER_LENGTH = 1 << 16;
+
+  @Param({"100", "100000"})
+  public int size;
+
+  private CompactHashMap<Long, String> map;
+  private Long[] hitKeys;
+  private Long[] missKeys;
+  private int[] order;
+  private int cursor;
+  private Set<Map.Entry<Long, String>> entries;
+  private Map.Entry<Long, String> entry;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    hitKeys = MapBenchmark.genKeys(0, size);
+    missKeys = MapBenchmark.genKeys(size, 2 * size);
+    order = MapBenchmark.genOrder(ORDER_LENGTH, size, 0x8765432101234567L);
+    map = new CompactHashMap<>();
+    for (Long key : hitKeys) {
+      map.put(key, "");
+    }
+    entries = map.entrySet();
+    entry = new SimpleImmutableEntry<>(hitKeys[0], "");
+  }
+
+  private int next() {
+    return order[cursor++ & (ORDER_LENGTH - 1)];
+  }
+
+  @Benchmark
+  public String getHit() {
+    return map.get(hitKeys[next()]);
+  }
+
+  @Benchmark
+  public String getMiss() {
+    return map.get(missKeys[next()]);
+  }
+
+  @Benchmark
+  public boolean containsKey() {
+    return map.containsKey(hitKeys[next()]);
+  }
+
+  @Benchmark
+  public String putExisting() {
+    return map.put(hitKeys[next()], "");
+  }
+
+  @Benchmark
+  public String removeAndReinsert() {
+    Long key = hitKeys[next()];
+    String value = map.remove(key);
+    map.put(key, value);
+    return value;
+  }
+
+  @Benchmark
+  public boolean entrySetContains() {
+    return entries.contains(entry);
+  }
+
+  @Benchmark
+  public int iterateEntries() {
+    int v = 0;
+    for (Map.Entry<Long, String> e : entries) {
+      v += e.getKey().hashCode() ^ e.getValue().length();
+    }
+    return v;
+  }
+
+  @Benchmark
+  public int iterateCursor() {
+    int v = 0;
+    MapCursor<Long, String> cursor = map.cursor();
+    while (cursor.advance()) {
+      v += cursor.key().hashCode() ^ cursor.value().length();
+    }
+    return v;
+  }
+}
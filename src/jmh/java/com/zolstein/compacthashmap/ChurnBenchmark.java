@@ -0,0 +1,62 @@
+package com.zolstein.compacthashmap;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Queue-like churn at a flat size: each operation inserts a new key and
+ * removes the oldest one. The index fills with DUMMY tombstones and is
+ * purged in place, so with the GC profiler the compact maps should show
+ * ~0 B/op (the JDK maps allocate a node per insert):
+ *
+ *   bin/benchmark ChurnBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ChurnBenchmark {
+
+  private static final int KEY_COUNT = 1 << 20;
+
+  @Param({"compact", "ordered", "hashmap", "linkedhashmap"})
+  public String impl;
+
+  @Param({"100", "10000"})
+  public int size;
+
+  private Map<Long, String> map;
+  private Long[] keys;
+  private int head;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    keys = MapBenchmark.genKeys(0, KEY_COUNT);
+    map = MapBenchmark.newMap(impl);
+    for (head = 0; head < size; head++) {
+      map.put(keys[head], "");
+    }
+  }
+
+  @Benchmark
+  public String insertAndRemoveOldest() {
+    map.put(keys[head & (KEY_COUNT - 1)], "");
+    String removed = map.remove(keys[(head - size) & (KEY_COUNT - 1)]);
+    head++;
+    return removed;
+  }
+}
@@ -0,0 +1,83 @@
+package com.zolstein.compacthashmap;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Multi-threaded throughput of the thread-safe maps. Run with -t to change
+ * the thread count, e.g. `bin/benchmark ConcurrentMapBenchmark -t 32`.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(4)
+public class ConcurrentMapBenchmark {
+
+  @Param({"concurrentcompact", "synchronizedcompact", "concurrenthashmap"})
+  public String impl;
+
+  @Param({"1000", "100000"})
+  public int size;
+
+  private Map<Long, Long> map;
+  private Long[] keys;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    keys = MapBenchmark.genKeys(0, size);
+    switch (impl) {
+      case "concurrentcompact":
+        map = new ConcurrentCompactHashMap<>();
+        break;
+      case "synchronizedcompact":
+        map = Collections.synchronizedMap(new CompactHashMap<>());
+        break;
+      case "concurrenthashmap":
+        map = new ConcurrentHashMap<>();
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown map implementation: " + impl);
+    }
+    for (Long key : keys) {
+      map.put(key, 0L);
+    }
+  }
+
+  private Long randomKey() {
+    return keys[ThreadLocalRandom.current().nextInt(size)];
+  }
+
+  @Benchmark
+  public Long get() {
+    return map.get(randomKey());
+  }
+
+  @Benchmark
+  public Long put() {
+    return map.put(randomKey(), 1L);
+  }
+
+  @Benchmark
+  public Long merge() {
+    return map.merge(randomKey(), 1L, Long::sum);
+  }
+}
@@ -0,0 +1,89 @@
+package com.zolstein.compacthashmap;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Heap and direct memory retained by a map of size entries, reported as the
+ * heapBytes and offHeapBytes secondary results; the primary score is the
+ * build time including the forced GCs and is not meant to be compared.
+ * Key and value objects are shared across runs and are not counted. The
+ * fork uses ParallelGC, whose used-heap figure after a full GC is exact;
+ * SerialGC, the default on a single CPU, under-reports it.
+ *
+ * Run with -prof gc for the allocation and GC time of building the map;
+ * MapBenchmark -p impl=offheap covers operation throughput.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "-XX:+UseParallelGC"})
+public class FootprintBenchmark {
+
+  @Param({"compact", "offheap", "hashmap"})
+  public String impl;
+
+  @Param({"1000000"})
+  public int size;
+
+  private Long[] keys;
+  private Map<Long, String> map;
+
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class Footprint {
+    public long heapBytes;
+    public long offHeapBytes;
+  }
+
+  @Setup(Level.Trial)
+  public void setup() {
+    keys = MapBenchmark.genKeys(0, size);
+  }
+
+  @TearDown(Level.Iteration)
+  public void release() throws Exception {
+    MapBenchmark.close(map);
+    map = null;
+  }
+
+  @Benchmark
+  public Map<Long, String> build(Footprint footprint) {
+    long before = usedHeap();
+    map = MapBenchmark.newMap(impl);
+    for (Long key : keys) {
+      map.put(key, "");
+    }
+    footprint.heapBytes = usedHeap() - before;
+    if (map instanceof OffHeapCompactHashMap) {
+      footprint.offHeapBytes = ((OffHeapCompactHashMap<Long, String>) map).offHeapBytes();
+    }
+    return map;
+  }
+
+  static long usedHeap() {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+}
@@ -0,0 +1,92 @@
+package com.zolstein.compacthashmap;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Lookup throughput of a frozen map against the mutable map it was frozen
+ * from and an unmodifiable HashMap.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class FrozenMapBenchmark {
+
+  private static final int ORDER_LENGTH = 1 << 16;
+
+  @Param({"frozen", "compact", "hashmap"})
+  public String impl;
+
+  @Param({"10", "100", "1000", "10000", "100000"})
+  public int size;
+
+  private Map<Long, String> map;
+  private Long[] hitKeys;
+  private Long[] missKeys;
+  private int[] order;
+  private int cursor;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    hitKeys = MapBenchmark.genKeys(0, size);
+    missKeys = MapBenchmark.genKeys(size, 2 * size);
+    order = MapBenchmark.genOrder(ORDER_LENGTH, size, 0x8765432101234567L);
+    CompactHashMap<Long, String> source = new CompactHashMap<>();
+    for (Long key : hitKeys) {
+      source.put(key, "");
+    }
+    switch (impl) {
+      case "frozen":
+        map = source.freeze();
+        break;
+      case "compact":
+        map = source;
+        break;
+      case "hashmap":
+        map = Collections.unmodifiableMap(new HashMap<>(source));
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown map implementation: " + impl);
+    }
+  }
+
+  private int next() {
+    return order[cursor++ & (ORDER_LENGTH - 1)];
+  }
+
+  @Benchmark
+  public String getHit() {
+    return map.get(hitKeys[next()]);
+  }
+
+  @Benchmark
+  public String getMiss() {
+    return map.get(missKeys[next()]);
+  }
+
+  @Benchmark
+  public FrozenCompactHashMap<Long, String> freeze() {
+    CompactHashMap<Long, String> source = new CompactHashMap<>();
+    for (Long key : hitKeys) {
+      source.put(key, "");
+    }
+    return source.freeze();
+  }
+}
@@ -0,0 +1,89 @@
+package com.zolstein.compacthashmap;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * String keys as they might arrive from the network: distinct random ones,
+ * or a flood of "Aa"/"BB" strings that all share one hashCode. The plain
+ * compact map degrades to a linear scan per operation on the flood; the
+ * hardened one moves the flooded keys to a tree, as HashMap treeifies its
+ * bins. The random keys show what hardening costs when nobody attacks.
+ *
+ * buildMap draws a new seed for every hardened map, so unlike the others it
+ * does not replay the same probe sequence each invocation, which branch
+ * predictors learn; getHit is the steady-state comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class HashFloodBenchmark {
+
+  private static final int ORDER_LENGTH = 1 << 16;
+  // 2^12 colliding keys
+  private static final int BITS = 12;
+
+  @Param({"compact", "hardened", "hashmap"})
+  public String impl;
+
+  @Param({"random", "colliding"})
+  public String keyType;
+
+  private Map<String, String> map;
+  private String[] keys;
+  private int[] order;
+  private int cursor;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    int size = 1 << BITS;
+    keys = new String[size];
+    Random random = new Random(0x5DEECE66DL);
+    for (int n = 0; n < size; n++) {
+      if (keyType.equals("colliding")) {
+        StringBuilder sb = new StringBuilder();
+        for (int b = 0; b < BITS; b++) {
+          sb.append((n >>> b & 1) == 0 ? "Aa" : "BB");
+        }
+        keys[n] = sb.toString();
+      } else {
+        keys[n] = Long.toHexString(random.nextLong());
+      }
+    }
+    order = MapBenchmark.genOrder(ORDER_LENGTH, size, 0x8765432101234567L);
+    map = MapBenchmark.newMap(impl);
+    for (String key : keys) {
+      map.put(key, "");
+    }
+  }
+
+  @Benchmark
+  public String getHit() {
+    return map.get(keys[order[cursor++ & (ORDER_LENGTH - 1)]]);
+  }
+
+  @Benchmark
+  public Map<String, String> buildMap() {
+    Map<String, String> map = MapBenchmark.newMap(impl);
+    for (String key : keys) {
+      map.put(key, "");
+    }
+    return map;
+  }
+}
@@ -0,0 +1,75 @@
+package com.zolstein.compacthashmap;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * byte[] keys looked up by content: a CompactHashMap with
+ * HashingStrategy.BYTE_ARRAY against maps keyed by ByteBuffer holders,
+ * which wrap every queried array in a new object. Run with -prof gc to see
+ * the holder allocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class HashingStrategyBenchmark {
+
+  private static final int ORDER_LENGTH = 1 << 16;
+  private static final int KEY_LENGTH = 16;
+
+  @Param({"strategy", "wrappedcompact", "wrappedhashmap"})
+  public String impl;
+
+  @Param({"100", "100000"})
+  public int size;
+
+  private CompactHashMap<byte[], String> strategyMap;
+  private Map<ByteBuffer, String> wrappedMap;
+  // Copies of the stored keys, so that lookups cannot match by reference
+  private byte[][] queries;
+  private int[] order;
+  private int cursor;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    Random random = new Random(0x8765432101234567L);
+    strategyMap = new CompactHashMap<>(HashingStrategy.BYTE_ARRAY);
+    wrappedMap = impl.equals("wrappedhashmap") ? new HashMap<>() : new CompactHashMap<>();
+    queries = new byte[size][];
+    for (int i = 0; i < size; i++) {
+      byte[] key = new byte[KEY_LENGTH];
+      random.nextBytes(key);
+      strategyMap.put(key, "");
+      wrappedMap.put(ByteBuffer.wrap(key), "");
+      queries[i] = key.clone();
+    }
+    order = MapBenchmark.genOrder(ORDER_LENGTH, size, 0x8765432101234567L);
+  }
+
+  @Benchmark
+  public String getHit() {
+    byte[] key = queries[order[cursor++ & (ORDER_LENGTH - 1)]];
+    if (impl.equals("strategy")) {
+      return strategyMap.get(key);
+    }
+    return wrappedMap.get(ByteBuffer.wrap(key));
+  }
+}
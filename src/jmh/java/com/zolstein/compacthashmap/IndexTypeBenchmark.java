@@ -0,0 +1,94 @@
+package com.zolstein.compacthashmap;
+
+import com.zolstein.compacthashmap.CompactHashMap.IndexType;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Lookups through each CompactHashMap index engine. "string" keys are long
+ * Strings with a shared prefix, so every key comparison the index cannot
+ * rule out is expensive.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class IndexTypeBenchmark {
+
+  private static final int ORDER_LENGTH = 1 << 16;
+  private static final String PREFIX = new String(new char[64]).replace('\0', 'k');
+
+  @Param({"PERTURBATION", "SWISS", "FINGERPRINT"})
+  public IndexType indexType;
+
+  @Param({"long", "string"})
+  public String keyType;
+
+  @Param({"100", "100000"})
+  public int size;
+
+  private CompactHashMap<Object, String> map;
+  private Object[] hitKeys;
+  private Object[] missKeys;
+  private int[] order;
+  private int cursor;
+
+  private Object[] keys(int from, int to) {
+    Long[] longs = MapBenchmark.genKeys(from, to);
+    if (keyType.equals("long")) {
+      return longs;
+    }
+    Object[] strings = new Object[longs.length];
+    for (int i = 0; i < longs.length; i++) {
+      strings[i] = PREFIX + longs[i];
+    }
+    return strings;
+  }
+
+  @Setup(Level.Trial)
+  public void setup() {
+    hitKeys = keys(0, size);
+    missKeys = keys(size, 2 * size);
+    order = MapBenchmark.genOrder(ORDER_LENGTH, size, 0x8765432101234567L);
+    map = new CompactHashMap<>();
+    map.setIndexType(indexType);
+    for (Object key : hitKeys) {
+      map.put(key, "");
+    }
+  }
+
+  private int next() {
+    return order[cursor++ & (ORDER_LENGTH - 1)];
+  }
+
+  @Benchmark
+  public String getHit() {
+    return map.get(hitKeys[next()]);
+  }
+
+  @Benchmark
+  public String getMiss() {
+    return map.get(missKeys[next()]);
+  }
+
+  @Benchmark
+  public String removeAndReinsert() {
+    Object key = hitKeys[next()];
+    String value = map.remove(key);
+    map.put(key, value);
+    return value;
+  }
+}
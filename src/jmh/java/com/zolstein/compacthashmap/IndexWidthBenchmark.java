@@ -0,0 +1,85 @@
+package com.zolstein.compacthashmap;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Lookup throughput on either side of each index width change. Built by
+ * put, a map keeps byte slots up to 42 entries (64-slot index), short slots
+ * from 43 to 10922 entries, and int slots from 10923 entries on. Covers
+ * CompactHashMap and, through the long-keyed probe loops, LongLongCompactHashMap.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class IndexWidthBenchmark {
+
+  private static final int ORDER_LENGTH = 1 << 16;
+
+  @Param({"42", "43", "10922", "10923"})
+  public int size;
+
+  private CompactHashMap<Long, String> map;
+  private LongLongCompactHashMap longMap;
+  private Long[] hitKeys;
+  private Long[] missKeys;
+  private long[] primitiveHitKeys;
+  private long[] primitiveMissKeys;
+  private int[] order;
+  private int cursor;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    hitKeys = MapBenchmark.genKeys(0, size);
+    missKeys = MapBenchmark.genKeys(size, 2 * size);
+    order = MapBenchmark.genOrder(ORDER_LENGTH, size, 0x8765432101234567L);
+    primitiveHitKeys = new long[size];
+    primitiveMissKeys = new long[size];
+    map = new CompactHashMap<>();
+    longMap = new LongLongCompactHashMap();
+    for (int i = 0; i < size; i++) {
+      primitiveHitKeys[i] = hitKeys[i];
+      primitiveMissKeys[i] = missKeys[i];
+      map.put(hitKeys[i], "");
+      longMap.put(hitKeys[i], i);
+    }
+  }
+
+  private int next() {
+    return order[cursor++ & (ORDER_LENGTH - 1)];
+  }
+
+  @Benchmark
+  public String getHit() {
+    return map.get(hitKeys[next()]);
+  }
+
+  @Benchmark
+  public String getMiss() {
+    return map.get(missKeys[next()]);
+  }
+
+  @Benchmark
+  public long getHitLongLong() {
+    return longMap.get(primitiveHitKeys[next()]);
+  }
+
+  @Benchmark
+  public long getMissLongLong() {
+    return longMap.get(primitiveMissKeys[next()]);
+  }
+}
@@ -0,0 +1,86 @@
+package com.zolstein.compacthashmap;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * LongObjectCompactHashMap counterpart of MapBenchmark's lookup and update
+ * benchmarks, using the same keys so results compare directly with the
+ * boxed "compact" runs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class LongObjectMapBenchmark {
+
+  private static final int ORDER_LENGTH = 1 << 16;
+
+  @Param({"10", "100", "1000", "10000", "100000"})
+  public int size;
+
+  private LongObjectCompactHashMap<String> map;
+  private long[] hitKeys;
+  private long[] missKeys;
+  private int[] order;
+  private int cursor;
+
+  private static long[] unbox(Long[] keys) {
+    long[] ret = new long[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      ret[i] = keys[i];
+    }
+    return ret;
+  }
+
+  @Setup(Level.Trial)
+  public void setup() {
+    hitKeys = unbox(MapBenchmark.genKeys(0, size));
+    missKeys = unbox(MapBenchmark.genKeys(size, 2 * size));
+    order = MapBenchmark.genOrder(ORDER_LENGTH, size, 0x8765432101234567L);
+    map = new LongObjectCompactHashMap<>();
+    for (long key : hitKeys) {
+      map.put(key, "");
+    }
+  }
+
+  private int next() {
+    return order[cursor++ & (ORDER_LENGTH - 1)];
+  }
+
+  @Benchmark
+  public String getHit() {
+    return map.get(hitKeys[next()]);
+  }
+
+  @Benchmark
+  public String getMiss() {
+    return map.get(missKeys[next()]);
+  }
+
+  @Benchmark
+  public String putExisting() {
+    return map.put(hitKeys[next()], "");
+  }
+
+  @Benchmark
+  public String removeAndReinsert() {
+    long key = hitKeys[next()];
+    String old = map.remove(key);
+    map.put(key, "");
+    return old;
+  }
+}
@@ -0,0 +1,86 @@
+package com.zolstein.compacthashmap;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Read-through cache traffic against CompactLruCache and an access-ordered
+ * LinkedHashMap with removeEldestEntry. Keys are drawn from twice the cache
+ * size, so roughly half of the lookups miss and evict.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class LruCacheBenchmark {
+
+  private static final int ORDER_LENGTH = 1 << 16;
+
+  @Param({"100", "10000"})
+  public int size;
+
+  private CompactLruCache<Long, String> cache;
+  private Map<Long, String> linkedMap;
+  private Long[] keys;
+  private int[] order;
+  private int cursor;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    keys = MapBenchmark.genKeys(0, 2 * size);
+    order = MapBenchmark.genOrder(ORDER_LENGTH, 2 * size, 0x8765432101234567L);
+    int maxSize = size;
+    cache = new CompactLruCache<>(maxSize);
+    linkedMap = new LinkedHashMap<Long, String>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+        return size() > maxSize;
+      }
+    };
+    for (int i = 0; i < size; i++) {
+      cache.put(keys[i], "");
+      linkedMap.put(keys[i], "");
+    }
+  }
+
+  private Long next() {
+    return keys[order[cursor++ & (ORDER_LENGTH - 1)]];
+  }
+
+  @Benchmark
+  public String compact() {
+    Long key = next();
+    String value = cache.get(key);
+    if (value == null) {
+      value = "";
+      cache.put(key, value);
+    }
+    return value;
+  }
+
+  @Benchmark
+  public String linkedHashMap() {
+    Long key = next();
+    String value = linkedMap.get(key);
+    if (value == null) {
+      value = "";
+      linkedMap.put(key, value);
+    }
+    return value;
+  }
+}
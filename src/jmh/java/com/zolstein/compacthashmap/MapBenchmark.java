@@ -0,0 +1,228 @@
+package com.zolstein.compacthashmap;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * Throughput benchmarks for the common Map operations, run against
+ * CompactHashMap and the JDK maps it is meant to replace. "ordered" is an
+ * insertion-ordered CompactHashMap, the counterpart of "linkedhashmap".
+ *
+ * Sizes match the tiny/small/medium/large/huge presets of the old
+ * hand-rolled benchmark. Keys are generated the same way (Random seeded with
+ * the key's position) so results stay comparable with older .bench files.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MapBenchmark {
+
+  private static final int ORDER_LENGTH = 1 << 16;
+
+  @Param({"compact", "ordered", "hashmap", "linkedhashmap"})
+  public String impl;
+
+  @Param({"10", "100", "1000", "10000", "100000"})
+  public int size;
+
+  private Map<Long, String> map;
+  private Long[] hitKeys;
+  private Long[] missKeys;
+  private int[] order;
+  private int cursor;
+
+  static <K, V> Map<K, V> newMap(String impl) {
+    switch (impl) {
+      case "compact":
+        return new CompactHashMap<>();
+      case "ordered":
+        return new CompactHashMap<>(0, true);
+      case "hardened":
+        CompactHashMap<K, V> hardened = new CompactHashMap<>();
+        hardened.setHardened(true);
+        return hardened;
+      case "hashmap":
+        return new HashMap<>();
+      case "linkedhashmap":
+        return new LinkedHashMap<>();
+      case "offheap":
+        // Not in the default matrix; callers must close() it, see Built
+        return new OffHeapCompactHashMap<>();
+    }
+    throw new IllegalArgumentException("Unknown map implementation: " + impl);
+  }
+
+  static <K, V> Map<K, V> newMap(String impl, int capacity) {
+    switch (impl) {
+      case "compact":
+        return new CompactHashMap<>(capacity);
+      case "ordered":
+        return new CompactHashMap<>(capacity, true);
+      case "hashmap":
+        return new HashMap<>(capacity * 4 / 3 + 1);
+      case "linkedhashmap":
+        return new LinkedHashMap<>(capacity * 4 / 3 + 1);
+    }
+    return newMap(impl);
+  }
+
+  static Long[] genKeys(int from, int to) {
+    Random random = new Random();
+    Long[] keys = new Long[to - from];
+    for (int i = from; i < to; i++) {
+      random.setSeed(i);
+      keys[i - from] = random.nextLong(); // Generates reasonable "hash" value
+    }
+    return keys;
+  }
+
+  static int[] genOrder(int length, int bound, long seed) {
+    Random random = new Random(seed);
+    int[] order = new int[length];
+    for (int i = 0; i < length; i++) {
+      order[i] = random.nextInt(bound);
+    }
+    return order;
+  }
+
+  /*
+   * Holds the map a build benchmark made so it can be released after the
+   * invocation, outside the timed region. An off-heap map is closed rather
+   * than left for GC, which would let direct memory pile up across
+   * invocations and skew the results.
+   */
+  @State(Scope.Thread)
+  public static class Built {
+
+    Map<Long, String> map;
+
+    @TearDown(Level.Invocation)
+    public void release() throws Exception {
+      close(map);
+      map = null;
+    }
+  }
+
+  static void close(Map<?, ?> map) throws Exception {
+    if (map instanceof AutoCloseable) {
+      ((AutoCloseable) map).close();
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setup() {
+    hitKeys = genKeys(0, size);
+    missKeys = genKeys(size, 2 * size);
+    order = genOrder(ORDER_LENGTH, size, 0x8765432101234567L);
+    map = newMap(impl);
+    for (Long key : hitKeys) {
+      map.put(key, "");
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    close(map);
+  }
+
+  private int next() {
+    return order[cursor++ & (ORDER_LENGTH - 1)];
+  }
+
+  @Benchmark
+  public String getHit() {
+    return map.get(hitKeys[next()]);
+  }
+
+  @Benchmark
+  public String getMiss() {
+    return map.get(missKeys[next()]);
+  }
+
+  @Benchmark
+  public String putExisting() {
+    return map.put(hitKeys[next()], "");
+  }
+
+  @Benchmark
+  public String removeAndReinsert() {
+    Long key = hitKeys[next()];
+    String old = map.remove(key);
+    map.put(key, "");
+    return old;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(10)
+  public void putNewAndRemove(Blackhole bh) {
+    // Alternates between inserting a missing key and removing it again, so
+    // the map stays at its nominal size while exercising both paths.
+    for (int i = 0; i < 5; i++) {
+      Long key = missKeys[next()];
+      bh.consume(map.put(key, ""));
+      bh.consume(map.remove(key));
+    }
+  }
+
+  @Benchmark
+  public Map<Long, String> build(Built built) {
+    Map<Long, String> map = built.map = newMap(impl);
+    for (Long key : hitKeys) {
+      map.put(key, "");
+    }
+    return map;
+  }
+
+  @Benchmark
+  public Map<Long, String> buildPresized(Built built) {
+    Map<Long, String> map = built.map = newMap(impl, size);
+    for (Long key : hitKeys) {
+      map.put(key, "");
+    }
+    return map;
+  }
+
+  @Benchmark
+  public int iterate() {
+    int v = 0;
+    for (Map.Entry<Long, String> entry : map.entrySet()) {
+      v += entry.hashCode();
+    }
+    return v;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(5)
+  public void mixed(Blackhole bh) {
+    // Two lookups (one hit, one miss), one overwrite and a remove/reinsert
+    // of the same key, approximating the old benchmark's modify loop.
+    int n = next();
+    bh.consume(map.get(hitKeys[n]));
+    bh.consume(map.get(missKeys[n]));
+    bh.consume(map.put(hitKeys[next()], ""));
+    Long key = hitKeys[next()];
+    bh.consume(map.remove(key));
+    map.put(key, "");
+  }
+}
@@ -0,0 +1,83 @@
+package com.zolstein.compacthashmap;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Cost of making a long->long table available after a restart: reopening a
+ * mapped file versus rebuilding an in-memory map, plus lookup throughput of
+ * the mapped map once open.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MappedMapBenchmark {
+
+  private static final int ORDER_LENGTH = 1 << 16;
+
+  @Param({"1000", "100000", "1000000"})
+  public int size;
+
+  private Path path;
+  private MappedCompactHashMap map;
+  private int[] order;
+  private int cursor;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    path = Files.createTempFile("mapped-benchmark", ".map");
+    try (MappedCompactHashMap source = MappedCompactHashMap.create(path, 8, 8)) {
+      for (long i = 0; i < size; i++) {
+        source.put(i * 0x9E3779B97F4A7C15L, i);
+      }
+    }
+    map = MappedCompactHashMap.open(path);
+    order = MapBenchmark.genOrder(ORDER_LENGTH, size, 0x8765432101234567L);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    map.close();
+    Files.deleteIfExists(path);
+  }
+
+  @Benchmark
+  public long reopen() throws IOException {
+    try (MappedCompactHashMap reopened = MappedCompactHashMap.open(path)) {
+      return reopened.get(0L, -1L);
+    }
+  }
+
+  @Benchmark
+  public LongLongCompactHashMap rebuild() {
+    LongLongCompactHashMap rebuilt = new LongLongCompactHashMap();
+    for (long i = 0; i < size; i++) {
+      rebuilt.put(i * 0x9E3779B97F4A7C15L, i);
+    }
+    return rebuilt;
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  public long getHit() {
+    return map.get(order[cursor++ & (ORDER_LENGTH - 1)] * 0x9E3779B97F4A7C15L, -1L);
+  }
+}
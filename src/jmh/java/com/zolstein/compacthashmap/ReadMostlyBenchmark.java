@@ -0,0 +1,103 @@
+package com.zolstein.compacthashmap;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * Read throughput of the thread-safe maps under a read-mostly load: either
+ * pure reads (run with e.g. -t 64), or a group of readers alongside a single
+ * writer that updates one key roughly every millisecond.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ReadMostlyBenchmark {
+
+  @Param({"copyonwrite", "concurrentcompact", "synchronizedcompact", "concurrenthashmap"})
+  public String impl;
+
+  @Param({"1000", "100000"})
+  public int size;
+
+  private Map<Long, Long> map;
+  private Long[] keys;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    keys = MapBenchmark.genKeys(0, size);
+    switch (impl) {
+      case "copyonwrite":
+        map = new CopyOnWriteCompactHashMap<>();
+        break;
+      case "concurrentcompact":
+        map = new ConcurrentCompactHashMap<>();
+        break;
+      case "synchronizedcompact":
+        map = Collections.synchronizedMap(new CompactHashMap<>());
+        break;
+      case "concurrenthashmap":
+        map = new ConcurrentHashMap<>();
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown map implementation: " + impl);
+    }
+    if (map instanceof CopyOnWriteCompactHashMap) {
+      ((CopyOnWriteCompactHashMap<Long, Long>) map).update(m -> {
+        for (Long key : keys) {
+          m.put(key, 0L);
+        }
+      });
+    } else {
+      for (Long key : keys) {
+        map.put(key, 0L);
+      }
+    }
+  }
+
+  private Long randomKey() {
+    return keys[ThreadLocalRandom.current().nextInt(size)];
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Long get() {
+    return map.get(randomKey());
+  }
+
+  @Benchmark
+  @Group("readWrite")
+  @GroupThreads(7)
+  public Long reader() {
+    return map.get(randomKey());
+  }
+
+  @Benchmark
+  @Group("readWrite")
+  @GroupThreads(1)
+  public Long writer() {
+    Blackhole.consumeCPU(1 << 20);
+    return map.put(randomKey(), 1L);
+  }
+}
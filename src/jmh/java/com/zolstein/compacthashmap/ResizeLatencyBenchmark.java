@@ -0,0 +1,63 @@
+package com.zolstein.compacthashmap;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Latency distribution of single puts into a growing map, with index
+ * resizes done in one step or incrementally. Read the p0.999, p0.9999 and
+ * p1.0 rows of the SampleTime output. The map is allocated afresh every
+ * size puts. Both modes still double the dense arrays with one copy each,
+ * which is the remaining tail in incremental mode:
+ *
+ *   bin/benchmark ResizeLatencyBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ResizeLatencyBenchmark {
+
+  @Param({"false", "true"})
+  public boolean incremental;
+
+  @Param({"1000000"})
+  public int size;
+
+  private CompactHashMap<Long, String> map;
+  private Long[] keys;
+  private int count;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    keys = MapBenchmark.genKeys(0, size);
+    reset();
+  }
+
+  private void reset() {
+    map = new CompactHashMap<>();
+    map.setIncrementalResize(incremental);
+    count = 0;
+  }
+
+  @Benchmark
+  public String put() {
+    if (count == size) {
+      reset();
+    }
+    return map.put(keys[count++], "");
+  }
+}
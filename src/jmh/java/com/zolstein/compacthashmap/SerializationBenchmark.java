@@ -0,0 +1,73 @@
+package com.zolstein.compacthashmap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Cold-start cost of loading a String->Long map: readFrom with and without a
+ * stored index, against decoding the same entries and re-running put.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SerializationBenchmark {
+
+  @Param({"1000", "100000", "1000000"})
+  public int size;
+
+  private byte[] withIndex;
+  private byte[] withoutIndex;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    CompactHashMap<String, Long> map = new CompactHashMap<>();
+    for (long i = 0; i < size; i++) {
+      map.put("key-" + i, i);
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    map.writeTo(bytes, Codec.STRING, Codec.LONG, true);
+    withIndex = bytes.toByteArray();
+    bytes.reset();
+    map.writeTo(bytes, Codec.STRING, Codec.LONG, false);
+    withoutIndex = bytes.toByteArray();
+  }
+
+  @Benchmark
+  public CompactHashMap<String, Long> readWithIndex() throws IOException {
+    return CompactHashMap.readFrom(new ByteArrayInputStream(withIndex), Codec.STRING, Codec.LONG);
+  }
+
+  @Benchmark
+  public CompactHashMap<String, Long> readWithoutIndex() throws IOException {
+    return CompactHashMap.readFrom(new ByteArrayInputStream(withoutIndex), Codec.STRING, Codec.LONG);
+  }
+
+  @Benchmark
+  public CompactHashMap<String, Long> readAndPut() throws IOException {
+    CompactHashMap<String, Long> loaded =
+        CompactHashMap.readFrom(new ByteArrayInputStream(withoutIndex), Codec.STRING, Codec.LONG);
+    CompactHashMap<String, Long> rebuilt = new CompactHashMap<>();
+    for (String key : loaded.keySet()) {
+      // Fresh strings, so hashCode is recomputed as a decoder would have to
+      rebuilt.put(new String(key), loaded.get(key));
+    }
+    return rebuilt;
+  }
+}
@@ -0,0 +1,111 @@
+package com.zolstein.compacthashmap;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Membership and bulk-operation benchmarks for CompactHashSet against the
+ * JDK sets. The bulk benchmarks copy the set first, so they include the cost
+ * of one addAll.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SetBenchmark {
+
+  private static final int ORDER_LENGTH = 1 << 16;
+
+  @Param({"compact", "hashset", "linkedhashset"})
+  public String impl;
+
+  @Param({"10", "100", "1000", "10000", "100000"})
+  public int size;
+
+  private Set<Long> set;
+  private Set<Long> other;
+  private Long[] hitKeys;
+  private Long[] missKeys;
+  private int[] order;
+  private int cursor;
+
+  static <E> Set<E> newSet(String impl) {
+    switch (impl) {
+      case "compact":
+        return new CompactHashSet<>();
+      case "hashset":
+        return new HashSet<>();
+      case "linkedhashset":
+        return new LinkedHashSet<>();
+    }
+    throw new IllegalArgumentException("Unknown set implementation: " + impl);
+  }
+
+  @Setup(Level.Trial)
+  public void setup() {
+    hitKeys = MapBenchmark.genKeys(0, size);
+    missKeys = MapBenchmark.genKeys(size, 2 * size);
+    order = MapBenchmark.genOrder(ORDER_LENGTH, size, 0x8765432101234567L);
+    set = newSet(impl);
+    other = newSet(impl);
+    for (int i = 0; i < size; i++) {
+      set.add(hitKeys[i]);
+      // Half of the other set overlaps with this one
+      other.add(i % 2 == 0 ? hitKeys[i] : missKeys[i]);
+    }
+  }
+
+  private int next() {
+    return order[cursor++ & (ORDER_LENGTH - 1)];
+  }
+
+  @Benchmark
+  public boolean containsHit() {
+    return set.contains(hitKeys[next()]);
+  }
+
+  @Benchmark
+  public boolean containsMiss() {
+    return set.contains(missKeys[next()]);
+  }
+
+  @Benchmark
+  public Set<Long> addAll() {
+    Set<Long> copy = newSet(impl);
+    copy.addAll(set);
+    copy.addAll(other);
+    return copy;
+  }
+
+  @Benchmark
+  public Set<Long> retainAll() {
+    Set<Long> copy = newSet(impl);
+    copy.addAll(set);
+    copy.retainAll(other);
+    return copy;
+  }
+
+  @Benchmark
+  public Set<Long> removeAll() {
+    Set<Long> copy = newSet(impl);
+    copy.addAll(set);
+    copy.removeAll(other);
+    return copy;
+  }
+}
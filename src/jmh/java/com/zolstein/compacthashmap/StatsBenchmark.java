@@ -0,0 +1,81 @@
+package com.zolstein.compacthashmap;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Cost of the live counters behind CompactHashMap.stats(), which should be
+ * lost in the noise while disabled, and of taking a snapshot.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class StatsBenchmark {
+
+  private static final int ORDER_LENGTH = 1 << 16;
+
+  @Param({"false", "true"})
+  public boolean statsEnabled;
+
+  @Param({"100", "100000"})
+  public int size;
+
+  private CompactHashMap<Long, String> map;
+  private Long[] hitKeys;
+  private Long[] missKeys;
+  private int[] order;
+  private int cursor;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    hitKeys = MapBenchmark.genKeys(0, size);
+    missKeys = MapBenchmark.genKeys(size, 2 * size);
+    order = MapBenchmark.genOrder(ORDER_LENGTH, size, 0x8765432101234567L);
+    map = new CompactHashMap<>();
+    map.setStatsEnabled(statsEnabled);
+    for (Long key : hitKeys) {
+      map.put(key, "");
+    }
+  }
+
+  private int next() {
+    return order[cursor++ & (ORDER_LENGTH - 1)];
+  }
+
+  @Benchmark
+  public String getHit() {
+    return map.get(hitKeys[next()]);
+  }
+
+  @Benchmark
+  public String getMiss() {
+    return map.get(missKeys[next()]);
+  }
+
+  @Benchmark
+  public String removeAndReinsert() {
+    Long key = hitKeys[next()];
+    String value = map.remove(key);
+    map.put(key, value);
+    return value;
+  }
+
+  @Benchmark
+  public CompactMapStats snapshot() {
+    return map.stats();
+  }
+}
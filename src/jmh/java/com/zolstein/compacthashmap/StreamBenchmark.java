@@ -0,0 +1,82 @@
+package com.zolstein.compacthashmap;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Whole-map traversal through sequential and parallel streams and forEach.
+ * parallelForEach runs only for the compact implementation.
+ *
+ * Run with -prof gc to compare allocation: entryParallelStream allocates an
+ * entry per element, while the key stream and parallelForEach allocate none.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class StreamBenchmark {
+
+  @Param({"compact", "hashmap"})
+  public String impl;
+
+  @Param({"10000", "1000000"})
+  public int size;
+
+  private Map<Long, Long> map;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    map = MapBenchmark.newMap(impl);
+    Long[] keys = MapBenchmark.genKeys(0, size);
+    for (Long key : keys) {
+      map.put(key, key);
+    }
+  }
+
+  @Benchmark
+  public long keyStream() {
+    return map.keySet().stream().mapToLong(Long::longValue).sum();
+  }
+
+  @Benchmark
+  public long keyParallelStream() {
+    return map.keySet().parallelStream().mapToLong(Long::longValue).sum();
+  }
+
+  @Benchmark
+  public long entryParallelStream() {
+    return map.entrySet().parallelStream().mapToLong(e -> e.getKey() ^ e.getValue()).sum();
+  }
+
+  @Benchmark
+  public long forEach() {
+    long[] sum = new long[1];
+    map.forEach((k, v) -> sum[0] += k ^ v);
+    return sum[0];
+  }
+
+  @Benchmark
+  public long parallelForEach() {
+    if (!(map instanceof CompactHashMap)) {
+      return 0;
+    }
+    LongAdder sum = new LongAdder();
+    ((CompactHashMap<Long, Long>) map).parallelForEach((k, v) -> sum.add(k ^ v));
+    return sum.sum();
+  }
+}
@@ -0,0 +1,65 @@
+package com.zolstein.compacthashmap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*
+ * Big-endian transfer of primitive arrays in fixed-size chunks, so a large
+ * array costs a few bulk writes instead of one stream call per element.
+ */
+final class BulkIO {
+
+  private static final int CHUNK_BYTES = 1 << 13;
+
+  private BulkIO() {}
+
+  static void writeShorts(DataOutput out, short[] src, int len) throws IOException {
+    byte[] chunk = new byte[CHUNK_BYTES];
+    ByteBuffer buffer = ByteBuffer.wrap(chunk);
+    for (int off = 0; off < len; ) {
+      int n = Math.min(len - off, CHUNK_BYTES / 2);
+      buffer.clear();
+      buffer.asShortBuffer().put(src, off, n);
+      out.write(chunk, 0, n * 2);
+      off += n;
+    }
+  }
+
+  static void readShorts(DataInput in, short[] dst, int len) throws IOException {
+    byte[] chunk = new byte[CHUNK_BYTES];
+    ByteBuffer buffer = ByteBuffer.wrap(chunk);
+    for (int off = 0; off < len; ) {
+      int n = Math.min(len - off, CHUNK_BYTES / 2);
+      in.readFully(chunk, 0, n * 2);
+      buffer.clear();
+      buffer.asShortBuffer().get(dst, off, n);
+      off += n;
+    }
+  }
+
+  static void writeInts(DataOutput out, int[] src, int len) throws IOException {
+    byte[] chunk = new byte[CHUNK_BYTES];
+    ByteBuffer buffer = ByteBuffer.wrap(chunk);
+    for (int off = 0; off < len; ) {
+      int n = Math.min(len - off, CHUNK_BYTES / 4);
+      buffer.clear();
+      buffer.asIntBuffer().put(src, off, n);
+      out.write(chunk, 0, n * 4);
+      off += n;
+    }
+  }
+
+  static void readInts(DataInput in, int[] dst, int len) throws IOException {
+    byte[] chunk = new byte[CHUNK_BYTES];
+    ByteBuffer buffer = ByteBuffer.wrap(chunk);
+    for (int off = 0; off < len; ) {
+      int n = Math.min(len - off, CHUNK_BYTES / 4);
+      in.readFully(chunk, 0, n * 4);
+      buffer.clear();
+      buffer.asIntBuffer().get(dst, off, n);
+      off += n;
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package com.zolstein.compacthashmap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Writes and reads single keys or values for CompactHashMap.writeTo and
+ * readFrom. A codec must read back exactly the bytes it wrote. The built-in
+ * codecs do not accept null.
+ */
+public interface Codec<T> {
+
+  void write(T value, DataOutput out) throws IOException;
+
+  T read(DataInput in) throws IOException;
+
+  Codec<Integer> INTEGER = new Codec<Integer>() {
+    @Override
+    public void write(Integer value, DataOutput out) throws IOException {
+      out.writeInt(value);
+    }
+
+    @Override
+    public Integer read(DataInput in) throws IOException {
+      return in.readInt();
+    }
+  };
+
+  Codec<Long> LONG = new Codec<Long>() {
+    @Override
+    public void write(Long value, DataOutput out) throws IOException {
+      out.writeLong(value);
+    }
+
+    @Override
+    public Long read(DataInput in) throws IOException {
+      return in.readLong();
+    }
+  };
+
+  // Length-prefixed UTF-8, without DataOutput.writeUTF's 64KB limit
+  Codec<String> STRING = new Codec<String>() {
+    @Override
+    public void write(String value, DataOutput out) throws IOException {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+
+    @Override
+    public String read(DataInput in) throws IOException {
+      byte[] bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+  };
+}
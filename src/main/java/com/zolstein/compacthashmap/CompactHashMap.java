@@ -1,10 +1,32 @@
 package com.zolstein.compacthashmap;
 
+import static com.zolstein.compacthashmap.CompactIndex.DUMMY;
+import static com.zolstein.compacthashmap.CompactIndex.FREE;
+import static com.zolstein.compacthashmap.CompactIndex.constructLookupReturn;
+import static com.zolstein.compacthashmap.CompactIndex.index;
+import static com.zolstein.compacthashmap.CompactIndex.slot;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.ConcurrentModificationException;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 
 /*
  * HashMap implementation based on the dictionary implementation used by Python.
@@ -12,34 +34,99 @@ import java.util.Set;
  * HashMaps, as well as iteration over elements in insertion order if elements
  * have not been removed.
  *
+ * A map created as insertion-ordered keeps that order across removals too: a
+ * removal leaves a hole in the dense arrays instead of moving the last entry
+ * into it, iteration skips holes, and the arrays are compacted in place once
+ * holes make up more than half of them.
+ *
  * Adapted from code available at http://code.activestate.com/recipes/578375/
  * Special thanks to Raymond Hettinger
  */
 @SuppressWarnings("ALL")
 public class CompactHashMap<K, V> implements Map<K, V> {
 
-  private enum KeySize {
-    BYTE,
-    SHORT,
-    INT
+  /*
+   * How the index finds entries. PERTURBATION probes one slot at a time in
+   * CPython's perturbed order, reading hashes[] and keys[] at every
+   * occupied slot on the way. SWISS keeps a 7-bit hash fingerprint per slot
+   * in control bytes and tests eight slots per step, reading the entry
+   * arrays only on a fingerprint match, for one more byte per index slot.
+   * FINGERPRINT probes like PERTURBATION but packs high hash bits above the
+   * entry number in each slot, rejecting most other slots without reading
+   * hashes[]; its slots are at least short-wide.
+   */
+  public enum IndexType {
+    PERTURBATION,
+    SWISS,
+    FINGERPRINT
   }
 
-  private int indexMapSize;
-  private Object indexMap; // byte[] | short[] | int[]
-  private KeySize indexKeySize;
+  private static final int FORMAT_MAGIC = 0x43484D53; // "CHMS"
+  private static final int FORMAT_VERSION = 1;
+  private static final int FLAG_INDEX = 1;
+  private static final int FLAG_INSERTION_ORDERED = 2;
+  private static final int FLAG_SWISS_INDEX = 4;
+  private static final int FLAG_FINGERPRINT_INDEX = 8;
+  private static final int FLAG_HARDENED = 16;
+  private static final int DEFAULT_CAPACITY = 8;
+  private static final float DEFAULT_LOW_WATER_MARK = 0.25f;
+  // Marks a slot returned by lookup as belonging to oldIndexMap
+  private static final int OLD_SLOT = 1 << 30;
+  // Old index slots moved per write during an incremental resize. n/8
+  // writes drain an old index of n slots, long before the inserts among them
+  // could fill the new index, which is twice as large.
+  private static final int MIGRATION_STEP = 8;
+  // Slot returned by lookup for a key kept in the collision tree
+  private static final int TREE_SLOT = Integer.MIN_VALUE;
+  // Insert probe length past which a hardened map checks for flooding
+  private static final int MAX_PROBE = 32;
+  // Live entries sharing one hash that count as a flood rather than bad luck
+  private static final int TREEIFY_THRESHOLD = 8;
+
+  CompactIndex indexMap;
+  // During an incremental resize, the previous index. Each entry is in
+  // exactly one of the two; old slots below migrationCursor are all moved.
+  private CompactIndex oldIndexMap;
+  private int migrationCursor;
+  private boolean incrementalResize;
+  // Dense array positions in use, including holes
   private int used;
   private int filled;
+  // Removed positions below used; always 0 unless insertionOrdered
+  private int holes;
+  private boolean insertionOrdered;
   // ArrayList<CompactMapEntry<K, V>> entries;
   int[] hashes;
   K[] keys;
   V[] values;
   long version = 0;
+  // Removals shrink the arrays once used falls below this fraction of them
+  private float lowWaterMark = DEFAULT_LOW_WATER_MARK;
+  private IndexType indexType = IndexType.PERTURBATION;
+  // Capacity requested through the constructor or ensureCapacity, which
+  // automatic shrinking never goes below
+  private int minCapacity = DEFAULT_CAPACITY;
+  // Hardened mode: every hash is hashCode() mixed with a per-instance seed,
+  // and entries of flooded hashes live in collisionTree instead of the index
+  private boolean hardened;
+  private int hashSeed;
+  private IntIntCompactHashMap floodedHashes;
+  TreeMap<K, Integer> collisionTree;
+  private Class<?> treeKeyClass;
+  // Flooding checks that found nothing to fix pause until size() gets here
+  private int floodCheckSuspendedUntil;
+  // Replaces the keys' own hashCode and equals unless null
+  private HashingStrategy<Object> hashingStrategy;
+  // Live counters for stats(), allocated only while enabled
+  private Counters counters;
 
-  private static final int PERTURB_SHIFT = 5;
-  private static final int FREE = -1;
-  private static final int DUMMY = -2;
-  private static final int BYTE_LIMIT = Byte.MAX_VALUE;
-  private static final int SHORT_LIMIT = Short.MAX_VALUE;
+  private static final class Counters {
+    long lookups;
+    long probeSteps;
+    long indexResizes;
+    long widthUpgrades;
+    long tombstonePurges;
+  }
 
   public CompactHashMap() {
     //entries = new ArrayList<>();
@@ -49,6 +136,45 @@ public class CompactHashMap<K, V> implements Map<K, V> {
     clear();
   }
 
+  /*
+   * Creates a map that holds initialCapacity entries without resizing its
+   * arrays or its index.
+   */
+  public CompactHashMap(int initialCapacity) {
+    this(initialCapacity, false);
+  }
+
+  /*
+   * Creates a map that, if insertionOrdered, iterates in insertion order
+   * even after removals, as a LinkedHashMap does.
+   */
+  public CompactHashMap(int initialCapacity, boolean insertionOrdered) {
+    this(initialCapacity, insertionOrdered, null);
+  }
+
+  /*
+   * Creates a map that hashes and compares keys with hashingStrategy instead
+   * of their hashCode and equals.
+   */
+  public CompactHashMap(HashingStrategy<? super K> hashingStrategy) {
+    this(0, false, Objects.requireNonNull(hashingStrategy));
+  }
+
+  /*
+   * hashingStrategy may be null to use the keys' own hashCode and equals.
+   */
+  @SuppressWarnings("unchecked")
+  public CompactHashMap(int initialCapacity, boolean insertionOrdered,
+      HashingStrategy<? super K> hashingStrategy) {
+    if (initialCapacity < 0) {
+      throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+    }
+    minCapacity = Math.max(DEFAULT_CAPACITY, initialCapacity);
+    this.insertionOrdered = insertionOrdered;
+    this.hashingStrategy = (HashingStrategy<Object>) hashingStrategy;
+    clear();
+  }
+
   private void initArrays(int size) {
     hashes = new int[size];
     keys = (K[]) new Object[size];
@@ -77,6 +203,24 @@ public class CompactHashMap<K, V> implements Map<K, V> {
     return hashes[index];
   }
 
+  // The hash stored and probed for key
+  private int spread(Object key) {
+    HashingStrategy<Object> strategy = hashingStrategy;
+    int h = strategy == null ? key.hashCode() : strategy.hash(Objects.requireNonNull(key));
+    return hardened ? mix(h, hashSeed) : h;
+  }
+
+  // Seeded multiplicative mix; a bijection, so unmix recovers the key's hash
+  private static int mix(int h, int seed) {
+    h = (h ^ seed) * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private static int unmix(int h, int seed) {
+    h ^= h >>> 16;
+    return (h * 0x144CBC89) ^ seed;
+  }
+
   private K key(int index) {
     return keys[index];
   }
@@ -85,196 +229,789 @@ public class CompactHashMap<K, V> implements Map<K, V> {
     return values[index];
   }
 
+  /*
+   * Creates a map holding source's mappings, sized for them up front. The
+   * copy still shrinks as entries are removed, as a map filled by put does.
+   */
   public CompactHashMap(Map<? extends K, ? extends V> source) {
     this();
+    presize(source.size());
     putAll(source);
   }
 
-  private interface IntIterator {
-    boolean hasNext();
+  // Smallest index that holds n entries below the 2/3 load limit
+  private static int indexSizeFor(int n) {
+    return CompactIndex.tableSizeFor(Math.max(DEFAULT_CAPACITY, n + (n >> 1) + 1));
+  }
 
-    int next();
+  /*
+   * Grows the arrays and the index so that the map holds n entries without
+   * further resizing. Automatic shrinking will not go below n afterwards.
+   */
+  public void ensureCapacity(int n) {
+    minCapacity = Math.max(minCapacity, n);
+    presize(n);
   }
 
-  private static IntIterator genProbes(int hashValue, int mask) {
-    return new IntIterator() {
-      boolean hasRun = false;
-      int i;
-      int perturb;
+  // Grows the arrays and the index to hold n entries, without raising the shrink floor
+  private void presize(int n) {
+    if (hashes.length < n + holes) {
+      resizeArrays(n + holes);
+    }
+    if (indexMap.size() < indexSizeFor(n)) {
+      resizeIndexMap(indexSizeFor(n));
+    }
+  }
 
-      @Override
-      public boolean hasNext() {
-        return true;
+  /*
+   * Shrinks the arrays to the current size and rebuilds the index at the
+   * smallest size, and narrowest slot width, that fits it. Drops any
+   * capacity reserved through ensureCapacity.
+   */
+  public void trimToSize() {
+    minCapacity = DEFAULT_CAPACITY;
+    closeHoles();
+    int capacity = Math.max(DEFAULT_CAPACITY, used);
+    if (hashes.length != capacity) {
+      resizeArrays(capacity);
+    }
+    resizeIndexMap(indexSizeFor(capacity));
+  }
+
+  public boolean isIncrementalResize() {
+    return incrementalResize;
+  }
+
+  /*
+   * When enabled, growing the index no longer rebuilds it inside a single
+   * put. The new index is allocated empty, and every later put or remove
+   * moves up to MIGRATION_STEP slots' worth of entries into it from the old
+   * one, while lookups probe both until the old index is drained. Growing
+   * the dense arrays is still a single copy; presize with ensureCapacity
+   * where that matters too.
+   */
+  public void setIncrementalResize(boolean incrementalResize) {
+    this.incrementalResize = incrementalResize;
+    if (!incrementalResize && oldIndexMap != null) {
+      migrate(oldIndexMap.size());
+    }
+  }
+
+  public IndexType getIndexType() {
+    return indexType;
+  }
+
+  /*
+   * Switches the index engine, rebuilding the index at its current size.
+   */
+  public void setIndexType(IndexType indexType) {
+    if (this.indexType != Objects.requireNonNull(indexType)) {
+      this.indexType = indexType;
+      resizeIndexMap(this.indexMap.size());
+    }
+  }
+
+  private CompactIndex newIndex(int n) {
+    switch (indexType) {
+      case SWISS:
+        return CompactIndex.createSwiss(n);
+      case FINGERPRINT:
+        return CompactIndex.createFingerprint(n);
+      default:
+        return CompactIndex.create(n);
+    }
+  }
+
+  private static IndexType indexTypeOf(CompactIndex index) {
+    if (index instanceof CompactIndex.SwissIndex) {
+      return IndexType.SWISS;
+    } else if (index instanceof CompactIndex.ShortFingerprintIndex
+        || index instanceof CompactIndex.IntFingerprintIndex) {
+      return IndexType.FINGERPRINT;
+    }
+    return IndexType.PERTURBATION;
+  }
+
+  public boolean isHardened() {
+    return hardened;
+  }
+
+  /*
+   * Hardens the map against hash flooding by untrusted keys. Every hash is
+   * mixed with a random per-instance seed, so keys crafted to collide in the
+   * index of one map do not collide in another. An insert that probes past
+   * MAX_PROBE slots makes the map look at the hash it collided on: if at
+   * least TREEIFY_THRESHOLD live keys share it exactly, which no seed can
+   * separate, and they are of one Comparable class, those keys move from the
+   * index to a tree ordered by compareTo, which must be consistent with
+   * equals, giving logarithmic lookups. Otherwise the map re-seeds and
+   * rebuilds the index. Full collisions of non-Comparable keys, or of any
+   * keys under a HashingStrategy, stay linear. Hardening a filled map, and
+   * reading a hardened one, moves every such flood to the tree up front.
+   *
+   * Costs one extra mix per operation and a probe-length check per insert.
+   */
+  public void setHardened(boolean hardened) {
+    if (this.hardened == hardened) {
+      return;
+    }
+    if (hardened) {
+      hashSeed = ThreadLocalRandom.current().nextInt();
+      for (int i = 0; i < used; i++) {
+        hashes[i] = mix(hashes[i], hashSeed);
+      }
+    } else {
+      for (int i = 0; i < used; i++) {
+        hashes[i] = unmix(hashes[i], hashSeed);
       }
+      clearCollisionTree();
+    }
+    this.hardened = hardened;
+    if (hardened) {
+      treeifyFloods();
+    }
+    resizeIndexMap(indexMap.size());
+  }
 
-      @Override
-      public int next() {
-        if (!hasRun) {
-          int hash = hashValue;
-          if (hash < 0) {
-            hash = -hash;
-          }
-          perturb = hash;
-          i = hash & mask;
-          hasRun = true;
-          return i;
-        } else {
-          i = (5 * i + perturb + 1);
-          perturb = perturb >> PERTURB_SHIFT;
-          return i & mask;
+  private void clearCollisionTree() {
+    floodedHashes = null;
+    collisionTree = null;
+    treeKeyClass = null;
+    floodCheckSuspendedUntil = 0;
+  }
+
+  // Rebuilds floodedHashes from the tree after the stored hashes changed
+  private void rebuildFloodedHashes() {
+    if (collisionTree != null) {
+      floodedHashes = new IntIntCompactHashMap();
+      for (int index : collisionTree.values()) {
+        floodedHashes.put(hash(index), 1);
+      }
+    }
+  }
+
+  private boolean inTree(Object key, int hashValue) {
+    return key.getClass() == treeKeyClass && floodedHashes.containsKey(hashValue);
+  }
+
+  /*
+   * Called after a hardened insert probed past MAX_PROBE slots. A chain of
+   * distinct hashes is bad luck or a seed that leaked, fixed by a new seed;
+   * a flood of one hash moves to the collision tree if its keys allow it.
+   */
+  private void checkFlooding(int hashValue) {
+    if (size() < floodCheckSuspendedUntil) {
+      return;
+    }
+    int count = 0;
+    Class<?> keyClass = null;
+    boolean sortable = true;
+    for (int i = 0; i < used; i++) {
+      K key = keys[i];
+      if (key != null && hashes[i] == hashValue) {
+        count++;
+        if (keyClass == null) {
+          keyClass = key.getClass();
+        } else if (key.getClass() != keyClass) {
+          sortable = false;
         }
       }
-    };
+    }
+    if (count < TREEIFY_THRESHOLD) {
+      int oldSeed = hashSeed;
+      hashSeed = ThreadLocalRandom.current().nextInt();
+      for (int i = 0; i < used; i++) {
+        hashes[i] = mix(unmix(hashes[i], oldSeed), hashSeed);
+      }
+      rebuildFloodedHashes();
+      resizeIndexMap(indexMap.size());
+    } else if (sortable && hashingStrategy == null && Comparable.class.isAssignableFrom(keyClass)
+        && (treeKeyClass == null || treeKeyClass == keyClass)) {
+      if (collisionTree == null) {
+        floodedHashes = new IntIntCompactHashMap();
+        collisionTree = new TreeMap<>();
+        treeKeyClass = keyClass;
+      }
+      floodedHashes.put(hashValue, 1);
+      // Moves the flooded entries from the index to the tree
+      resizeIndexMap(indexMap.size());
+      return;
+    }
+    floodCheckSuspendedUntil = 2 * size();
   }
 
-  private boolean isKey(Object indexKey, Object key) {
-    return indexKey == key;
+  /*
+   * Marks every hash that checkFlooding would move to the collision tree,
+   * for a hardened index about to be rebuilt from scratch: no insert probes
+   * the flooded chains then, so nothing else would detect them. The caller
+   * rebuilds the index, which moves the marked entries.
+   */
+  private void treeifyFloods() {
+    if (hashingStrategy != null) {
+      return;
+    }
+    IntIntCompactHashMap counts = new IntIntCompactHashMap();
+    for (int i = 0; i < used; i++) {
+      if (keys[i] != null) {
+        counts.put(hashes[i], counts.get(hashes[i]) + 1);
+      }
+    }
+    // A hash whose keys are not all of the tree's one Comparable class stays
+    // in the index; its count drops to 0
+    Class<?> keyClass = treeKeyClass;
+    for (int i = 0; i < used; i++) {
+      K key = keys[i];
+      if (key != null && counts.get(hashes[i]) >= TREEIFY_THRESHOLD) {
+        if (keyClass == null && key instanceof Comparable) {
+          keyClass = key.getClass();
+        }
+        if (key.getClass() != keyClass) {
+          counts.put(hashes[i], 0);
+        }
+      }
+    }
+    IntIntCompactHashMap.Cursor cursor = counts.cursor();
+    while (cursor.advance()) {
+      if (cursor.value() >= TREEIFY_THRESHOLD) {
+        if (collisionTree == null) {
+          floodedHashes = new IntIntCompactHashMap();
+          collisionTree = new TreeMap<>();
+          treeKeyClass = keyClass;
+        }
+        floodedHashes.put(cursor.key(), 1);
+      }
+    }
   }
 
-  private boolean isHash(int indexHash, int hash) {
-    return indexHash == hash;
+  public boolean isStatsEnabled() {
+    return counters != null;
   }
 
-  private boolean isKey(int i, int hash, Object key) {
-    K indexKey = key(i);
-    return isKey(indexKey, key)|| (isHash(hash(i), hash) && Objects.equals(indexKey, key));
+  /*
+   * Turns the live counters reported by stats() on, from zero, or off. While
+   * off, the only cost is a null check per lookup and per index rebuild;
+   * while on, each lookup also recomputes its probe length.
+   */
+  public void setStatsEnabled(boolean statsEnabled) {
+    if (statsEnabled != (counters != null)) {
+      counters = statsEnabled ? new Counters() : null;
+    }
   }
 
-  private long constructLookupReturn(int index, int slot) {
-    long ret = index;
-    ret = ret << 32;
-    ret = ret | slot;
+  /*
+   * Returns a snapshot of the map's layout, probe lengths and memory use,
+   * with the live counters if they are enabled. Takes time linear in the
+   * size of the map.
+   */
+  public CompactMapStats stats() {
+    CompactMapStats stats = new CompactMapStats();
+    stats.size = size();
+    stats.denseSize = used;
+    stats.capacity = hashes.length;
+    stats.holes = holes;
+    CompactIndex indexMap = this.indexMap;
+    stats.indexType = indexTypeOf(indexMap);
+    stats.indexSize = indexMap.size();
+    stats.slotBytes = (1 << indexMap.keySize().ordinal())
+        + (stats.indexType == IndexType.SWISS ? 1 : 0);
+    for (int i = 0; i < indexMap.size(); i++) {
+      int index = indexMap.get(i);
+      if (index != FREE) {
+        stats.filled++;
+        if (index == DUMMY) {
+          stats.tombstones++;
+        }
+      }
+    }
+    stats.treeSize = collisionTree == null ? 0 : collisionTree.size();
+    stats.resizing = oldIndexMap != null;
+    long probeSteps = 0;
+    int probed = 0;
+    for (int index = 0; index < used; index++) {
+      if (keys[index] != null) {
+        int i = lookupForIndex(index, hash(index));
+        if (i == FREE) {
+          stats.unreachable++;
+        } else if (i != TREE_SLOT) {
+          int steps = probeLength(i, hash(index));
+          probeSteps += steps;
+          probed++;
+          stats.maxProbeLength = Math.max(stats.maxProbeLength, steps);
+        }
+      }
+    }
+    stats.averageProbeLength = probed == 0 ? 0 : (double) probeSteps / probed;
+    // hashes, keys and values, at 4 bytes per hash or compressed reference
+    stats.retainedBytes = 3L * Integer.BYTES * hashes.length + indexMap.retainedBytes()
+        + (oldIndexMap == null ? 0 : oldIndexMap.retainedBytes());
+    Counters counters = this.counters;
+    if (counters != null) {
+      stats.countersEnabled = true;
+      stats.lookups = counters.lookups;
+      stats.probeSteps = counters.probeSteps;
+      stats.indexResizes = counters.indexResizes;
+      stats.widthUpgrades = counters.widthUpgrades;
+      stats.tombstonePurges = counters.tombstonePurges;
+    }
+    return stats;
+  }
+
+  // Probe length to a slot returned by lookup, or found by lookupForIndex
+  private int probeLength(int i, int hashValue) {
+    assert i != FREE;
+    if (i == TREE_SLOT) {
+      return 1;
+    } else if ((i & OLD_SLOT) != 0) {
+      return oldIndexMap.probeLength(i & ~OLD_SLOT, hashValue);
+    }
+    return indexMap.probeLength(i, hashValue);
+  }
+
+  private void countRebuild(CompactIndex from, CompactIndex to) {
+    Counters counters = this.counters;
+    if (from == to) {
+      counters.tombstonePurges++;
+    } else if (from.size() != to.size()) {
+      counters.indexResizes++;
+    }
+    if (to.keySize().compareTo(from.keySize()) > 0) {
+      counters.widthUpgrades++;
+    }
+  }
+
+  public boolean isInsertionOrdered() {
+    return insertionOrdered;
+  }
+
+  public float getLowWaterMark() {
+    return lowWaterMark;
+  }
+
+  /*
+   * Sets the fraction of the array capacity below which remove shrinks the
+   * arrays to twice the remaining size, rebuilding a smaller (and possibly
+   * narrower) index with them. 0 disables automatic shrinking.
+   */
+  public void setLowWaterMark(float lowWaterMark) {
+    if (!(lowWaterMark >= 0 && lowWaterMark < 0.5f)) {
+      throw new IllegalArgumentException("Low-water mark must be in [0, 0.5): " + lowWaterMark);
+    }
+    this.lowWaterMark = lowWaterMark;
+  }
+
+  /*
+   * Copies the map's arrays and index as they are, without rehashing.
+   */
+  CompactHashMap<K, V> copy() {
+    CompactHashMap<K, V> ret = new CompactHashMap<>();
+    ret.indexMap = indexMap.copy();
+    ret.oldIndexMap = oldIndexMap == null ? null : oldIndexMap.copy();
+    ret.migrationCursor = migrationCursor;
+    ret.incrementalResize = incrementalResize;
+    ret.used = used;
+    ret.filled = filled;
+    ret.holes = holes;
+    ret.insertionOrdered = insertionOrdered;
+    ret.hashes = hashes.clone();
+    ret.keys = keys.clone();
+    ret.values = values.clone();
+    ret.lowWaterMark = lowWaterMark;
+    ret.minCapacity = minCapacity;
+    ret.indexType = indexType;
+    ret.hashingStrategy = hashingStrategy;
+    ret.hardened = hardened;
+    ret.hashSeed = hashSeed;
+    ret.floodCheckSuspendedUntil = floodCheckSuspendedUntil;
+    if (collisionTree != null) {
+      ret.collisionTree = new TreeMap<>(collisionTree);
+      ret.treeKeyClass = treeKeyClass;
+      ret.rebuildFloodedHashes();
+    }
     return ret;
   }
 
-  private int index(long lookupReturn) {
-    return (int) (lookupReturn >> 32);
+  // This map, or a copy of it without holes
+  private CompactHashMap<K, V> withoutHoles() {
+    if (holes == 0) {
+      return this;
+    }
+    CompactHashMap<K, V> ret = copy();
+    ret.closeHoles();
+    ret.resizeIndexMap(ret.indexMap.size());
+    return ret;
   }
 
-  private int slot(long lookupReturn) {
-    return (int) lookupReturn;
+  /*
+   * Returns an immutable copy with the same iteration order, indexed by a
+   * minimal perfect hash instead of an open-addressing table.
+   */
+  public FrozenCompactHashMap<K, V> freeze() {
+    CompactHashMap<K, V> source = withoutHoles();
+    return new FrozenCompactHashMap<>(source.used, source.rawHashes(), source.keys, source.values,
+        hashingStrategy);
   }
 
-  private long lookup(Object key, int hashValue) {
-    int indexLength = indexMapSize;
-    assert filled < indexLength;
-    int freeSlot = FREE;
-    IntIterator probes = genProbes(hashValue, indexLength - 1);
-    for (int i = probes.next(); ; i = probes.next()) {
-      int index = getIndex(i);
-      if (index == FREE) {
-        return freeSlot == FREE ? constructLookupReturn(FREE, i) : constructLookupReturn(DUMMY, freeSlot);
-      } else if (index == DUMMY) {
-        if (freeSlot == FREE) {
-          freeSlot = i;
-        }
-      } else {
-        if (isKey(index, hashValue, key)) {
-          return constructLookupReturn(index, i);
-        }
+  // Unmixed hash of each key, for the formats that store it
+  private int[] rawHashes() {
+    if (!hardened) {
+      return hashes;
+    }
+    int[] ret = new int[used];
+    for (int i = 0; i < used; i++) {
+      ret[i] = unmix(hashes[i], hashSeed);
+    }
+    return ret;
+  }
+
+  /*
+   * Writes the map in a binary format that readFrom can load without calling
+   * hashCode: a header, the stored hashes as they are, optionally the index,
+   * then every key and every value through the codecs, in iteration order.
+   * Including the index makes loading a pure bulk copy at the cost of
+   * 1-4 bytes per index slot in the output.
+   *
+   * Because hashes are not recomputed, only keys whose hashCode is the same
+   * in every JVM (String and boxed primitives, but not enums or identity
+   * hashes) may be shipped to another process. out is flushed but not closed.
+   *
+   * A hardened map is written without its index, whose layout depends on the
+   * seed, and loads hardened with a new seed. A map with a HashingStrategy
+   * stores the strategy's hashes and must be read back with the same one.
+   */
+  public void writeTo(OutputStream out, Codec<? super K> keyCodec, Codec<? super V> valueCodec,
+      boolean includeIndex) throws IOException {
+    CompactHashMap<K, V> source = withoutHoles();
+    int used = source.used;
+    includeIndex &= !hardened;
+    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+    data.writeInt(FORMAT_MAGIC);
+    data.writeByte(FORMAT_VERSION);
+    data.writeByte((includeIndex ? FLAG_INDEX : 0) | (insertionOrdered ? FLAG_INSERTION_ORDERED : 0)
+        | (indexType == IndexType.SWISS ? FLAG_SWISS_INDEX : 0)
+        | (indexType == IndexType.FINGERPRINT ? FLAG_FINGERPRINT_INDEX : 0)
+        | (hardened ? FLAG_HARDENED : 0));
+    data.writeInt(used);
+    BulkIO.writeInts(data, source.rawHashes(), used);
+    if (includeIndex) {
+      if (source.oldIndexMap != null) {
+        // Finish the resize on a copy so writing leaves this map untouched
+        source = source.copy();
+        source.migrate(source.oldIndexMap.size());
+      }
+      data.writeInt(source.filled);
+      source.indexMap.writeTo(data);
+    }
+    for (int i = 0; i < used; i++) {
+      keyCodec.write(source.key(i), data);
+    }
+    for (int i = 0; i < used; i++) {
+      valueCodec.write(source.value(i), data);
+    }
+    data.flush();
+  }
+
+  public void writeTo(WritableByteChannel out, Codec<? super K> keyCodec, Codec<? super V> valueCodec,
+      boolean includeIndex) throws IOException {
+    writeTo(Channels.newOutputStream(out), keyCodec, valueCodec, includeIndex);
+  }
+
+  /*
+   * Reads a map written by writeTo. Without a stored index, the index is
+   * rebuilt from the stored hashes in one pass. in is not buffered or closed
+   * here, and nothing past the end of the map is consumed.
+   */
+  public static <K, V> CompactHashMap<K, V> readFrom(InputStream in, Codec<? extends K> keyCodec,
+      Codec<? extends V> valueCodec) throws IOException {
+    return readFrom(in, keyCodec, valueCodec, null);
+  }
+
+  // Reads a map written with hashingStrategy, or with none if it is null
+  @SuppressWarnings("unchecked")
+  public static <K, V> CompactHashMap<K, V> readFrom(InputStream in, Codec<? extends K> keyCodec,
+      Codec<? extends V> valueCodec, HashingStrategy<? super K> hashingStrategy) throws IOException {
+    DataInputStream data = new DataInputStream(in);
+    if (data.readInt() != FORMAT_MAGIC) {
+      throw new IOException("Not a serialized CompactHashMap");
+    }
+    int formatVersion = data.readByte();
+    if (formatVersion != FORMAT_VERSION) {
+      throw new IOException("Unsupported CompactHashMap format version: " + formatVersion);
+    }
+    int flags = data.readByte();
+    int used = data.readInt();
+    if (used < 0) {
+      throw new IOException("Corrupt CompactHashMap size: " + used);
+    }
+    CompactHashMap<K, V> ret = new CompactHashMap<>();
+    ret.hashingStrategy = (HashingStrategy<Object>) hashingStrategy;
+    ret.insertionOrdered = (flags & FLAG_INSERTION_ORDERED) != 0;
+    if ((flags & FLAG_SWISS_INDEX) != 0) {
+      ret.indexType = IndexType.SWISS;
+    } else if ((flags & FLAG_FINGERPRINT_INDEX) != 0) {
+      ret.indexType = IndexType.FINGERPRINT;
+    }
+    ret.initArrays(Math.max(8, used));
+    BulkIO.readInts(data, ret.hashes, used);
+    ret.used = used;
+    if ((flags & FLAG_HARDENED) != 0) {
+      if ((flags & FLAG_INDEX) != 0) {
+        throw new IOException("Corrupt CompactHashMap flags: " + flags);
+      }
+      ret.hardened = true;
+      ret.hashSeed = ThreadLocalRandom.current().nextInt();
+      for (int i = 0; i < used; i++) {
+        ret.hashes[i] = mix(ret.hashes[i], ret.hashSeed);
+      }
+    }
+    if ((flags & FLAG_INDEX) != 0) {
+      int filled = data.readInt();
+      CompactIndex indexMap = CompactIndex.readFrom(data);
+      if (filled < used || filled >= indexMap.size() || indexTypeOf(indexMap) != ret.indexType) {
+        throw new IOException("Corrupt CompactHashMap index");
+      }
+      checkIndexSlots(indexMap, used, filled);
+      ret.indexMap = indexMap;
+      ret.filled = filled;
+    }
+    for (int i = 0; i < used; i++) {
+      ret.keys[i] = keyCodec.read(data);
+    }
+    for (int i = 0; i < used; i++) {
+      ret.values[i] = valueCodec.read(data);
+    }
+    if ((flags & FLAG_INDEX) == 0) {
+      // Built once the keys are in, which finding floods needs
+      if (ret.hardened) {
+        ret.treeifyFloods();
       }
+      ret.resizeIndexMap(Math.max(DEFAULT_CAPACITY, 2 * used));
     }
+    return ret;
   }
 
-  private int lookupForIndex(int desiredIndex, int hashValue) {
-    int indexLength = indexMapSize;
-    assert filled < indexLength;
-    IntIterator probes = genProbes(hashValue, indexLength - 1);
-    for (int i = probes.next(); ; i = probes.next()) {
-      int index = getIndex(i);
-      if (index == desiredIndex) {
-        return i;
-      } else if (index == FREE) {
-        return FREE;
+  /*
+   * Rejects a stored index whose slots point outside the entries read, or
+   * whose live and occupied slot counts disagree with the header, so a
+   * corrupt file fails here rather than on a later lookup.
+   */
+  private static void checkIndexSlots(CompactIndex indexMap, int used, int filled)
+      throws IOException {
+    int live = 0;
+    int occupied = 0;
+    for (int i = 0; i < indexMap.size(); i++) {
+      int index = indexMap.get(i);
+      if (index >= 0 && index < used) {
+        live++;
+      } else if (index != FREE && index != DUMMY) {
+        throw new IOException("Corrupt CompactHashMap index slot " + i + ": " + index);
+      }
+      if (index != FREE) {
+        occupied++;
       }
     }
+    if (live != used || occupied != filled) {
+      throw new IOException("Corrupt CompactHashMap index");
+    }
+  }
+
+  public static <K, V> CompactHashMap<K, V> readFrom(ReadableByteChannel in, Codec<? extends K> keyCodec,
+      Codec<? extends V> valueCodec) throws IOException {
+    return readFrom(Channels.newInputStream(in), keyCodec, valueCodec);
   }
 
-  private Object makeIndex(int n) {
-    indexMapSize = n;
-    if (n <= BYTE_LIMIT) {
-      indexKeySize = KeySize.BYTE;
-      byte[] ret = new byte[n];
-      Arrays.fill(ret, (byte) -1);
-      return ret;
-    } else if (n <= SHORT_LIMIT) {
-      indexKeySize = KeySize.SHORT;
-      short[] ret = new short[n];
-      Arrays.fill(ret, (short) -1);
-      return ret;
+  public static <K, V> CompactHashMap<K, V> readFrom(ReadableByteChannel in, Codec<? extends K> keyCodec,
+      Codec<? extends V> valueCodec, HashingStrategy<? super K> hashingStrategy) throws IOException {
+    return readFrom(Channels.newInputStream(in), keyCodec, valueCodec, hashingStrategy);
+  }
+
+  private long lookup(Object key, int hashValue) {
+    long lookups = find(key, hashValue);
+    Counters counters = this.counters;
+    if (counters != null) {
+      counters.lookups++;
+      counters.probeSteps += probeLength(slot(lookups), hashValue);
+    }
+    return lookups;
+  }
+
+  private long find(Object key, int hashValue) {
+    assert filled < indexMap.size();
+    long lookups = indexMap.lookup(key, hashValue, keys, hashes, hashingStrategy);
+    if (oldIndexMap != null && index(lookups) < 0) {
+      // Not moved yet; a miss still inserts into the new index
+      long oldLookups = oldIndexMap.lookup(key, hashValue, keys, hashes, hashingStrategy);
+      if (index(oldLookups) >= 0) {
+        return constructLookupReturn(index(oldLookups), slot(oldLookups) | OLD_SLOT);
+      }
+    }
+    if (floodedHashes != null && index(lookups) < 0 && inTree(key, hashValue)) {
+      Integer index = collisionTree.get(key);
+      return constructLookupReturn(index == null ? FREE : index, TREE_SLOT);
+    }
+    return lookups;
+  }
+
+  private int lookupForIndex(int index, int hashValue) {
+    if (floodedHashes != null && inTree(key(index), hashValue)) {
+      return TREE_SLOT;
+    }
+    int i = indexMap.lookupForIndex(index, hashValue);
+    if (i == FREE && oldIndexMap != null) {
+      i = oldIndexMap.lookupForIndex(index, hashValue) | OLD_SLOT;
+    }
+    return i;
+  }
+
+  /*
+   * Sets a slot returned by lookup or lookupForIndex for key in the index it
+   * came from, or maps key to v in the collision tree.
+   */
+  private void setSlot(int i, int v, K key) {
+    if (i == TREE_SLOT) {
+      if (v == DUMMY) {
+        collisionTree.remove(key);
+      } else {
+        collisionTree.put(key, v);
+      }
+    } else if ((i & OLD_SLOT) != 0) {
+      oldIndexMap.set(i & ~OLD_SLOT, v);
     } else {
-      indexKeySize = KeySize.INT;
-      int[] ret = new int[n];
-      Arrays.fill(ret, -1);
-      return ret;
+      indexMap.set(i, v);
     }
   }
 
-  private int getIndex(int i) {
-    switch (indexKeySize) {
-      case BYTE:
-        return ((byte[]) indexMap)[i];
-      case SHORT:
-        return ((short[]) indexMap)[i];
-      case INT:
-        return ((int[]) indexMap)[i];
+  private void startResize(int n) {
+    if (oldIndexMap != null) {
+      migrate(oldIndexMap.size());
     }
-    throw new RuntimeException("Unreachable");
+    oldIndexMap = indexMap;
+    indexMap = newIndex(indexSizeAtLeast(n));
+    if (counters != null) {
+      countRebuild(oldIndexMap, indexMap);
+    }
+    filled = 0;
+    migrationCursor = 0;
   }
 
-  private void setIndex(int i, int v) {
-    switch (indexKeySize) {
-      case BYTE:
-        ((byte[]) indexMap)[i] = (byte) v;
-        break;
-      case SHORT:
-        ((short[]) indexMap)[i] = (short) v;
-        break;
-      case INT:
-        ((int[]) indexMap)[i] = v;
-        break;
+  /*
+   * Moves the entries of up to n more old index slots into the new index,
+   * leaving DUMMY behind so that the old index's other probe chains still
+   * work, and drops the old index once every slot has been visited.
+   */
+  private void migrate(int n) {
+    CompactIndex oldIndexMap = this.oldIndexMap;
+    int end = Math.min(oldIndexMap.size(), migrationCursor + n);
+    for (int i = migrationCursor; i < end; i++) {
+      int index = oldIndexMap.get(i);
+      if (index >= 0) {
+        indexMap.insertFresh(index, hash(index));
+        filled++;
+        oldIndexMap.set(i, DUMMY);
+      }
+    }
+    migrationCursor = end;
+    if (end == oldIndexMap.size()) {
+      this.oldIndexMap = null;
     }
   }
 
+  /*
+   * Index size for a rebuild asked to hold n slots, raised if needed so that
+   * every dense position up to used, including those of collision-tree
+   * entries and holes, fits in the index and in its slot width.
+   */
+  private int indexSizeAtLeast(int n) {
+    return CompactIndex.tableSizeFor(Math.max(n, used + 1));
+  }
+
   private void resizeIndexMap(int n) {
-    // Round up to next power of two
-    // n - 1 fixes exact powers of two getting doubled
-    // n | 1 fixes previous fix in case of exactly 1
-    n = (n - 1);
-    n = n | 1;
-    n = Integer.highestOneBit(n) << 1;
-    indexMap = makeIndex(n);
+    n = indexSizeAtLeast(n);
+    CompactIndex newIndexMap;
+    if (n == indexMap.size() && oldIndexMap == null && indexTypeOf(indexMap) == indexType) {
+      // Same size: purge the DUMMY slots in place instead of allocating
+      newIndexMap = indexMap;
+      newIndexMap.clear();
+    } else {
+      newIndexMap = newIndex(n);
+    }
+    int filled = 0;
     for (int index = 0; index < used; index++) {
-      int hash = hash(index);
-      IntIterator probes = genProbes(hash, n - 1);
-      int i = probes.next();
-      while (getIndex(i) != FREE) {
-        i = probes.next();
+      if (holes == 0 || keys[index] != null) {
+        if (floodedHashes != null && inTree(keys[index], hash(index))) {
+          collisionTree.put(keys[index], index);
+        } else {
+          newIndexMap.insertFresh(index, hash(index));
+          filled++;
+        }
+      }
+    }
+    if (counters != null) {
+      countRebuild(indexMap, newIndexMap);
+    }
+    indexMap = newIndexMap;
+    oldIndexMap = null;
+    this.filled = filled;
+  }
+
+  /*
+   * Slides the live entries of an insertion-ordered map down over the holes,
+   * keeping their order. The index must be rebuilt afterwards.
+   */
+  private void closeHoles() {
+    if (holes == 0) {
+      return;
+    }
+    int j = 0;
+    for (int i = 0; i < used; i++) {
+      if (keys[i] != null) {
+        if (i != j) {
+          insertArrays(j, hash(i), key(i), value(i));
+        }
+        j++;
+      }
+    }
+    Arrays.fill(keys, j, used, null);
+    Arrays.fill(values, j, used, null);
+    used = j;
+    holes = 0;
+    ++version;
+  }
+
+  // Dense positions in use; entries live in [0, denseSize()), possibly with holes
+  int denseSize() {
+    return used;
+  }
+
+  // First entry at or after index, or denseSize() if there is none
+  int skipHoles(int index) {
+    if (holes != 0) {
+      K[] keys = this.keys;
+      while (index < used && keys[index] == null) {
+        index++;
       }
-      setIndex(i, index);
     }
-    filled = used;
+    return index;
   }
 
   @Override
   public int size() {
-    return used;
+    return used - holes;
   }
 
   @Override
   public boolean isEmpty() {
-    return used == 0;
+    return size() == 0;
   }
 
   @Override
   public boolean containsKey(Object key) {
-    return index(lookup(key, key.hashCode())) >= 0;
+    return index(lookup(key, spread(key))) >= 0;
   }
 
   @Override
   public boolean containsValue(Object value) {
-    for (V v : values) {
-      if (Objects.equals(value, v)) {
+    for (int i = 0; i < used; i++) {
+      if (Objects.equals(value, value(i)) && key(i) != null) {
         return true;
       }
     }
@@ -283,7 +1020,7 @@ public class CompactHashMap<K, V> implements Map<K, V> {
 
   @Override
   public V get(Object key) {
-    int hash = key.hashCode();
+    int hash = spread(key);
     long lookups = lookup(key, hash);
     int index = index(lookups);
     if (index < 0) {
@@ -292,47 +1029,249 @@ public class CompactHashMap<K, V> implements Map<K, V> {
     return value(index);
   }
 
-  Map.Entry<K, V> getEntry(Object key) {
-    int hash = key.hashCode();
-    long lookups = lookup(key, hash);
+  /*
+   * Entry-set membership and removal, answered without materializing an
+   * entry.
+   */
+  boolean containsEntry(Object key, Object value) {
+    int index = index(lookup(key, spread(key)));
+    return index >= 0 && Objects.equals(value(index), value);
+  }
+
+  boolean removeEntry(Object key, Object value) {
+    long lookups = lookup(key, spread(key));
     int index = index(lookups);
-    if (index < 0) {
-      return null;
+    if (index < 0 || !Objects.equals(value(index), value)) {
+      return false;
     }
-    return new CompactMapEntry<>(this, index);
+    removeInternal(slot(lookups), index);
+    return true;
   }
 
   @Override
   public V put(K key, V value) {
-    int hash = key.hashCode();
+    int hash = spread(key);
     long lookups = lookup(key, hash);
     int index = index(lookups);
-    int i = slot(lookups);
     V old = null;
     if (index < 0) {
-      if (used == hashes.length) {
+      insert(lookups, hash, key, value);
+    } else {
+      old = value(index);
+      values[index] = value;
+    }
+
+    return old;
+  }
+
+  /*
+   * Adds a new entry at the slot found by a missed lookup. The lookup must
+   * still be valid, i.e. no structural change may have happened since.
+   */
+  private void insert(long lookups, int hash, K key, V value) {
+    if (used == hashes.length) {
+      // Reclaiming at least an eighth of the arrays keeps compaction amortized
+      if (holes > 0 && holes >= used >> 3) {
+        closeHoles();
+        resizeIndexMap(indexMap.size());
+        lookups = lookup(key, hash);
+      } else {
         resizeArrays(used * 2);
       }
-      insertArrays(used, hash, key, value);
-      setIndex(i, used++);
-      if (index == FREE) {
-        int localFilled = ++filled;
-        if (localFilled * 3 > (indexMapSize) * 2) {
-          resizeIndexMap(2 * size());
-        }
-      }
-      ++version;
+    }
+    insertArrays(used, hash, key, value);
+    int slot = slot(lookups);
+    boolean flooded = false;
+    if (slot == TREE_SLOT) {
+      collisionTree.put(key, used++);
     } else {
-      old = value(index);
+      flooded = hardened && indexMap.probeLength(slot, hash) > MAX_PROBE;
+      indexMap.occupy(slot, used++, hash);
+      if (index(lookups) == FREE) {
+        ++filled;
+      }
+    }
+    // When live entries fill less than half of the index, at least a
+    // quarter of the filled slots are DUMMY tombstones, and 2 * size()
+    // rebuilds at the same size (in place) or smaller instead of growing.
+    // Entries in the collision tree fill no slots, but the next entry's
+    // dense position must still fit in the index.
+    if (filled * 3 > indexMap.size() * 2 || used >= indexMap.size()) {
+      if (holes > 0 && holes >= used >> 3) {
+        // Holes left by iterator removals would otherwise size the index
+        closeHoles();
+        resizeIndexMap(2 * size());
+      } else if (incrementalResize) {
+        startResize(2 * size());
+      } else {
+        resizeIndexMap(2 * size());
+      }
+    }
+    if (oldIndexMap != null) {
+      migrate(MIGRATION_STEP);
+    }
+    if (flooded) {
+      checkFlooding(hash);
+    }
+    ++version;
+  }
+
+  /*
+   * The Map default methods below would probe the index once for the read
+   * and again for the write. These probe once and reuse the (index, slot)
+   * pair. Functions that structurally modify the map make the pair stale and
+   * cause a ConcurrentModificationException.
+   */
+
+  @Override
+  public V getOrDefault(Object key, V defaultValue) {
+    int index = index(lookup(key, spread(key)));
+    return index < 0 ? defaultValue : value(index);
+  }
+
+  @Override
+  public V putIfAbsent(K key, V value) {
+    int hash = spread(key);
+    long lookups = lookup(key, hash);
+    int index = index(lookups);
+    if (index < 0) {
+      insert(lookups, hash, key, value);
+      return null;
+    }
+    V old = value(index);
+    if (old == null) {
       values[index] = value;
     }
+    return old;
+  }
+
+  @Override
+  public boolean remove(Object key, Object value) {
+    return removeEntry(key, value);
+  }
+
+  @Override
+  public boolean replace(K key, V oldValue, V newValue) {
+    int index = index(lookup(key, spread(key)));
+    if (index < 0 || !Objects.equals(value(index), oldValue)) {
+      return false;
+    }
+    values[index] = newValue;
+    return true;
+  }
 
+  @Override
+  public V replace(K key, V value) {
+    int index = index(lookup(key, spread(key)));
+    if (index < 0) {
+      return null;
+    }
+    V old = value(index);
+    values[index] = value;
     return old;
   }
 
+  @Override
+  public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+    Objects.requireNonNull(mappingFunction);
+    int hash = spread(key);
+    long lookups = lookup(key, hash);
+    int index = index(lookups);
+    V old = index < 0 ? null : value(index);
+    if (old != null) {
+      return old;
+    }
+    long expectedVersion = version;
+    V value = mappingFunction.apply(key);
+    checkVersion(expectedVersion);
+    if (value != null) {
+      if (index < 0) {
+        insert(lookups, hash, key, value);
+      } else {
+        values[index] = value;
+      }
+    }
+    return value;
+  }
+
+  @Override
+  public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+    Objects.requireNonNull(remappingFunction);
+    long lookups = lookup(key, spread(key));
+    int index = index(lookups);
+    V old = index < 0 ? null : value(index);
+    if (old == null) {
+      return null;
+    }
+    long expectedVersion = version;
+    V value = remappingFunction.apply(key, old);
+    checkVersion(expectedVersion);
+    if (value == null) {
+      removeInternal(slot(lookups), index);
+    } else {
+      values[index] = value;
+    }
+    return value;
+  }
+
+  @Override
+  public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+    Objects.requireNonNull(remappingFunction);
+    int hash = spread(key);
+    long lookups = lookup(key, hash);
+    int index = index(lookups);
+    V old = index < 0 ? null : value(index);
+    long expectedVersion = version;
+    V value = remappingFunction.apply(key, old);
+    checkVersion(expectedVersion);
+    if (value == null) {
+      if (index >= 0) {
+        removeInternal(slot(lookups), index);
+      }
+    } else if (index < 0) {
+      insert(lookups, hash, key, value);
+    } else {
+      values[index] = value;
+    }
+    return value;
+  }
+
+  @Override
+  public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+    Objects.requireNonNull(value);
+    Objects.requireNonNull(remappingFunction);
+    int hash = spread(key);
+    long lookups = lookup(key, hash);
+    int index = index(lookups);
+    if (index < 0) {
+      insert(lookups, hash, key, value);
+      return value;
+    }
+    V old = value(index);
+    if (old == null) {
+      values[index] = value;
+      return value;
+    }
+    long expectedVersion = version;
+    V merged = remappingFunction.apply(old, value);
+    checkVersion(expectedVersion);
+    if (merged == null) {
+      removeInternal(slot(lookups), index);
+    } else {
+      values[index] = merged;
+    }
+    return merged;
+  }
+
+  private void checkVersion(long expectedVersion) {
+    if (version != expectedVersion) {
+      throw new ConcurrentModificationException();
+    }
+  }
+
   @Override
   public V remove(Object key) {
-    int hash = key.hashCode();
+    int hash = spread(key);
     long lookups = lookup(key, hash);
     int index = index(lookups);
     int i = slot(lookups);
@@ -345,24 +1284,64 @@ public class CompactHashMap<K, V> implements Map<K, V> {
   void removeAtIndex(int index) {
     int hash = hash(index);
     int i = lookupForIndex(index, hash);
-    removeInternal(i, index);
+    // Iterators and cursors hold positions, so an insertion-ordered map
+    // leaves compaction to the next removal or index growth through the map
+    removeInternal(i, index, !insertionOrdered);
   }
 
   private V removeInternal(int i, int index) {
-    setIndex(i, DUMMY);
-    int lastIndex = --used;
-    V lastValue = value(lastIndex);
-    if (index != lastIndex) {
-      // TODO: Shrink arrays
-      int j = lookupForIndex(lastIndex, hash(lastIndex));
-      assert lastIndex >= 0 && i != j;
-      setIndex(j, index);
-      V valueToReturn = value(index);
-      insertArrays(index, hash(lastIndex), key(lastIndex), lastValue);
-      lastValue = valueToReturn;
+    return removeInternal(i, index, true);
+  }
+
+  private V removeInternal(int i, int index, boolean mayCompact) {
+    setSlot(i, DUMMY, key(index));
+    V removed;
+    if (insertionOrdered) {
+      removed = value(index);
+      keys[index] = null;
+      values[index] = null;
+      if (index == used - 1) {
+        // Drop the hole along with any holes before it
+        used--;
+        while (used > 0 && keys[used - 1] == null) {
+          used--;
+          holes--;
+        }
+      } else {
+        holes++;
+      }
+    } else {
+      int lastIndex = --used;
+      removed = value(lastIndex);
+      if (index != lastIndex) {
+        int j = lookupForIndex(lastIndex, hash(lastIndex));
+        assert lastIndex >= 0 && (i != j || i == TREE_SLOT);
+        setSlot(j, index, key(lastIndex));
+        V valueToReturn = value(index);
+        insertArrays(index, hash(lastIndex), key(lastIndex), removed);
+        removed = valueToReturn;
+      }
+      keys[lastIndex] = null;
+      values[lastIndex] = null;
     }
     ++version;
-    return lastValue;
+    if (oldIndexMap != null) {
+      migrate(MIGRATION_STEP);
+    }
+    if (mayCompact) {
+      int capacity = hashes.length;
+      int size = size();
+      if (size < capacity * lowWaterMark && capacity > minCapacity) {
+        closeHoles();
+        capacity = Math.max(minCapacity, 2 * size);
+        resizeArrays(capacity);
+        resizeIndexMap(indexSizeFor(capacity));
+      } else if (holes > used >> 1) {
+        closeHoles();
+        resizeIndexMap(indexMap.size());
+      }
+    }
+    return removed;
   }
 
   @Override
@@ -374,10 +1353,71 @@ public class CompactHashMap<K, V> implements Map<K, V> {
 
   @Override
   public void clear() {
-    indexMap = makeIndex(8);
-    initArrays(8);
+    // Default-sized maps keep the original 8-slot index and grow on the sixth put
+    indexMap = newIndex(minCapacity == DEFAULT_CAPACITY ? DEFAULT_CAPACITY : indexSizeFor(minCapacity));
+    oldIndexMap = null;
+    initArrays(minCapacity);
     used = 0;
     filled = 0;
+    holes = 0;
+    clearCollisionTree();
+  }
+
+  /*
+   * Returns a cursor over the entries in iteration order. Scanning with it
+   * allocates nothing beyond the cursor itself.
+   */
+  public MapCursor<K, V> cursor() {
+    return new CompactMapCursor<>(this);
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    Objects.requireNonNull(action);
+    long expectedVersion = version;
+    int used = this.used;
+    for (int i = 0; i < used; i++) {
+      K key = key(i);
+      if (key != null) {
+        action.accept(key, value(i));
+      }
+    }
+    checkVersion(expectedVersion);
+  }
+
+  @Override
+  public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+    Objects.requireNonNull(function);
+    long expectedVersion = version;
+    int used = this.used;
+    for (int i = 0; i < used; i++) {
+      K key = key(i);
+      if (key != null) {
+        values[i] = function.apply(key, value(i));
+      }
+    }
+    checkVersion(expectedVersion);
+  }
+
+  /*
+   * Like forEach, but splits the entries into index ranges processed on the
+   * common fork/join pool. action must be thread-safe; the map must not be
+   * modified until the call returns. Entries are visited in no particular
+   * order. Unlike entrySet().parallelStream(), no entry object is allocated
+   * per element.
+   */
+  public void parallelForEach(BiConsumer<? super K, ? super V> action) {
+    Objects.requireNonNull(action);
+    long expectedVersion = version;
+    K[] keys = this.keys;
+    V[] values = this.values;
+    IntStream.range(0, used).parallel().forEach(i -> {
+      K key = keys[i];
+      if (key != null) {
+        action.accept(key, values[i]);
+      }
+    });
+    checkVersion(expectedVersion);
   }
 
   @Override
@@ -0,0 +1,364 @@
+package com.zolstein.compacthashmap;
+
+import static com.zolstein.compacthashmap.CompactIndex.DUMMY;
+import static com.zolstein.compacthashmap.CompactIndex.FREE;
+import static com.zolstein.compacthashmap.CompactIndex.index;
+import static com.zolstein.compacthashmap.CompactIndex.slot;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/*
+ * HashSet implementation using the same layout as CompactHashMap, minus the
+ * values array: elements and their hashes are kept in dense insertion-ordered
+ * arrays behind the shared narrow index.
+ *
+ * Bulk operations work on the dense arrays directly. When the other
+ * collection is also a CompactHashSet its stored hashes are reused, so
+ * addAll/retainAll/removeAll between compact sets never call hashCode().
+ */
+@SuppressWarnings("unchecked")
+public class CompactHashSet<E> implements Set<E> {
+
+  private CompactIndex indexMap;
+  private int used;
+  private int filled;
+  int[] hashes;
+  E[] keys;
+  long version = 0;
+
+  public CompactHashSet() {
+    clear();
+  }
+
+  public CompactHashSet(Collection<? extends E> source) {
+    this();
+    addAll(source);
+  }
+
+  private void initArrays(int size) {
+    hashes = new int[size];
+    keys = (E[]) new Object[size];
+  }
+
+  private void resizeArrays(int size) {
+    int[] newHashes = new int[size];
+    System.arraycopy(hashes, 0, newHashes, 0, used);
+    hashes = newHashes;
+    E[] newKeys = (E[]) new Object[size];
+    System.arraycopy(keys, 0, newKeys, 0, used);
+    keys = newKeys;
+  }
+
+  private long lookup(Object key, int hashValue) {
+    assert filled < indexMap.size();
+    return indexMap.lookup(key, hashValue, keys, hashes);
+  }
+
+  private void resizeIndexMap(int n) {
+    n = CompactIndex.tableSizeFor(n);
+    CompactIndex newIndexMap = CompactIndex.reuseOrCreate(indexMap, n);
+    for (int index = 0; index < used; index++) {
+      newIndexMap.insertFresh(index, hashes[index]);
+    }
+    indexMap = newIndexMap;
+    filled = used;
+  }
+
+  /*
+   * Grows the arrays and index up front so that n elements fit without
+   * intermediate resizes.
+   */
+  private void reserve(int n) {
+    if (n > keys.length) {
+      int size = keys.length;
+      while (size < n) {
+        size *= 2;
+      }
+      resizeArrays(size);
+    }
+    if (n * 3 > indexMap.size() * 2) {
+      resizeIndexMap(2 * n);
+    }
+  }
+
+  private boolean addHashed(E key, int hash) {
+    long lookups = lookup(key, hash);
+    int index = index(lookups);
+    if (index >= 0) {
+      return false;
+    }
+    if (used == keys.length) {
+      resizeArrays(used * 2);
+    }
+    hashes[used] = hash;
+    keys[used] = key;
+    indexMap.set(slot(lookups), used++);
+    if (index == FREE) {
+      int localFilled = ++filled;
+      if (localFilled * 3 > indexMap.size() * 2) {
+        resizeIndexMap(2 * size());
+      }
+    }
+    ++version;
+    return true;
+  }
+
+  private boolean containsHashed(Object key, int hash) {
+    return index(lookup(key, hash)) >= 0;
+  }
+
+  void removeAtIndex(int index) {
+    int i = indexMap.lookupForIndex(index, hashes[index]);
+    removeInternal(i, index);
+  }
+
+  private void removeInternal(int i, int index) {
+    indexMap.set(i, DUMMY);
+    int lastIndex = --used;
+    if (index != lastIndex) {
+      int j = indexMap.lookupForIndex(lastIndex, hashes[lastIndex]);
+      assert lastIndex >= 0 && i != j;
+      indexMap.set(j, index);
+      hashes[index] = hashes[lastIndex];
+      keys[index] = keys[lastIndex];
+    }
+    keys[lastIndex] = null;
+    ++version;
+  }
+
+  @Override
+  public int size() {
+    return used;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return used == 0;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    // The set never holds null, but other sets may ask about it.
+    return o != null && containsHashed(o, o.hashCode());
+  }
+
+  @Override
+  public boolean add(E e) {
+    return addHashed(e, e.hashCode());
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    if (o == null) {
+      return false;
+    }
+    long lookups = lookup(o, o.hashCode());
+    int index = index(lookups);
+    if (index < 0) {
+      return false;
+    }
+    removeInternal(slot(lookups), index);
+    return true;
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    return new SetIterator();
+  }
+
+  @Override
+  public Object[] toArray() {
+    return Arrays.copyOf(keys, used, Object[].class);
+  }
+
+  @Override
+  public <T> T[] toArray(T[] a) {
+    if (a.length < used) {
+      a = (T[]) Array.newInstance(a.getClass().getComponentType(), used);
+    }
+    System.arraycopy(keys, 0, a, 0, used);
+    if (a.length > used) {
+      a[used] = null;
+    }
+    return a;
+  }
+
+  @Override
+  public boolean containsAll(Collection<?> c) {
+    if (c instanceof CompactHashSet) {
+      CompactHashSet<?> other = (CompactHashSet<?>) c;
+      for (int i = 0; i < other.used; i++) {
+        if (!containsHashed(other.keys[i], other.hashes[i])) {
+          return false;
+        }
+      }
+      return true;
+    }
+    for (Object o : c) {
+      if (!contains(o)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends E> c) {
+    int before = used;
+    reserve(used + c.size());
+    if (c instanceof CompactHashSet) {
+      CompactHashSet<? extends E> other = (CompactHashSet<? extends E>) c;
+      for (int i = 0; i < other.used; i++) {
+        addHashed(other.keys[i], other.hashes[i]);
+      }
+    } else {
+      for (E e : c) {
+        addHashed(e, e.hashCode());
+      }
+    }
+    return used != before;
+  }
+
+  @Override
+  public boolean retainAll(Collection<?> c) {
+    return filter(asLookupSet(c), true);
+  }
+
+  @Override
+  public boolean removeAll(Collection<?> c) {
+    if (!(c instanceof Set) && c.size() < used) {
+      // Cheaper to remove each element than to build a lookup set from c.
+      boolean ret = false;
+      for (Object o : c) {
+        ret |= remove(o);
+      }
+      return ret;
+    }
+    return filter(asLookupSet(c), false);
+  }
+
+  private static Collection<?> asLookupSet(Collection<?> c) {
+    if (c instanceof Set) {
+      return c;
+    }
+    CompactHashSet<Object> ret = new CompactHashSet<>();
+    for (Object o : c) {
+      if (o != null) {
+        ret.add(o);
+      }
+    }
+    return ret;
+  }
+
+  /*
+   * Keeps the elements whose membership in c equals keepIfContained,
+   * compacting the dense arrays in place (preserving their order) and then
+   * rebuilding the index once.
+   */
+  private boolean filter(Collection<?> c, boolean keepIfContained) {
+    CompactHashSet<?> compact = c instanceof CompactHashSet ? (CompactHashSet<?>) c : null;
+    int write = 0;
+    for (int read = 0; read < used; read++) {
+      E key = keys[read];
+      int hash = hashes[read];
+      boolean contained = compact != null ? compact.containsHashed(key, hash) : c.contains(key);
+      if (contained == keepIfContained) {
+        hashes[write] = hash;
+        keys[write] = key;
+        write++;
+      }
+    }
+    if (write == used) {
+      return false;
+    }
+    Arrays.fill(keys, write, used, null);
+    used = write;
+    resizeIndexMap(indexMap.size());
+    ++version;
+    return true;
+  }
+
+  @Override
+  public void clear() {
+    indexMap = CompactIndex.create(8);
+    initArrays(8);
+    used = 0;
+    filled = 0;
+    ++version;
+  }
+
+  @Override
+  public int hashCode() {
+    int ret = 0;
+    for (int i = 0; i < used; i++) {
+      ret += hashes[i];
+    }
+    return ret;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    } else if (!(o instanceof Set)) {
+      return false;
+    }
+    Set<?> other = (Set) o;
+    return size() == other.size() && containsAll(other);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < used; i++) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      sb.append(keys[i] == this ? "(this Collection)" : keys[i]);
+    }
+    return sb.append(']').toString();
+  }
+
+  private class SetIterator implements Iterator<E> {
+
+    private boolean canRemove = false;
+    private int nextIndex = 0;
+    private long expectedVersion = version;
+
+    @Override
+    public boolean hasNext() {
+      return nextIndex < used;
+    }
+
+    @Override
+    public E next() {
+      if (expectedVersion != version) {
+        throw new ConcurrentModificationException();
+      }
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      canRemove = true;
+      return keys[nextIndex++];
+    }
+
+    @Override
+    public void remove() {
+      if (!canRemove) {
+        throw new IllegalStateException();
+      }
+      if (expectedVersion != version) {
+        throw new ConcurrentModificationException();
+      }
+      removeAtIndex(--nextIndex);
+      expectedVersion = version;
+      canRemove = false;
+    }
+  }
+}
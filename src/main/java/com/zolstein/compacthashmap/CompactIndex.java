@@ -0,0 +1,1318 @@
+package com.zolstein.compacthashmap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+
+/*
+ * Open-addressing index shared by the compact maps. Each slot holds the
+ * position of an entry in the owning map's dense arrays, or FREE / DUMMY.
+ * The slot type is the narrowest of byte, short and int that can address
+ * the table, so small maps pay one byte per slot.
+ *
+ * Each slot width is its own subclass holding a plain array, chosen once by
+ * create() when an owner builds or rebuilds its index. Every subclass has
+ * its own probe loops, one per key representation (objects with stored
+ * hashes, long keys, int keys), so a loop reads a single array type and
+ * never dispatches per probe. The loops are generated from one template by
+ * bin/generate-indexes rather than maintained by hand.
+ *
+ * SwissIndex is an alternative engine with a different probe scheme: it
+ * keeps a 7-bit hash fingerprint per slot in control bytes, scans them a
+ * group of eight at a time, and stores entry positions in a narrow index of
+ * the same size.
+ *
+ * ShortFingerprintIndex and IntFingerprintIndex use the perturbation probe
+ * but store high bits of the mixed hash above the entry number in each
+ * slot, so most non-matching slots are rejected without reading hashes[].
+ */
+abstract class CompactIndex {
+
+  enum KeySize {
+    BYTE,
+    SHORT,
+    INT
+  }
+
+  static final int PERTURB_SHIFT = 5;
+  static final int FREE = -1;
+  static final int DUMMY = -2;
+  static final int BYTE_LIMIT = Byte.MAX_VALUE;
+  static final int SHORT_LIMIT = Short.MAX_VALUE;
+  // Set in the serialized width byte of a SwissIndex
+  private static final int SWISS_TAG = 0x10;
+  private static final int FINGERPRINT_TAG = 0x20;
+  // Fewest fingerprint bits a short slot must leave before going to int
+  private static final int MIN_FINGERPRINT_BITS = 4;
+
+  private final int indexMapSize;
+
+  private CompactIndex(int n) {
+    indexMapSize = n;
+  }
+
+  static CompactIndex create(int n) {
+    return create(n, n);
+  }
+
+  /*
+   * Creates an index of n slots wide enough to hold entry numbers below
+   * limit. Hash tables pass limit == n; a minimal perfect hash over fewer
+   * distinct hashes than entries needs a wider slot than its size implies.
+   */
+  static CompactIndex create(int n, int limit) {
+    if (limit <= BYTE_LIMIT) {
+      return new ByteIndex(n);
+    } else if (limit <= SHORT_LIMIT) {
+      return new ShortIndex(n);
+    }
+    return new IntIndex(n);
+  }
+
+  /*
+   * Returns an index of n slots for a rebuild. A same-size rebuild under
+   * churn reuses current, purging its DUMMY tombstones in place instead of
+   * allocating a new index.
+   */
+  static CompactIndex reuseOrCreate(CompactIndex current, int n) {
+    if (n == current.size()) {
+      current.clear();
+      return current;
+    }
+    return create(n);
+  }
+
+  static CompactIndex createSwiss(int n) {
+    return new SwissIndex(Math.max(SwissIndex.GROUP_WIDTH, n));
+  }
+
+  /*
+   * Creates a fingerprinting index of n slots, short-wide while that leaves
+   * at least MIN_FINGERPRINT_BITS above the entry number, int-wide beyond.
+   */
+  static CompactIndex createFingerprint(int n) {
+    int indexBits = Integer.numberOfTrailingZeros(n);
+    if (Short.SIZE - 1 - indexBits >= MIN_FINGERPRINT_BITS) {
+      return new ShortFingerprintIndex(n);
+    }
+    return new IntFingerprintIndex(n);
+  }
+
+  abstract CompactIndex copy();
+
+  // Resets every slot to FREE, so a same-size rebuild can reuse the index
+  abstract void clear();
+
+  /*
+   * Writes the slot width, the size and the raw slots, DUMMY entries
+   * included.
+   */
+  void writeTo(DataOutput out) throws IOException {
+    out.writeByte(keySize().ordinal());
+    out.writeInt(indexMapSize);
+    writeSlots(out);
+  }
+
+  abstract void writeSlots(DataOutput out) throws IOException;
+
+  static CompactIndex readFrom(DataInput in) throws IOException {
+    int width = in.readByte();
+    int n = in.readInt();
+    boolean swiss = (width & SWISS_TAG) != 0;
+    boolean fingerprint = (width & FINGERPRINT_TAG) != 0;
+    width &= ~(SWISS_TAG | FINGERPRINT_TAG);
+    if (width < 0 || width >= KeySize.values().length || n < 8 || Integer.bitCount(n) != 1) {
+      throw new IOException("Corrupt index header");
+    }
+    if (swiss) {
+      long[] ctrl = new long[n / SwissIndex.GROUP_WIDTH];
+      for (int g = 0; g < ctrl.length; g++) {
+        ctrl[g] = in.readLong();
+      }
+      return new SwissIndex(ctrl, readSlots(in, width, n));
+    }
+    if (fingerprint) {
+      if (width == KeySize.SHORT.ordinal()) {
+        return ShortFingerprintIndex.read(in, n);
+      } else if (width == KeySize.INT.ordinal()) {
+        return IntFingerprintIndex.read(in, n);
+      }
+      throw new IOException("Corrupt index header");
+    }
+    return readSlots(in, width, n);
+  }
+
+  private static CompactIndex readSlots(DataInput in, int width, int n) throws IOException {
+    switch (KeySize.values()[width]) {
+      case BYTE:
+        return ByteIndex.read(in, n);
+      case SHORT:
+        return ShortIndex.read(in, n);
+      default:
+        return IntIndex.read(in, n);
+    }
+  }
+
+  // Round up to next power of two
+  // n - 1 fixes exact powers of two getting doubled
+  // n | 1 fixes previous fix in case of exactly 1
+  static int tableSizeFor(int n) {
+    n = (n - 1);
+    n = n | 1;
+    return Integer.highestOneBit(n) << 1;
+  }
+
+  /*
+   * The probe sequence, written out by every probe loop so that probing
+   * allocates nothing:
+   *
+   *   int perturb = initialPerturb(hash);
+   *   for (int i = perturb & mask; ; i = nextProbe(i, perturb, mask), perturb >>= PERTURB_SHIFT)
+   *
+   * Slot i is kept masked; since the mask is 2^k - 1, masking each step gives
+   * the same slots as masking a running unmasked value.
+   */
+  static int initialPerturb(int hashValue) {
+    return hashValue < 0 ? -hashValue : hashValue;
+  }
+
+  static int nextProbe(int i, int perturb, int mask) {
+    return (5 * i + perturb + 1) & mask;
+  }
+
+  static long constructLookupReturn(int index, int slot) {
+    long ret = index;
+    ret = ret << 32;
+    ret = ret | (slot & 0xFFFFFFFFL);
+    return ret;
+  }
+
+  static int index(long lookupReturn) {
+    return (int) (lookupReturn >> 32);
+  }
+
+  static int slot(long lookupReturn) {
+    return (int) lookupReturn;
+  }
+
+  int size() {
+    return indexMapSize;
+  }
+
+  abstract KeySize keySize();
+
+  // Bytes of slot storage, without object headers
+  long retainedBytes() {
+    return (long) indexMapSize << keySize().ordinal();
+  }
+
+  abstract int get(int i);
+
+  abstract void set(int i, int v);
+
+  /*
+   * Points slot i, returned by a missed lookup for a key with the given
+   * hash, at that key's new entry. set(i, index) suffices for the plain
+   * indexes; the fingerprinting ones also record the hash's fingerprint.
+   */
+  void occupy(int i, int index, int hashValue) {
+    set(i, index);
+  }
+
+  // strategy is consulted only on a hash match, so null costs nothing extra
+  private static boolean isKey(int i, int hash, Object key, Object[] keys, int[] hashes,
+      HashingStrategy<Object> strategy) {
+    Object indexKey = keys[i];
+    return indexKey == key || (hashes[i] == hash
+        && (strategy == null ? Objects.equals(indexKey, key) : strategy.equals(indexKey, key)));
+  }
+
+  /*
+   * Whether entry index holds the probed key, for SwissIndex's single probe
+   * loop. Exactly one of keys, longKeys and intKeys is non-null, selecting
+   * how the key is passed and compared; the choice is loop-invariant, and
+   * each typed lookup passes constants, so it folds away once the probe is
+   * inlined into the lookup.
+   */
+  private static boolean matches(int index, int hashValue, Object key, long primitiveKey,
+      Object[] keys, int[] hashes, HashingStrategy<Object> strategy, long[] longKeys,
+      int[] intKeys) {
+    if (keys != null) {
+      return isKey(index, hashValue, key, keys, hashes, strategy);
+    } else if (longKeys != null) {
+      return longKeys[index] == primitiveKey;
+    } else {
+      return intKeys[index] == (int) primitiveKey;
+    }
+  }
+
+  /*
+   * Probes for an object key whose entries live in keys/hashes. Returns the
+   * packed (index, slot) of the match; on a miss the index is FREE or DUMMY
+   * and the slot is where the key should be inserted.
+   */
+  final long lookup(Object key, int hashValue, Object[] keys, int[] hashes) {
+    return lookup(key, hashValue, keys, hashes, null);
+  }
+
+  // Same as above, comparing keys with strategy unless it is null
+  abstract long lookup(Object key, int hashValue, Object[] keys, int[] hashes,
+      HashingStrategy<Object> strategy);
+
+  /*
+   * Same as above for primitive keys, compared with == and without stored
+   * hashes.
+   */
+  abstract long lookup(long key, int hashValue, long[] keys);
+
+  abstract long lookup(int key, int hashValue, int[] keys);
+
+  /*
+   * Finds the slot pointing at the given entry, or FREE if none does.
+   */
+  abstract int lookupForIndex(int desiredIndex, int hashValue);
+
+  /*
+   * Points the first FREE slot on the probe path at the given entry, which
+   * must be known to be absent. DUMMY slots are passed over, not reused, so
+   * this is meant for rebuilding an index and for incremental resizes.
+   */
+  abstract void insertFresh(int index, int hashValue);
+
+  /*
+   * Probe steps from the start of hashValue's probe path to slot i, without
+   * reading any slots. Used by hardened maps to spot flooded probe chains.
+   */
+  int probeLength(int i, int hashValue) {
+    int mask = indexMapSize - 1;
+    int perturb = initialPerturb(hashValue);
+    int steps = 1;
+    for (int j = perturb & mask; j != i && steps <= indexMapSize;
+        j = nextProbe(j, perturb, mask), perturb >>= PERTURB_SHIFT) {
+      steps++;
+    }
+    return steps;
+  }
+
+  /*
+   * Mixes the hash so that its high bits, which become the fingerprint,
+   * depend on the low bits too; small Integer keys have zero high bits.
+   */
+  static int fingerprintHash(int hashValue) {
+    return hashValue * 0x9E3779B9;
+  }
+
+  /*
+   * The perturbation-probed indexes, one class per slot width. ByteIndex,
+   * ShortIndex and IntIndex store entry numbers as they are.
+   * ShortFingerprintIndex and IntFingerprintIndex store non-negative slots
+   * as (fingerprint << indexBits) | entry, with the fingerprint taken from
+   * the top bits of fingerprintHash; FREE and DUMMY are unchanged.
+   */
+  // BEGIN GENERATED by bin/generate-indexes from src/main/templates/CompactIndexSlots.java.in
+  static final class ByteIndex extends CompactIndex {
+
+    private final byte[] slots;
+
+    ByteIndex(int n) {
+      this(new byte[n]);
+      Arrays.fill(slots, (byte) FREE);
+    }
+
+    private ByteIndex(byte[] slots) {
+      super(slots.length);
+      this.slots = slots;
+    }
+
+    static ByteIndex read(DataInput in, int n) throws IOException {
+      byte[] slots = new byte[n];
+      in.readFully(slots);
+      return new ByteIndex(slots);
+    }
+
+    @Override
+    KeySize keySize() {
+      return KeySize.BYTE;
+    }
+
+    @Override
+    CompactIndex copy() {
+      return new ByteIndex(slots.clone());
+    }
+
+    @Override
+    void clear() {
+      Arrays.fill(slots, (byte) FREE);
+    }
+
+    @Override
+    void writeSlots(DataOutput out) throws IOException {
+      out.write(slots);
+    }
+
+    @Override
+    int get(int i) {
+      return slots[i];
+    }
+
+    @Override
+    void set(int i, int v) {
+      slots[i] = (byte) v;
+    }
+
+    @Override
+    long lookup(Object key, int hashValue, Object[] keys, int[] hashes,
+        HashingStrategy<Object> strategy) {
+      byte[] slots = this.slots;
+      int mask = slots.length - 1;
+      int freeSlot = FREE;
+      int perturb = initialPerturb(hashValue);
+      for (int i = perturb & mask; ; i = nextProbe(i, perturb, mask), perturb >>= PERTURB_SHIFT) {
+        int slot = slots[i];
+        if (slot == FREE) {
+          return freeSlot == FREE ? constructLookupReturn(FREE, i) : constructLookupReturn(DUMMY, freeSlot);
+        } else if (slot == DUMMY) {
+          if (freeSlot == FREE) {
+            freeSlot = i;
+          }
+        } else if (isKey(slot, hashValue, key, keys, hashes, strategy)) {
+          return constructLookupReturn(slot, i);
+        }
+      }
+    }
+
+    @Override
+    long lookup(long key, int hashValue, long[] keys) {
+      byte[] slots = this.slots;
+      int mask = slots.length - 1;
+      int freeSlot = FREE;
+      int perturb = initialPerturb(hashValue);
+      for (int i = perturb & mask; ; i = nextProbe(i, perturb, mask), perturb >>= PERTURB_SHIFT) {
+        int slot = slots[i];
+        if (slot == FREE) {
+          return freeSlot == FREE ? constructLookupReturn(FREE, i) : constructLookupReturn(DUMMY, freeSlot);
+        } else if (slot == DUMMY) {
+          if (freeSlot == FREE) {
+            freeSlot = i;
+          }
+        } else if (keys[slot] == key) {
+          return constructLookupReturn(slot, i);
+        }
+      }
+    }
+
+    @Override
+    long lookup(int key, int hashValue, int[] keys) {
+      byte[] slots = this.slots;
+      int mask = slots.length - 1;
+      int freeSlot = FREE;
+      int perturb = initialPerturb(hashValue);
+      for (int i = perturb & mask; ; i = nextProbe(i, perturb, mask), perturb >>= PERTURB_SHIFT) {
+        int slot = slots[i];
+        if (slot == FREE) {
+          return freeSlot == FREE ? constructLookupReturn(FREE, i) : constructLookupReturn(DUMMY, freeSlot);
+        } else if (slot == DUMMY) {
+          if (freeSlot == FREE) {
+            freeSlot = i;
+          }
+        } else if (keys[slot] == key) {
+          return constructLookupReturn(slot, i);
+        }
+      }
+    }
+
+    @Override
+    int lookupForIndex(int desiredIndex, int hashValue) {
+      byte[] slots = this.slots;
+      int mask = slots.length - 1;
+      int perturb = initialPerturb(hashValue);
+      for (int i = perturb & mask; ; i = nextProbe(i, perturb, mask), perturb >>= PERTURB_SHIFT) {
+        int slot = slots[i];
+        if (slot == desiredIndex) {
+          return i;
+        } else if (slot == FREE) {
+          return FREE;
+        }
+      }
+    }
+
+    @Override
+    void insertFresh(int index, int hashValue) {
+      byte[] slots = this.slots;
+      int mask = slots.length - 1;
+      int perturb = initialPerturb(hashValue);
+      int i = perturb & mask;
+      while (slots[i] != FREE) {
+        i = nextProbe(i, perturb, mask);
+        perturb >>= PERTURB_SHIFT;
+      }
+      slots[i] = (byte) index;
+    }
+  }
+
+  static final class ShortIndex extends CompactIndex {
+
+    private final short[] slots;
+
+    ShortIndex(int n) {
+      this(new short[n]);
+      Arrays.fill(slots, (short) FREE);
+    }
+
+    private ShortIndex(short[] slots) {
+      super(slots.length);
+      this.slots = slots;
+    }
+
+    static ShortIndex read(DataInput in, int n) throws IOException {
+      short[] slots = new short[n];
+      BulkIO.readShorts(in, slots, n);
+      return new ShortIndex(slots);
+    }
+
+    @Override
+    KeySize keySize() {
+      return KeySize.SHORT;
+    }
+
+    @Override
+    CompactIndex copy() {
+      return new ShortIndex(slots.clone());
+    }
+
+    @Override
+    void clear() {
+      Arrays.fill(slots, (short) FREE);
+    }
+
+    @Override
+    void writeSlots(DataOutput out) throws IOException {
+      BulkIO.writeShorts(out, slots, slots.length);
+    }
+
+    @Override
+    int get(int i) {
+      return slots[i];
+    }
+
+    @Override
+    void set(int i, int v) {
+      slots[i] = (short) v;
+    }
+
+    @Override
+    long lookup(Object key, int hashValue, Object[] keys, int[] hashes,
+        HashingStrategy<Object> strategy) {
+      short[] slots = this.slots;
+      int mask = slots.length - 1;
+      int freeSlot = FREE;
+      int perturb = initialPerturb(hashValue);
+      for (int i = perturb & mask; ; i = nextProbe(i, perturb, mask), perturb >>= PERTURB_SHIFT) {
+        int slot = slots[i];
+        if (slot == FREE) {
+          return freeSlot == FREE ? constructLookupReturn(FREE, i) : constructLookupReturn(DUMMY, freeSlot);
+        } else if (slot == DUMMY) {
+          if (freeSlot == FREE) {
+            freeSlot = i;
+          }
+        } else if (isKey(slot, hashValue, key, keys, hashes, strategy)) {
+          return constructLookupReturn(slot, i);
+        }
+      }
+    }
+
+    @Override
+    long lookup(long key, int hashValue, long[] keys) {
+      short[] slots = this.slots;
+      int mask = slots.length - 1;
+      int freeSlot = FREE;
+      int perturb = initialPerturb(hashValue);
+      for (int i = perturb & mask; ; i = nextProbe(i, perturb, mask), perturb >>= PERTURB_SHIFT) {
+        int slot = slots[i];
+        if (slot == FREE) {
+          return freeSlot == FREE ? constructLookupReturn(FREE, i) : constructLookupReturn(DUMMY, freeSlot);
+        } else if (slot == DUMMY) {
+          if (freeSlot == FREE) {
+            freeSlot = i;
+          }
+        } else if (keys[slot] == key) {
+          return constructLookupReturn(slot, i);
+        }
+      }
+    }
+
+    @Override
+    long lookup(int key, int hashValue, int[] keys) {
+      short[] slots = this.slots;
+      int mask = slots.length - 1;
+      int freeSlot = FREE;
+      int perturb = initialPerturb(hashValue);
+      for (int i = perturb & mask; ; i = nextProbe(i, perturb, mask), perturb >>= PERTURB_SHIFT) {
+        int slot = slots[i];
+        if (slot == FREE) {
+          return freeSlot == FREE ? constructLookupReturn(FREE, i) : constructLookupReturn(DUMMY, freeSlot);
+        } else if (slot == DUMMY) {
+          if (freeSlot == FREE) {
+            freeSlot = i;
+          }
+        } else if (keys[slot] == key) {
+          return constructLookupReturn(slot, i);
+        }
+      }
+    }
+
+    @Override
+    int lookupForIndex(int desiredIndex, int hashValue) {
+      short[] slots = this.slots;
+      int mask = slots.length - 1;
+      int perturb = initialPerturb(hashValue);
+      for (int i = perturb & mask; ; i = nextProbe(i, perturb, mask), perturb >>= PERTURB_SHIFT) {
+        int slot = slots[i];
+        if (slot == desiredIndex) {
+          return i;
+        } else if (slot == FREE) {
+          return FREE;
+        }
+      }
+    }
+
+    @Override
+    void insertFresh(int index, int hashValue) {
+      short[] slots = this.slots;
+      int mask = slots.length - 1;
+      int perturb = initialPerturb(hashValue);
+      int i = perturb & mask;
+      while (slots[i] != FREE) {
+        i = nextProbe(i, perturb, mask);
+        perturb >>= PERTURB_SHIFT;
+      }
+      slots[i] = (short) index;
+    }
+  }
+
+  static final class IntIndex extends CompactIndex {
+
+    private final int[] slots;
+
+    IntIndex(int n) {
+      this(new int[n]);
+      Arrays.fill(slots, FREE);
+    }
+
+    private IntIndex(int[] slots) {
+      super(slots.length);
+      this.slots = slots;
+    }
+
+    static IntIndex read(DataInput in, int n) throws IOException {
+      int[] slots = new int[n];
+      BulkIO.readInts(in, slots, n);
+      return new IntIndex(slots);
+    }
+
+    @Override
+    KeySize keySize() {
+      return KeySize.INT;
+    }
+
+    @Override
+    CompactIndex copy() {
+      return new IntIndex(slots.clone());
+    }
+
+    @Override
+    void clear() {
+      Arrays.fill(slots, FREE);
+    }
+
+    @Override
+    void writeSlots(DataOutput out) throws IOException {
+      BulkIO.writeInts(out, slots, slots.length);
+    }
+
+    @Override
+    int get(int i) {
+      return slots[i];
+    }
+
+    @Override
+    void set(int i, int v) {
+      slots[i] = v;
+    }
+
+    @Override
+    long lookup(Object key, int hashValue, Object[] keys, int[] hashes,
+        HashingStrategy<Object> strategy) {
+      int[] slots = this.slots;
+      int mask = slots.length - 1;
+      int freeSlot = FREE;
+      int perturb = initialPerturb(hashValue);
+      for (int i = perturb & mask; ; i = nextProbe(i, perturb, mask), perturb >>= PERTURB_SHIFT) {
+        int slot = slots[i];
+        if (slot == FREE) {
+          return freeSlot == FREE ? constructLookupReturn(FREE, i) : constructLookupReturn(DUMMY, freeSlot);
+        } else if (slot == DUMMY) {
+          if (freeSlot == FREE) {
+            freeSlot = i;
+          }
+        } else if (isKey(slot, hashValue, key, keys, hashes, strategy)) {
+          return constructLookupReturn(slot, i);
+        }
+      }
+    }
+
+    @Override
+    long lookup(long key, int hashValue, long[] keys) {
+      int[] slots = this.slots;
+      int mask = slots.length - 1;
+      int freeSlot = FREE;
+      int perturb = initialPerturb(hashValue);
+      for (int i = perturb & mask; ; i = nextProbe(i, perturb, mask), perturb >>= PERTURB_SHIFT) {
+        int slot = slots[i];
+        if (slot == FREE) {
+          return freeSlot == FREE ? constructLookupReturn(FREE, i) : constructLookupReturn(DUMMY, freeSlot);
+        } else if (slot == DUMMY) {
+          if (freeSlot == FREE) {
+            freeSlot = i;
+          }
+        } else if (keys[slot] == key) {
+          return constructLookupReturn(slot, i);
+        }
+      }
+    }
+
+    @Override
+    long lookup(int key, int hashValue, int[] keys) {
+      int[] slots = this.slots;
+      int mask = slots.length - 1;
+      int freeSlot = FREE;
+      int perturb = initialPerturb(hashValue);
+      for (int i = perturb & mask; ; i = nextProbe(i, perturb, mask), perturb >>= PERTURB_SHIFT) {
+        int slot = slots[i];
+        if (slot == FREE) {
+          return freeSlot == FREE ? constructLookupReturn(FREE, i) : constructLookupReturn(DUMMY, freeSlot);
+        } else if (slot == DUMMY) {
+          if (freeSlot == FREE) {
+            freeSlot = i;
+          }
+        } else if (keys[slot] == key) {
+          return constructLookupReturn(slot, i);
+        }
+      }
+    }
+
+    @Override
+    int lookupForIndex(int desiredIndex, int hashValue) {
+      int[] slots = this.slots;
+      int mask = slots.length - 1;
+      int perturb = initialPerturb(hashValue);
+      for (int i = perturb & mask; ; i = nextProbe(i, perturb, mask), perturb >>= PERTURB_SHIFT) {
+        int slot = slots[i];
+        if (slot == desiredIndex) {
+          return i;
+        } else if (slot == FREE) {
+          return FREE;
+        }
+      }
+    }
+
+    @Override
+    void insertFresh(int index, int hashValue) {
+      int[] slots = this.slots;
+      int mask = slots.length - 1;
+      int perturb = initialPerturb(hashValue);
+      int i = perturb & mask;
+      while (slots[i] != FREE) {
+        i = nextProbe(i, perturb, mask);
+        perturb >>= PERTURB_SHIFT;
+      }
+      slots[i] = index;
+    }
+  }
+
+  static final class ShortFingerprintIndex extends CompactIndex {
+
+    private final short[] slots;
+    private final int indexBits;
+    private final int indexMask;
+    private final int fingerprintShift;
+
+    ShortFingerprintIndex(int n) {
+      this(new short[n]);
+      Arrays.fill(slots, (short) FREE);
+    }
+
+    private ShortFingerprintIndex(short[] slots) {
+      super(slots.length);
+      this.slots = slots;
+      this.indexBits = Integer.numberOfTrailingZeros(slots.length);
+      this.indexMask = slots.length - 1;
+      this.fingerprintShift = Integer.SIZE - (Short.SIZE - 1 - indexBits);
+    }
+
+    static ShortFingerprintIndex read(DataInput in, int n) throws IOException {
+      short[] slots = new short[n];
+      BulkIO.readShorts(in, slots, n);
+      return new ShortFingerprintIndex(slots);
+    }
+
+    private int tag(int hashValue) {
+      return (fingerprintHash(hashValue) >>> fingerprintShift) << indexBits;
+    }
+
+    @Override
+    KeySize keySize() {
+      return KeySize.SHORT;
+    }
+
+    @Override
+    CompactIndex copy() {
+      return new ShortFingerprintIndex(slots.clone());
+    }
+
+    @Override
+    void clear() {
+      Arrays.fill(slots, (short) FREE);
+    }
+
+    @Override
+    void writeTo(DataOutput out) throws IOException {
+      out.writeByte(FINGERPRINT_TAG | keySize().ordinal());
+      out.writeInt(size());
+      writeSlots(out);
+    }
+
+    @Override
+    void writeSlots(DataOutput out) throws IOException {
+      BulkIO.writeShorts(out, slots, slots.length);
+    }
+
+    @Override
+    int get(int i) {
+      int slot = slots[i];
+      return slot < 0 ? slot : slot & indexMask;
+    }
+
+    // Repoints an occupied slot at a moved entry, keeping its fingerprint
+    @Override
+    void set(int i, int v) {
+      slots[i] = (short) (v < 0 ? v : (slots[i] & ~indexMask) | v);
+    }
+
+    @Override
+    void occupy(int i, int index, int hashValue) {
+      slots[i] = (short) (tag(hashValue) | index);
+    }
+
+    @Override
+    long lookup(Object key, int hashValue, Object[] keys, int[] hashes,
+        HashingStrategy<Object> strategy) {
+      short[] slots = this.slots;
+      int mask = slots.length - 1;
+      int tag = tag(hashValue);
+      int freeSlot = FREE;
+      int perturb = initialPerturb(hashValue);
+      for (int i = perturb & mask; ; i = nextProbe(i, perturb, mask), perturb >>= PERTURB_SHIFT) {
+        int slot = slots[i];
+        if (slot == FREE) {
+          return freeSlot == FREE ? constructLookupReturn(FREE, i) : constructLookupReturn(DUMMY, freeSlot);
+        } else if (slot == DUMMY) {
+          if (freeSlot == FREE) {
+            freeSlot = i;
+          }
+        } else if ((slot & ~mask) == tag && isKey(slot & mask, hashValue, key, keys, hashes, strategy)) {
+          return constructLookupReturn(slot & mask, i);
+        }
+      }
+    }
+
+    @Override
+    long lookup(long key, int hashValue, long[] keys) {
+      short[] slots = this.slots;
+      int mask = slots.length - 1;
+      int tag = tag(hashValue);
+      int freeSlot = FREE;
+      int perturb = initialPerturb(hashValue);
+      for (int i = perturb & mask; ; i = nextProbe(i, perturb, mask), perturb >>= PERTURB_SHIFT) {
+        int slot = slots[i];
+        if (slot == FREE) {
+          return freeSlot == FREE ? constructLookupReturn(FREE, i) : constructLookupReturn(DUMMY, freeSlot);
+        } else if (slot == DUMMY) {
+          if (freeSlot == FREE) {
+            freeSlot = i;
+          }
+        } else if ((slot & ~mask) == tag && keys[slot & mask] == key) {
+          return constructLookupReturn(slot & mask, i);
+        }
+      }
+    }
+
+    @Override
+    long lookup(int key, int hashValue, int[] keys) {
+      short[] slots = this.slots;
+      int mask = slots.length - 1;
+      int tag = tag(hashValue);
+      int freeSlot = FREE;
+      int perturb = initialPerturb(hashValue);
+      for (int i = perturb & mask; ; i = nextProbe(i, perturb, mask), perturb >>= PERTURB_SHIFT) {
+        int slot = slots[i];
+        if (slot == FREE) {
+          return freeSlot == FREE ? constructLookupReturn(FREE, i) : constructLookupReturn(DUMMY, freeSlot);
+        } else if (slot == DUMMY) {
+          if (freeSlot == FREE) {
+            freeSlot = i;
+          }
+        } else if ((slot & ~mask) == tag && keys[slot & mask] == key) {
+          return constructLookupReturn(slot & mask, i);
+        }
+      }
+    }
+
+    @Override
+    int lookupForIndex(int desiredIndex, int hashValue) {
+      short[] slots = this.slots;
+      int mask = slots.length - 1;
+      int perturb = initialPerturb(hashValue);
+      for (int i = perturb & mask; ; i = nextProbe(i, perturb, mask), perturb >>= PERTURB_SHIFT) {
+        int slot = slots[i];
+        if (slot >= 0 && (slot & mask) == desiredIndex) {
+          return i;
+        } else if (slot == FREE) {
+          return FREE;
+        }
+      }
+    }
+
+    @Override
+    void insertFresh(int index, int hashValue) {
+      short[] slots = this.slots;
+      int mask = slots.length - 1;
+      int perturb = initialPerturb(hashValue);
+      int i = perturb & mask;
+      while (slots[i] != FREE) {
+        i = nextProbe(i, perturb, mask);
+        perturb >>= PERTURB_SHIFT;
+      }
+      slots[i] = (short) (tag(hashValue) | index);
+    }
+  }
+
+  static final class IntFingerprintIndex extends CompactIndex {
+
+    private final int[] slots;
+    private final int indexBits;
+    private final int indexMask;
+    private final int fingerprintShift;
+
+    IntFingerprintIndex(int n) {
+      this(new int[n]);
+      Arrays.fill(slots, FREE);
+    }
+
+    private IntFingerprintIndex(int[] slots) {
+      super(slots.length);
+      this.slots = slots;
+      this.indexBits = Integer.numberOfTrailingZeros(slots.length);
+      this.indexMask = slots.length - 1;
+      this.fingerprintShift = Integer.SIZE - (Integer.SIZE - 1 - indexBits);
+    }
+
+    static IntFingerprintIndex read(DataInput in, int n) throws IOException {
+      int[] slots = new int[n];
+      BulkIO.readInts(in, slots, n);
+      return new IntFingerprintIndex(slots);
+    }
+
+    private int tag(int hashValue) {
+      return (fingerprintHash(hashValue) >>> fingerprintShift) << indexBits;
+    }
+
+    @Override
+    KeySize keySize() {
+      return KeySize.INT;
+    }
+
+    @Override
+    CompactIndex copy() {
+      return new IntFingerprintIndex(slots.clone());
+    }
+
+    @Override
+    void clear() {
+      Arrays.fill(slots, FREE);
+    }
+
+    @Override
+    void writeTo(DataOutput out) throws IOException {
+      out.writeByte(FINGERPRINT_TAG | keySize().ordinal());
+      out.writeInt(size());
+      writeSlots(out);
+    }
+
+    @Override
+    void writeSlots(DataOutput out) throws IOException {
+      BulkIO.writeInts(out, slots, slots.length);
+    }
+
+    @Override
+    int get(int i) {
+      int slot = slots[i];
+      return slot < 0 ? slot : slot & indexMask;
+    }
+
+    // Repoints an occupied slot at a moved entry, keeping its fingerprint
+    @Override
+    void set(int i, int v) {
+      slots[i] = v < 0 ? v : (slots[i] & ~indexMask) | v;
+    }
+
+    @Override
+    void occupy(int i, int index, int hashValue) {
+      slots[i] = tag(hashValue) | index;
+    }
+
+    @Override
+    long lookup(Object key, int hashValue, Object[] keys, int[] hashes,
+        HashingStrategy<Object> strategy) {
+      int[] slots = this.slots;
+      int mask = slots.length - 1;
+      int tag = tag(hashValue);
+      int freeSlot = FREE;
+      int perturb = initialPerturb(hashValue);
+      for (int i = perturb & mask; ; i = nextProbe(i, perturb, mask), perturb >>= PERTURB_SHIFT) {
+        int slot = slots[i];
+        if (slot == FREE) {
+          return freeSlot == FREE ? constructLookupReturn(FREE, i) : constructLookupReturn(DUMMY, freeSlot);
+        } else if (slot == DUMMY) {
+          if (freeSlot == FREE) {
+            freeSlot = i;
+          }
+        } else if ((slot & ~mask) == tag && isKey(slot & mask, hashValue, key, keys, hashes, strategy)) {
+          return constructLookupReturn(slot & mask, i);
+        }
+      }
+    }
+
+    @Override
+    long lookup(long key, int hashValue, long[] keys) {
+      int[] slots = this.slots;
+      int mask = slots.length - 1;
+      int tag = tag(hashValue);
+      int freeSlot = FREE;
+      int perturb = initialPerturb(hashValue);
+      for (int i = perturb & mask; ; i = nextProbe(i, perturb, mask), perturb >>= PERTURB_SHIFT) {
+        int slot = slots[i];
+        if (slot == FREE) {
+          return freeSlot == FREE ? constructLookupReturn(FREE, i) : constructLookupReturn(DUMMY, freeSlot);
+        } else if (slot == DUMMY) {
+          if (freeSlot == FREE) {
+            freeSlot = i;
+          }
+        } else if ((slot & ~mask) == tag && keys[slot & mask] == key) {
+          return constructLookupReturn(slot & mask, i);
+        }
+      }
+    }
+
+    @Override
+    long lookup(int key, int hashValue, int[] keys) {
+      int[] slots = this.slots;
+      int mask = slots.length - 1;
+      int tag = tag(hashValue);
+      int freeSlot = FREE;
+      int perturb = initialPerturb(hashValue);
+      for (int i = perturb & mask; ; i = nextProbe(i, perturb, mask), perturb >>= PERTURB_SHIFT) {
+        int slot = slots[i];
+        if (slot == FREE) {
+          return freeSlot == FREE ? constructLookupReturn(FREE, i) : constructLookupReturn(DUMMY, freeSlot);
+        } else if (slot == DUMMY) {
+          if (freeSlot == FREE) {
+            freeSlot = i;
+          }
+        } else if ((slot & ~mask) == tag && keys[slot & mask] == key) {
+          return constructLookupReturn(slot & mask, i);
+        }
+      }
+    }
+
+    @Override
+    int lookupForIndex(int desiredIndex, int hashValue) {
+      int[] slots = this.slots;
+      int mask = slots.length - 1;
+      int perturb = initialPerturb(hashValue);
+      for (int i = perturb & mask; ; i = nextProbe(i, perturb, mask), perturb >>= PERTURB_SHIFT) {
+        int slot = slots[i];
+        if (slot >= 0 && (slot & mask) == desiredIndex) {
+          return i;
+        } else if (slot == FREE) {
+          return FREE;
+        }
+      }
+    }
+
+    @Override
+    void insertFresh(int index, int hashValue) {
+      int[] slots = this.slots;
+      int mask = slots.length - 1;
+      int perturb = initialPerturb(hashValue);
+      int i = perturb & mask;
+      while (slots[i] != FREE) {
+        i = nextProbe(i, perturb, mask);
+        perturb >>= PERTURB_SHIFT;
+      }
+      slots[i] = tag(hashValue) | index;
+    }
+  }
+  // END GENERATED
+
+  /*
+   * SwissTable-style index. Slots form groups of eight, and each group has a
+   * control word of one byte per slot: EMPTY, DELETED, or for an occupied
+   * slot the low 7 bits of the mixed hash. A probe compares all eight bytes
+   * of a group at once with SWAR arithmetic on the long, so slots whose
+   * fingerprint differs are rejected without reading the entry arrays, and
+   * a group containing an EMPTY byte ends the probe. Groups are visited in
+   * triangular order, which covers every group of a power-of-two table.
+   *
+   * Entry positions live in a narrow index of the same size, used only as
+   * storage through get and set, so the engine costs one byte per slot more
+   * than the perturbation probing of the other subclasses.
+   */
+  static final class SwissIndex extends CompactIndex {
+
+    static final int GROUP_WIDTH = 8;
+    private static final long EMPTY = 0x80L;
+    private static final long DELETED = 0xFEL;
+    private static final long LSBS = 0x0101010101010101L;
+    private static final long MSBS = 0x8080808080808080L;
+
+    private final long[] ctrl;
+    private final CompactIndex positions;
+    private final int groupMask;
+
+    SwissIndex(int n) {
+      this(new long[n / GROUP_WIDTH], create(n));
+      Arrays.fill(ctrl, EMPTY * LSBS);
+    }
+
+    private SwissIndex(long[] ctrl, CompactIndex positions) {
+      super(positions.size());
+      this.ctrl = ctrl;
+      this.positions = positions;
+      this.groupMask = ctrl.length - 1;
+    }
+
+    // Spreads the hash so that both the fingerprint and the group bits
+    // depend on all of it; hashCodes such as Integer's vary only in the low bits
+    private static int mix(int hashValue) {
+      int h = hashValue * 0x9E3779B9;
+      return h ^ (h >>> 16);
+    }
+
+    private static long fingerprint(int h) {
+      return h & 0x7F;
+    }
+
+    private static int firstGroup(int h) {
+      return h >>> 7;
+    }
+
+    // Bytes equal to the fingerprint, with rare false positives next to a
+    // true match; callers confirm every candidate
+    private static long matchFingerprint(long word, long fingerprint) {
+      long x = word ^ (fingerprint * LSBS);
+      return (x - LSBS) & ~x & MSBS;
+    }
+
+    private static long matchEmpty(long word) {
+      return word & (~word << 6) & MSBS;
+    }
+
+    private static long matchEmptyOrDeleted(long word) {
+      return word & (~word << 7) & MSBS;
+    }
+
+    private static int slotOf(int group, long match) {
+      return (group << 3) + (Long.numberOfTrailingZeros(match) >>> 3);
+    }
+
+    private void setControl(int i, long value) {
+      int shift = (i & 7) << 3;
+      int g = i >>> 3;
+      ctrl[g] = (ctrl[g] & ~(0xFFL << shift)) | (value << shift);
+    }
+
+    private long control(int i) {
+      return (ctrl[i >>> 3] >>> ((i & 7) << 3)) & 0xFF;
+    }
+
+    // Result of a miss: the first EMPTY or DELETED slot on the probe path
+    private long miss(int freeSlot) {
+      return constructLookupReturn(control(freeSlot) == EMPTY ? FREE : DUMMY, freeSlot);
+    }
+
+    @Override
+    KeySize keySize() {
+      return positions.keySize();
+    }
+
+    @Override
+    long retainedBytes() {
+      return positions.retainedBytes() + (long) ctrl.length * Long.BYTES;
+    }
+
+    @Override
+    CompactIndex copy() {
+      return new SwissIndex(ctrl.clone(), positions.copy());
+    }
+
+    @Override
+    void clear() {
+      Arrays.fill(ctrl, EMPTY * LSBS);
+    }
+
+    @Override
+    void writeTo(DataOutput out) throws IOException {
+      out.writeByte(SWISS_TAG | keySize().ordinal());
+      out.writeInt(size());
+      writeSlots(out);
+    }
+
+    @Override
+    void writeSlots(DataOutput out) throws IOException {
+      for (long word : ctrl) {
+        out.writeLong(word);
+      }
+      positions.writeSlots(out);
+    }
+
+    @Override
+    int get(int i) {
+      long control = control(i);
+      if (control == EMPTY) {
+        return FREE;
+      } else if (control == DELETED) {
+        return DUMMY;
+      }
+      return positions.get(i);
+    }
+
+    /*
+     * FREE and DUMMY clear the slot; an entry position repoints an occupied
+     * slot at a moved entry with the same hash. New entries go through occupy.
+     */
+    @Override
+    void set(int i, int v) {
+      if (v == FREE) {
+        setControl(i, EMPTY);
+      } else if (v == DUMMY) {
+        setControl(i, DELETED);
+      } else {
+        positions.set(i, v);
+      }
+    }
+
+    @Override
+    void occupy(int i, int index, int hashValue) {
+      setControl(i, fingerprint(mix(hashValue)));
+      positions.set(i, index);
+    }
+
+    @Override
+    long lookup(Object key, int hashValue, Object[] keys, int[] hashes,
+        HashingStrategy<Object> strategy) {
+      return probe(key, 0, hashValue, keys, hashes, strategy, null, null);
+    }
+
+    @Override
+    long lookup(long key, int hashValue, long[] keys) {
+      return probe(null, key, hashValue, null, null, null, keys, null);
+    }
+
+    @Override
+    long lookup(int key, int hashValue, int[] keys) {
+      return probe(null, key, hashValue, null, null, null, null, keys);
+    }
+
+    private long probe(Object key, long primitiveKey, int hashValue, Object[] keys, int[] hashes,
+        HashingStrategy<Object> strategy, long[] longKeys, int[] intKeys) {
+      long[] ctrl = this.ctrl;
+      int mask = groupMask;
+      int h = mix(hashValue);
+      long fingerprint = fingerprint(h);
+      int freeSlot = FREE;
+      for (int g = firstGroup(h) & mask, step = 1; ; g = (g + step++) & mask) {
+        long word = ctrl[g];
+        for (long m = matchFingerprint(word, fingerprint); m != 0; m &= m - 1) {
+          int i = slotOf(g, m);
+          int index = positions.get(i);
+          if (matches(index, hashValue, key, primitiveKey, keys, hashes, strategy, longKeys,
+              intKeys)) {
+            return constructLookupReturn(index, i);
+          }
+        }
+        if (freeSlot == FREE) {
+          long available = matchEmptyOrDeleted(word);
+          if (available != 0) {
+            freeSlot = slotOf(g, available);
+          }
+        }
+        if (matchEmpty(word) != 0) {
+          return miss(freeSlot);
+        }
+      }
+    }
+
+    @Override
+    int lookupForIndex(int desiredIndex, int hashValue) {
+      long[] ctrl = this.ctrl;
+      int mask = groupMask;
+      int h = mix(hashValue);
+      long fingerprint = fingerprint(h);
+      for (int g = firstGroup(h) & mask, step = 1; ; g = (g + step++) & mask) {
+        long word = ctrl[g];
+        for (long m = matchFingerprint(word, fingerprint); m != 0; m &= m - 1) {
+          int i = slotOf(g, m);
+          if (positions.get(i) == desiredIndex) {
+            return i;
+          }
+        }
+        if (matchEmpty(word) != 0) {
+          return FREE;
+        }
+      }
+    }
+
+    // Counts the slots of every group scanned, so steps compare with the
+    // single-slot engines
+    @Override
+    int probeLength(int i, int hashValue) {
+      int mask = groupMask;
+      int target = i >>> 3;
+      int steps = GROUP_WIDTH;
+      for (int g = firstGroup(mix(hashValue)) & mask, step = 1; g != target && step <= mask + 1;
+          g = (g + step++) & mask) {
+        steps += GROUP_WIDTH;
+      }
+      return steps;
+    }
+
+    @Override
+    void insertFresh(int index, int hashValue) {
+      long[] ctrl = this.ctrl;
+      int mask = groupMask;
+      int h = mix(hashValue);
+      for (int g = firstGroup(h) & mask, step = 1; ; g = (g + step++) & mask) {
+        long available = matchEmpty(ctrl[g]);
+        if (available != 0) {
+          int i = slotOf(g, available);
+          setControl(i, fingerprint(h));
+          positions.set(i, index);
+          return;
+        }
+      }
+    }
+  }
+}
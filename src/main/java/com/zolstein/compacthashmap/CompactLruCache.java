@@ -0,0 +1,314 @@
+package com.zolstein.compacthashmap;
+
+import static com.zolstein.compacthashmap.CompactIndex.DUMMY;
+import static com.zolstein.compacthashmap.CompactIndex.FREE;
+import static com.zolstein.compacthashmap.CompactIndex.index;
+import static com.zolstein.compacthashmap.CompactIndex.slot;
+
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/*
+ * Bounded cache that evicts the least recently used entry, the replacement
+ * for a LinkedHashMap in access order with removeEldestEntry.
+ *
+ * Entries live in CompactHashMap-style dense arrays behind the shared narrow
+ * index. Recency is a doubly linked list threaded through two int arrays of
+ * dense positions, so an entry costs its hash, key and value references,
+ * two ints of links and its index slots, with no node object. An evicted
+ * entry's position is reused by the entry that displaced it.
+ *
+ * get and put count as uses; peek and containsKey do not. Not thread-safe.
+ */
+@SuppressWarnings("unchecked")
+public class CompactLruCache<K, V> {
+
+  private static final int NONE = -1;
+  private static final int DEFAULT_CAPACITY = 8;
+
+  private final int maxSize;
+  private final BiConsumer<? super K, ? super V> evictionListener;
+  private CompactIndex indexMap;
+  private int used;
+  private int filled;
+  private int[] hashes;
+  private K[] keys;
+  private V[] values;
+  // Recency links between dense positions, from head (eldest) to tail
+  private int[] prev;
+  private int[] next;
+  private int head;
+  private int tail;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  public CompactLruCache(int maxSize) {
+    this(maxSize, (k, v) -> {});
+  }
+
+  /*
+   * evictionListener is called with each entry evicted to make room, after
+   * it has been removed. It is not called for remove, clear or replaced
+   * values.
+   */
+  public CompactLruCache(int maxSize, BiConsumer<? super K, ? super V> evictionListener) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("Illegal maximum size: " + maxSize);
+    }
+    this.maxSize = maxSize;
+    this.evictionListener = Objects.requireNonNull(evictionListener);
+    clear();
+  }
+
+  private void initArrays(int size) {
+    hashes = new int[size];
+    keys = (K[]) new Object[size];
+    values = (V[]) new Object[size];
+    prev = new int[size];
+    next = new int[size];
+  }
+
+  private void resizeArrays(int size) {
+    int[] newHashes = new int[size];
+    System.arraycopy(hashes, 0, newHashes, 0, used);
+    hashes = newHashes;
+    K[] newKeys = (K[]) new Object[size];
+    System.arraycopy(keys, 0, newKeys, 0, used);
+    keys = newKeys;
+    V[] newValues = (V[]) new Object[size];
+    System.arraycopy(values, 0, newValues, 0, used);
+    values = newValues;
+    int[] newPrev = new int[size];
+    System.arraycopy(prev, 0, newPrev, 0, used);
+    prev = newPrev;
+    int[] newNext = new int[size];
+    System.arraycopy(next, 0, newNext, 0, used);
+    next = newNext;
+  }
+
+  private long lookup(Object key, int hashValue) {
+    assert filled < indexMap.size();
+    return indexMap.lookup(key, hashValue, keys, hashes);
+  }
+
+  // A full cache rebuilds at the same size, purging eviction tombstones in place
+  private void resizeIndexMap(int n) {
+    n = CompactIndex.tableSizeFor(n);
+    CompactIndex newIndexMap = CompactIndex.reuseOrCreate(indexMap, n);
+    for (int index = 0; index < used; index++) {
+      newIndexMap.insertFresh(index, hashes[index]);
+    }
+    indexMap = newIndexMap;
+    filled = used;
+  }
+
+  private void unlink(int index) {
+    int p = prev[index];
+    int n = next[index];
+    if (p == NONE) {
+      head = n;
+    } else {
+      next[p] = n;
+    }
+    if (n == NONE) {
+      tail = p;
+    } else {
+      prev[n] = p;
+    }
+  }
+
+  private void linkLast(int index) {
+    prev[index] = tail;
+    next[index] = NONE;
+    if (tail == NONE) {
+      head = index;
+    } else {
+      next[tail] = index;
+    }
+    tail = index;
+  }
+
+  private void moveToTail(int index) {
+    if (index != tail) {
+      unlink(index);
+      linkLast(index);
+    }
+  }
+
+  public int size() {
+    return used;
+  }
+
+  public boolean isEmpty() {
+    return used == 0;
+  }
+
+  public int maxSize() {
+    return maxSize;
+  }
+
+  public boolean containsKey(Object key) {
+    return index(lookup(key, key.hashCode())) >= 0;
+  }
+
+  /*
+   * Returns the cached value and marks the entry most recently used, or
+   * returns null on a miss.
+   */
+  public V get(Object key) {
+    int index = index(lookup(key, key.hashCode()));
+    if (index < 0) {
+      misses++;
+      return null;
+    }
+    hits++;
+    moveToTail(index);
+    return values[index];
+  }
+
+  // Like get, but leaves recency and the counters alone
+  public V peek(Object key) {
+    int index = index(lookup(key, key.hashCode()));
+    return index < 0 ? null : values[index];
+  }
+
+  /*
+   * Stores the value and marks the entry most recently used. Adding a key
+   * to a full cache first evicts the least recently used entry.
+   */
+  public V put(K key, V value) {
+    int hash = key.hashCode();
+    long lookups = lookup(key, hash);
+    int index = index(lookups);
+    if (index >= 0) {
+      V old = values[index];
+      values[index] = value;
+      moveToTail(index);
+      return old;
+    }
+    if (used == maxSize) {
+      evictAndReplace(lookups, hash, key, value);
+      return null;
+    }
+    if (used == hashes.length) {
+      resizeArrays(Math.min(maxSize, used * 2));
+    }
+    index = used++;
+    hashes[index] = hash;
+    keys[index] = key;
+    values[index] = value;
+    linkLast(index);
+    indexMap.set(slot(lookups), index);
+    if (index(lookups) == FREE) {
+      int localFilled = ++filled;
+      if (localFilled * 3 > indexMap.size() * 2) {
+        resizeIndexMap(2 * used);
+      }
+    }
+    return null;
+  }
+
+  // Stores the new entry at the eldest entry's position
+  private void evictAndReplace(long lookups, int hash, K key, V value) {
+    int index = head;
+    K evictedKey = keys[index];
+    V evictedValue = values[index];
+    indexMap.set(indexMap.lookupForIndex(index, hashes[index]), DUMMY);
+    moveToTail(index);
+    hashes[index] = hash;
+    keys[index] = key;
+    values[index] = value;
+    indexMap.set(slot(lookups), index);
+    if (index(lookups) == FREE) {
+      int localFilled = ++filled;
+      if (localFilled * 3 > indexMap.size() * 2) {
+        resizeIndexMap(2 * used);
+      }
+    }
+    evictions++;
+    evictionListener.accept(evictedKey, evictedValue);
+  }
+
+  public V remove(Object key) {
+    long lookups = lookup(key, key.hashCode());
+    int index = index(lookups);
+    if (index < 0) {
+      return null;
+    }
+    indexMap.set(slot(lookups), DUMMY);
+    unlink(index);
+    V removed = values[index];
+    int lastIndex = --used;
+    if (index != lastIndex) {
+      // Move the last entry into the hole, relinking its neighbours
+      int j = indexMap.lookupForIndex(lastIndex, hashes[lastIndex]);
+      indexMap.set(j, index);
+      hashes[index] = hashes[lastIndex];
+      keys[index] = keys[lastIndex];
+      values[index] = values[lastIndex];
+      int p = prev[lastIndex];
+      int n = next[lastIndex];
+      prev[index] = p;
+      next[index] = n;
+      if (p == NONE) {
+        head = index;
+      } else {
+        next[p] = index;
+      }
+      if (n == NONE) {
+        tail = index;
+      } else {
+        prev[n] = index;
+      }
+    }
+    keys[lastIndex] = null;
+    values[lastIndex] = null;
+    return removed;
+  }
+
+  // Removes every entry without calling the eviction listener. Counters are kept.
+  public void clear() {
+    int capacity = Math.min(DEFAULT_CAPACITY, maxSize);
+    indexMap = CompactIndex.create(DEFAULT_CAPACITY);
+    initArrays(capacity);
+    used = 0;
+    filled = 0;
+    head = NONE;
+    tail = NONE;
+  }
+
+  // Least recently used key, the next to be evicted, or null if empty
+  public K eldestKey() {
+    return head == NONE ? null : keys[head];
+  }
+
+  /*
+   * Visits the entries from least to most recently used, without changing
+   * recency. action must not modify the cache.
+   */
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    Objects.requireNonNull(action);
+    for (int i = head; i != NONE; i = next[i]) {
+      action.accept(keys[i], values[i]);
+    }
+  }
+
+  public long hitCount() {
+    return hits;
+  }
+
+  public long missCount() {
+    return misses;
+  }
+
+  public long evictionCount() {
+    return evictions;
+  }
+
+  public void resetCounters() {
+    hits = 0;
+    misses = 0;
+    evictions = 0;
+  }
+}
@@ -0,0 +1,73 @@
+package com.zolstein.compacthashmap;
+
+import java.util.ConcurrentModificationException;
+
+class CompactMapCursor<K, V> implements MapCursor<K, V> {
+
+  private final CompactHashMap<K, V> backingMap;
+  private long version;
+  private int index = -1;
+  private boolean hasCurrent = false;
+
+  CompactMapCursor(CompactHashMap<K, V> map) {
+    this.backingMap = map;
+    this.version = map.version;
+  }
+
+  private void checkCurrent() {
+    if (!hasCurrent) {
+      throw new IllegalStateException("No current entry");
+    }
+  }
+
+  @Override
+  public boolean advance() {
+    if (version != backingMap.version) {
+      throw new ConcurrentModificationException();
+    }
+    int size = backingMap.denseSize();
+    int next = backingMap.skipHoles(index + 1);
+    if (next < size) {
+      index = next;
+      hasCurrent = true;
+    } else {
+      index = size;
+      hasCurrent = false;
+    }
+    return hasCurrent;
+  }
+
+  @Override
+  public K key() {
+    checkCurrent();
+    return backingMap.keys[index];
+  }
+
+  @Override
+  public V value() {
+    checkCurrent();
+    return backingMap.values[index];
+  }
+
+  @Override
+  public V setValue(V value) {
+    checkCurrent();
+    V[] values = backingMap.values;
+    V ret = values[index];
+    values[index] = value;
+    return ret;
+  }
+
+  @Override
+  public void remove() {
+    checkCurrent();
+    if (version != backingMap.version) {
+      throw new ConcurrentModificationException();
+    }
+    // The last entry moves into this position, so visit it again next. An
+    // insertion-ordered map leaves a hole there instead, which is skipped.
+    backingMap.removeAtIndex(index--);
+    version = backingMap.version;
+    hasCurrent = false;
+  }
+}
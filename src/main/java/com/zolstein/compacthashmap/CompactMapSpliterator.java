@@ -0,0 +1,183 @@
+package com.zolstein.compacthashmap;
+
+import java.util.ConcurrentModificationException;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/*
+ * Spliterators for the map views. Entries occupy the dense index range
+ * [0, size), so a spliterator is just a subrange: splitting halves it
+ * exactly and every part knows its size. The range is bound to the map's
+ * size on first use, and a structural modification during traversal throws
+ * ConcurrentModificationException.
+ *
+ * An insertion-ordered map may have holes in the range, which are skipped.
+ * Sizes are then only upper bounds, so SIZED and SUBSIZED are not reported.
+ *
+ * Key and value spliterators hand out the stored objects and allocate
+ * nothing per element. The entry spliterator does allocate one small entry
+ * per element; see EntrySpliterator.
+ */
+abstract class CompactMapSpliterator<K, V, T> implements Spliterator<T> {
+
+  final CompactHashMap<K, V> backingMap;
+  int index;
+  private int fence; // -1 until bound
+  private long version;
+  private boolean exact;
+
+  CompactMapSpliterator(CompactHashMap<K, V> map, int origin, int fence, long version) {
+    this.backingMap = map;
+    this.index = origin;
+    this.fence = fence;
+    this.version = version;
+  }
+
+  private int getFence() {
+    int hi = fence;
+    if (hi < 0) {
+      version = backingMap.version;
+      hi = fence = backingMap.denseSize();
+      exact = hi == backingMap.size();
+    }
+    return hi;
+  }
+
+  abstract T element(int i);
+
+  abstract CompactMapSpliterator<K, V, T> split(int origin, int fence, long version);
+
+  @Override
+  public Spliterator<T> trySplit() {
+    int hi = getFence();
+    int lo = index;
+    int mid = (lo + hi) >>> 1;
+    if (lo >= mid) {
+      return null;
+    }
+    index = mid;
+    CompactMapSpliterator<K, V, T> prefix = split(lo, mid, version);
+    prefix.exact = exact;
+    return prefix;
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super T> action) {
+    if (action == null) {
+      throw new NullPointerException();
+    }
+    int hi = getFence();
+    K[] keys = backingMap.keys;
+    while (index < hi) {
+      int i = index++;
+      if (keys[i] != null) {
+        action.accept(element(i));
+        checkVersion();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void forEachRemaining(Consumer<? super T> action) {
+    if (action == null) {
+      throw new NullPointerException();
+    }
+    int hi = getFence();
+    K[] keys = backingMap.keys;
+    for (int i = index; i < hi; i++) {
+      if (keys[i] != null) {
+        action.accept(element(i));
+      }
+    }
+    index = hi;
+    checkVersion();
+  }
+
+  private void checkVersion() {
+    if (version != backingMap.version) {
+      throw new ConcurrentModificationException();
+    }
+  }
+
+  @Override
+  public long estimateSize() {
+    return getFence() - index;
+  }
+
+  @Override
+  public int characteristics() {
+    getFence();
+    return exact ? SIZED | SUBSIZED | ORDERED : ORDERED;
+  }
+
+  static final class KeySpliterator<K, V> extends CompactMapSpliterator<K, V, K> {
+
+    KeySpliterator(CompactHashMap<K, V> map, int origin, int fence, long version) {
+      super(map, origin, fence, version);
+    }
+
+    @Override
+    K element(int i) {
+      return backingMap.keys[i];
+    }
+
+    @Override
+    KeySpliterator<K, V> split(int origin, int fence, long version) {
+      return new KeySpliterator<>(backingMap, origin, fence, version);
+    }
+
+    @Override
+    public int characteristics() {
+      return super.characteristics() | DISTINCT | NONNULL;
+    }
+  }
+
+  static final class ValueSpliterator<K, V> extends CompactMapSpliterator<K, V, V> {
+
+    ValueSpliterator(CompactHashMap<K, V> map, int origin, int fence, long version) {
+      super(map, origin, fence, version);
+    }
+
+    @Override
+    V element(int i) {
+      return backingMap.values[i];
+    }
+
+    @Override
+    ValueSpliterator<K, V> split(int origin, int fence, long version) {
+      return new ValueSpliterator<>(backingMap, origin, fence, version);
+    }
+  }
+
+  /*
+   * Entries escape into user code - collected, sorted, buffered by a
+   * parallel pipeline - so each element has to be its own object; a single
+   * reused entry would silently corrupt those results. Callers that only need
+   * the key and value should use CompactHashMap.forEach or parallelForEach,
+   * which pass them without any entry object.
+   */
+  static final class EntrySpliterator<K, V> extends CompactMapSpliterator<K, V, Map.Entry<K, V>> {
+
+    EntrySpliterator(CompactHashMap<K, V> map, int origin, int fence, long version) {
+      super(map, origin, fence, version);
+    }
+
+    @Override
+    Map.Entry<K, V> element(int i) {
+      return new CompactMapEntry<>(backingMap, i);
+    }
+
+    @Override
+    EntrySpliterator<K, V> split(int origin, int fence, long version) {
+      return new EntrySpliterator<>(backingMap, origin, fence, version);
+    }
+
+    @Override
+    public int characteristics() {
+      return super.characteristics() | DISTINCT | NONNULL;
+    }
+  }
+}
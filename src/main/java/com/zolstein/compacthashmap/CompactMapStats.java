@@ -0,0 +1,181 @@
+package com.zolstein.compacthashmap;
+
+import com.zolstein.compacthashmap.CompactHashMap.IndexType;
+import java.util.Locale;
+
+/*
+ * Point-in-time view of a CompactHashMap's layout, returned by
+ * CompactHashMap.stats(). The layout figures are computed when the snapshot
+ * is taken, in time linear in the map's size. The counters are totals since
+ * setStatsEnabled(true), and are all 0 while it is off.
+ */
+public final class CompactMapStats {
+
+  int size;
+  int denseSize;
+  int capacity;
+  int holes;
+  IndexType indexType;
+  int indexSize;
+  int slotBytes;
+  int filled;
+  int tombstones;
+  int treeSize;
+  boolean resizing;
+  double averageProbeLength;
+  int maxProbeLength;
+  int unreachable;
+  long retainedBytes;
+  boolean countersEnabled;
+  long lookups;
+  long probeSteps;
+  long indexResizes;
+  long widthUpgrades;
+  long tombstonePurges;
+
+  CompactMapStats() {
+  }
+
+  public int size() {
+    return size;
+  }
+
+  // Dense array positions in use, holes included
+  public int denseSize() {
+    return denseSize;
+  }
+
+  // Length of the dense arrays
+  public int capacity() {
+    return capacity;
+  }
+
+  // Removed positions not yet compacted, in an insertion-ordered map
+  public int holes() {
+    return holes;
+  }
+
+  public IndexType indexType() {
+    return indexType;
+  }
+
+  public int indexSize() {
+    return indexSize;
+  }
+
+  // Width of an index slot: 1, 2 or 4, plus a control byte for SWISS
+  public int slotBytes() {
+    return slotBytes;
+  }
+
+  // Index slots that are not FREE, live entries and tombstones alike
+  public int filled() {
+    return filled;
+  }
+
+  // DUMMY slots left by removals, until the next rebuild purges them
+  public int tombstones() {
+    return tombstones;
+  }
+
+  public double loadFactor() {
+    return indexSize == 0 ? 0 : (double) filled / indexSize;
+  }
+
+  // Entries moved out of the index by a hardened map's flood fallback
+  public int treeSize() {
+    return treeSize;
+  }
+
+  // Whether an incremental resize is still moving entries to the new index
+  public boolean isResizing() {
+    return resizing;
+  }
+
+  /*
+   * Probe steps a lookup of each entry in the index takes to reach it. An
+   * average well above 1.5 or a large maximum points at a poor hashCode.
+   */
+  public double averageProbeLength() {
+    return averageProbeLength;
+  }
+
+  public int maxProbeLength() {
+    return maxProbeLength;
+  }
+
+  /*
+   * Entries that no index slot or tree node points at, so that no lookup
+   * can find them. Always 0 unless the map is corrupt; such entries are left
+   * out of the probe lengths.
+   */
+  public int unreachable() {
+    return unreachable;
+  }
+
+  /*
+   * Bytes held by the dense arrays and the index, counting references as
+   * 4 bytes (compressed oops). Excludes object headers, the keys and values
+   * themselves and any collision tree.
+   */
+  public long retainedBytes() {
+    return retainedBytes;
+  }
+
+  public boolean countersEnabled() {
+    return countersEnabled;
+  }
+
+  // Key lookups, by get, put, remove and the other keyed operations
+  public long lookups() {
+    return lookups;
+  }
+
+  // Probe steps over all counted lookups, up to the slot each one settled on
+  public long probeSteps() {
+    return probeSteps;
+  }
+
+  // Index rebuilds that changed the index size, growing or shrinking
+  public long indexResizes() {
+    return indexResizes;
+  }
+
+  // Index rebuilds that moved to a wider slot type
+  public long widthUpgrades() {
+    return widthUpgrades;
+  }
+
+  // Same-size rebuilds that only purged tombstones
+  public long tombstonePurges() {
+    return tombstonePurges;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("CompactMapStats{");
+    sb.append("size=").append(size)
+        .append(", denseSize=").append(denseSize)
+        .append(", capacity=").append(capacity)
+        .append(", holes=").append(holes)
+        .append(", indexType=").append(indexType)
+        .append(", indexSize=").append(indexSize)
+        .append(", slotBytes=").append(slotBytes)
+        .append(", filled=").append(filled)
+        .append(", tombstones=").append(tombstones)
+        .append(", treeSize=").append(treeSize)
+        .append(", resizing=").append(resizing)
+        .append(", averageProbeLength=").append(String.format(Locale.ROOT, "%.3f", averageProbeLength))
+        .append(", maxProbeLength=").append(maxProbeLength)
+        .append(", unreachable=").append(unreachable)
+        .append(", retainedBytes=").append(retainedBytes);
+    if (countersEnabled) {
+      sb.append(", lookups=").append(lookups)
+          .append(", probeSteps=").append(probeSteps)
+          .append(", indexResizes=").append(indexResizes)
+          .append(", widthUpgrades=").append(widthUpgrades)
+          .append(", tombstonePurges=").append(tombstonePurges);
+    }
+    return sb.append('}').toString();
+  }
+}
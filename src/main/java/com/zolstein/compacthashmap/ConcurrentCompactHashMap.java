@@ -0,0 +1,539 @@
+package com.zolstein.compacthashmap;
+
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/*
+ * Thread-safe map that stripes the key space over a fixed number of
+ * CompactHashMap segments, each guarded by its own monitor. Operations on
+ * keys in different segments never contend, and per-entry memory is that of
+ * CompactHashMap plus a small constant per segment.
+ *
+ * Every single-key operation, including putIfAbsent, computeIfAbsent, compute
+ * and merge, runs entirely under its segment's lock and is therefore atomic.
+ * Mapping functions must not touch the map themselves.
+ *
+ * Iteration and bulk reads (size, equals, hashCode, views) are weakly
+ * consistent: each segment is snapshotted under its lock in turn, so they
+ * reflect some state of every segment but not necessarily one moment of the
+ * whole map. Iterators never throw ConcurrentModificationException.
+ *
+ * Null keys and values are not supported.
+ */
+@SuppressWarnings("unchecked")
+public class ConcurrentCompactHashMap<K, V> implements ConcurrentMap<K, V> {
+
+  private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+  private static final int MAX_SEGMENTS = 1 << 16;
+
+  private final CompactHashMap<K, V>[] segments;
+  private final int segmentShift;
+
+  public ConcurrentCompactHashMap() {
+    this(DEFAULT_CONCURRENCY_LEVEL);
+  }
+
+  /*
+   * concurrencyLevel is the expected number of concurrently writing threads;
+   * it is rounded up to a power of two to give the number of segments.
+   */
+  public ConcurrentCompactHashMap(int concurrencyLevel) {
+    if (concurrencyLevel <= 0) {
+      throw new IllegalArgumentException("concurrencyLevel must be positive: " + concurrencyLevel);
+    }
+    int n = CompactIndex.tableSizeFor(Math.min(concurrencyLevel, MAX_SEGMENTS));
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    CompactHashMap<K, V>[] segments = new CompactHashMap[n];
+    for (int i = 0; i < n; i++) {
+      segments[i] = new CompactHashMap<>();
+    }
+    this.segments = segments;
+    segmentShift = 32 - Integer.numberOfTrailingZeros(n);
+  }
+
+  public ConcurrentCompactHashMap(Map<? extends K, ? extends V> source) {
+    this();
+    putAll(source);
+  }
+
+  /*
+   * Picks a segment from the high bits of a scrambled hash; the segments'
+   * own indexes probe with the low bits, so the two stay independent.
+   */
+  private CompactHashMap<K, V> segmentFor(Object key) {
+    if (segments.length == 1) {
+      return segments[0];
+    }
+    int h = key.hashCode() * 0x9E3779B9;
+    return segments[h >>> segmentShift];
+  }
+
+  @Override
+  public int size() {
+    long size = 0;
+    for (CompactHashMap<K, V> segment : segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return (int) Math.min(size, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    for (CompactHashMap<K, V> segment : segments) {
+      synchronized (segment) {
+        if (!segment.isEmpty()) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    CompactHashMap<K, V> segment = segmentFor(key);
+    synchronized (segment) {
+      return segment.containsKey(key);
+    }
+  }
+
+  @Override
+  public boolean containsValue(Object value) {
+    Objects.requireNonNull(value);
+    for (CompactHashMap<K, V> segment : segments) {
+      synchronized (segment) {
+        V[] values = segment.values;
+        for (int i = 0, n = segment.size(); i < n; i++) {
+          if (value.equals(values[i])) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public V get(Object key) {
+    CompactHashMap<K, V> segment = segmentFor(key);
+    synchronized (segment) {
+      return segment.get(key);
+    }
+  }
+
+  @Override
+  public V getOrDefault(Object key, V defaultValue) {
+    V value = get(key);
+    return value == null ? defaultValue : value;
+  }
+
+  @Override
+  public V put(K key, V value) {
+    Objects.requireNonNull(value);
+    CompactHashMap<K, V> segment = segmentFor(key);
+    synchronized (segment) {
+      return segment.put(key, value);
+    }
+  }
+
+  @Override
+  public V remove(Object key) {
+    CompactHashMap<K, V> segment = segmentFor(key);
+    synchronized (segment) {
+      return segment.remove(key);
+    }
+  }
+
+  @Override
+  public void putAll(Map<? extends K, ? extends V> m) {
+    for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+      put(e.getKey(), e.getValue());
+    }
+  }
+
+  @Override
+  public void clear() {
+    for (CompactHashMap<K, V> segment : segments) {
+      synchronized (segment) {
+        segment.clear();
+      }
+    }
+  }
+
+  @Override
+  public V putIfAbsent(K key, V value) {
+    Objects.requireNonNull(value);
+    CompactHashMap<K, V> segment = segmentFor(key);
+    synchronized (segment) {
+      V old = segment.get(key);
+      if (old == null) {
+        segment.put(key, value);
+      }
+      return old;
+    }
+  }
+
+  @Override
+  public boolean remove(Object key, Object value) {
+    if (value == null) {
+      return false;
+    }
+    CompactHashMap<K, V> segment = segmentFor(key);
+    synchronized (segment) {
+      if (value.equals(segment.get(key))) {
+        segment.remove(key);
+        return true;
+      }
+      return false;
+    }
+  }
+
+  @Override
+  public boolean replace(K key, V oldValue, V newValue) {
+    Objects.requireNonNull(oldValue);
+    Objects.requireNonNull(newValue);
+    CompactHashMap<K, V> segment = segmentFor(key);
+    synchronized (segment) {
+      if (oldValue.equals(segment.get(key))) {
+        segment.put(key, newValue);
+        return true;
+      }
+      return false;
+    }
+  }
+
+  @Override
+  public V replace(K key, V value) {
+    Objects.requireNonNull(value);
+    CompactHashMap<K, V> segment = segmentFor(key);
+    synchronized (segment) {
+      return segment.containsKey(key) ? segment.put(key, value) : null;
+    }
+  }
+
+  @Override
+  public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+    Objects.requireNonNull(mappingFunction);
+    CompactHashMap<K, V> segment = segmentFor(key);
+    synchronized (segment) {
+      return segment.computeIfAbsent(key, mappingFunction);
+    }
+  }
+
+  @Override
+  public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+    Objects.requireNonNull(remappingFunction);
+    CompactHashMap<K, V> segment = segmentFor(key);
+    synchronized (segment) {
+      return segment.computeIfPresent(key, remappingFunction);
+    }
+  }
+
+  @Override
+  public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+    Objects.requireNonNull(remappingFunction);
+    CompactHashMap<K, V> segment = segmentFor(key);
+    synchronized (segment) {
+      return segment.compute(key, remappingFunction);
+    }
+  }
+
+  @Override
+  public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+    Objects.requireNonNull(value);
+    Objects.requireNonNull(remappingFunction);
+    CompactHashMap<K, V> segment = segmentFor(key);
+    synchronized (segment) {
+      return segment.merge(key, value, remappingFunction);
+    }
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    Objects.requireNonNull(action);
+    for (CompactHashMap<K, V> segment : segments) {
+      Object[] snapshot = snapshot(segment);
+      int n = snapshot.length / 2;
+      for (int i = 0; i < n; i++) {
+        action.accept((K) snapshot[i], (V) snapshot[n + i]);
+      }
+    }
+  }
+
+  @Override
+  public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+    Objects.requireNonNull(function);
+    for (CompactHashMap<K, V> segment : segments) {
+      synchronized (segment) {
+        V[] values = segment.values;
+        K[] keys = segment.keys;
+        for (int i = 0, n = segment.size(); i < n; i++) {
+          values[i] = Objects.requireNonNull(function.apply(keys[i], values[i]));
+        }
+      }
+    }
+  }
+
+  /*
+   * Copies a segment's live keys followed by its live values into one array.
+   */
+  private static Object[] snapshot(CompactHashMap<?, ?> segment) {
+    synchronized (segment) {
+      int n = segment.size();
+      Object[] ret = Arrays.copyOf(segment.keys, 2 * n, Object[].class);
+      System.arraycopy(segment.values, 0, ret, n, n);
+      return ret;
+    }
+  }
+
+  @Override
+  public Set<K> keySet() {
+    return new AbstractSet<K>() {
+      @Override
+      public Iterator<K> iterator() {
+        return new TransformedIterator<>(new EntryIterator(), Map.Entry::getKey);
+      }
+
+      @Override
+      public int size() {
+        return ConcurrentCompactHashMap.this.size();
+      }
+
+      @Override
+      public boolean contains(Object o) {
+        return containsKey(o);
+      }
+
+      @Override
+      public boolean remove(Object o) {
+        return ConcurrentCompactHashMap.this.remove(o) != null;
+      }
+
+      @Override
+      public void clear() {
+        ConcurrentCompactHashMap.this.clear();
+      }
+    };
+  }
+
+  @Override
+  public Collection<V> values() {
+    return new AbstractCollection<V>() {
+      @Override
+      public Iterator<V> iterator() {
+        return new TransformedIterator<>(new EntryIterator(), Map.Entry::getValue);
+      }
+
+      @Override
+      public int size() {
+        return ConcurrentCompactHashMap.this.size();
+      }
+
+      @Override
+      public boolean contains(Object o) {
+        return containsValue(o);
+      }
+
+      @Override
+      public void clear() {
+        ConcurrentCompactHashMap.this.clear();
+      }
+    };
+  }
+
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    return new AbstractSet<Map.Entry<K, V>>() {
+      @Override
+      public Iterator<Map.Entry<K, V>> iterator() {
+        return new EntryIterator();
+      }
+
+      @Override
+      public int size() {
+        return ConcurrentCompactHashMap.this.size();
+      }
+
+      @Override
+      public boolean contains(Object o) {
+        if (!(o instanceof Map.Entry)) {
+          return false;
+        }
+        Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+        Object value = e.getKey() == null ? null : get(e.getKey());
+        return value != null && value.equals(e.getValue());
+      }
+
+      @Override
+      public boolean remove(Object o) {
+        if (!(o instanceof Map.Entry)) {
+          return false;
+        }
+        Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+        return e.getKey() != null && ConcurrentCompactHashMap.this.remove(e.getKey(), e.getValue());
+      }
+
+      @Override
+      public void clear() {
+        ConcurrentCompactHashMap.this.clear();
+      }
+    };
+  }
+
+  @Override
+  public int hashCode() {
+    int ret = 0;
+    for (CompactHashMap<K, V> segment : segments) {
+      synchronized (segment) {
+        ret += segment.hashCode();
+      }
+    }
+    return ret;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    } else if (!(o instanceof Map)) {
+      return false;
+    }
+    Map<?, ?> other = (Map) o;
+    if (other.size() != size()) {
+      return false;
+    }
+    for (Map.Entry<?, ?> e : other.entrySet()) {
+      Object key = e.getKey();
+      Object value = e.getValue();
+      if (key == null || value == null || !value.equals(get(key))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    boolean first = true;
+    for (Map.Entry<K, V> e : entrySet()) {
+      if (!first) {
+        sb.append(", ");
+      }
+      first = false;
+      sb.append(e.getKey()).append('=').append(e.getValue());
+    }
+    return sb.append('}').toString();
+  }
+
+  /*
+   * Walks the segments in order, iterating over a snapshot of each one.
+   * Entries write through to the map on setValue and remove() removes the
+   * last returned key, both without invalidating the iterator.
+   */
+  private class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+    private int nextSegment = 0;
+    private Object[] snapshot = new Object[0];
+    private int nextIndex = 0;
+    private K lastKey = null;
+
+    @Override
+    public boolean hasNext() {
+      while (nextIndex >= snapshot.length / 2) {
+        if (nextSegment == segments.length) {
+          return false;
+        }
+        snapshot = snapshot(segments[nextSegment++]);
+        nextIndex = 0;
+      }
+      return true;
+    }
+
+    @Override
+    public Map.Entry<K, V> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      int n = snapshot.length / 2;
+      K key = (K) snapshot[nextIndex];
+      V value = (V) snapshot[n + nextIndex];
+      nextIndex++;
+      lastKey = key;
+      return new WriteThroughEntry(key, value);
+    }
+
+    @Override
+    public void remove() {
+      if (lastKey == null) {
+        throw new IllegalStateException();
+      }
+      ConcurrentCompactHashMap.this.remove(lastKey);
+      lastKey = null;
+    }
+  }
+
+  private class WriteThroughEntry implements Map.Entry<K, V> {
+
+    private final K key;
+    private V value;
+
+    WriteThroughEntry(K key, V value) {
+      this.key = key;
+      this.value = value;
+    }
+
+    @Override
+    public K getKey() {
+      return key;
+    }
+
+    @Override
+    public V getValue() {
+      return value;
+    }
+
+    @Override
+    public V setValue(V value) {
+      Objects.requireNonNull(value);
+      V ret = this.value;
+      this.value = value;
+      put(key, value);
+      return ret;
+    }
+
+    @Override
+    public int hashCode() {
+      return key.hashCode() ^ value.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o == this) {
+        return true;
+      } else if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry<?, ?> other = (Map.Entry) o;
+      return key.equals(other.getKey()) && value.equals(other.getValue());
+    }
+
+    @Override
+    public String toString() {
+      return key + "=" + value;
+    }
+  }
+}
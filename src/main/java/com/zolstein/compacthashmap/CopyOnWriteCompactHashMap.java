@@ -0,0 +1,294 @@
+package com.zolstein.compacthashmap;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/*
+ * Thread-safe map for read-mostly data such as configuration or routing
+ * tables. The current contents are an immutable CompactHashMap snapshot
+ * published through a single volatile field: reads take no locks and
+ * perform no writes, so get costs one volatile load plus a plain
+ * CompactHashMap lookup regardless of how many threads are reading.
+ *
+ * Every write copies the snapshot's arrays and index (no rehashing), applies
+ * the change to the copy and publishes it. Writers are serialized by a lock.
+ * Use update() to apply many changes with a single copy and publication;
+ * readers see either none or all of a batch.
+ *
+ * Views and iterators are read-only and reflect the snapshot that was
+ * current when they were obtained. Null keys and values are not supported.
+ */
+public class CopyOnWriteCompactHashMap<K, V> implements ConcurrentMap<K, V> {
+
+  private final Object writeLock = new Object();
+  private volatile CompactHashMap<K, V> snapshot;
+
+  public CopyOnWriteCompactHashMap() {
+    snapshot = new CompactHashMap<>();
+  }
+
+  public CopyOnWriteCompactHashMap(Map<? extends K, ? extends V> source) {
+    CompactHashMap<K, V> initial = new CompactHashMap<>();
+    for (Map.Entry<? extends K, ? extends V> e : source.entrySet()) {
+      initial.put(e.getKey(), Objects.requireNonNull(e.getValue()));
+    }
+    snapshot = initial;
+  }
+
+  /*
+   * Returns a read-only view of the current contents. The view never changes,
+   * even if the map is written afterwards.
+   */
+  public Map<K, V> snapshot() {
+    return Collections.unmodifiableMap(snapshot);
+  }
+
+  /*
+   * Applies batch to a private copy of the current contents, then publishes
+   * the result atomically. If batch throws, nothing is published. The map
+   * passed to batch must not escape it, and batch must not store null values.
+   */
+  public void update(Consumer<? super Map<K, V>> batch) {
+    synchronized (writeLock) {
+      CompactHashMap<K, V> next = snapshot.copy();
+      batch.accept(next);
+      snapshot = next;
+    }
+  }
+
+  @Override
+  public int size() {
+    return snapshot.size();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return snapshot.isEmpty();
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return snapshot.containsKey(key);
+  }
+
+  @Override
+  public boolean containsValue(Object value) {
+    return snapshot.containsValue(value);
+  }
+
+  @Override
+  public V get(Object key) {
+    return snapshot.get(key);
+  }
+
+  @Override
+  public V getOrDefault(Object key, V defaultValue) {
+    V value = snapshot.get(key);
+    return value == null ? defaultValue : value;
+  }
+
+  @Override
+  public V put(K key, V value) {
+    Objects.requireNonNull(value);
+    synchronized (writeLock) {
+      CompactHashMap<K, V> next = snapshot.copy();
+      V old = next.put(key, value);
+      snapshot = next;
+      return old;
+    }
+  }
+
+  @Override
+  public V remove(Object key) {
+    synchronized (writeLock) {
+      CompactHashMap<K, V> current = snapshot;
+      if (!current.containsKey(key)) {
+        return null;
+      }
+      CompactHashMap<K, V> next = current.copy();
+      V old = next.remove(key);
+      snapshot = next;
+      return old;
+    }
+  }
+
+  @Override
+  public void putAll(Map<? extends K, ? extends V> m) {
+    update(next -> {
+      for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+        next.put(e.getKey(), Objects.requireNonNull(e.getValue()));
+      }
+    });
+  }
+
+  @Override
+  public void clear() {
+    synchronized (writeLock) {
+      snapshot = new CompactHashMap<>();
+    }
+  }
+
+  @Override
+  public V putIfAbsent(K key, V value) {
+    Objects.requireNonNull(value);
+    synchronized (writeLock) {
+      V old = snapshot.get(key);
+      if (old == null) {
+        put(key, value);
+      }
+      return old;
+    }
+  }
+
+  @Override
+  public boolean remove(Object key, Object value) {
+    synchronized (writeLock) {
+      if (value != null && value.equals(snapshot.get(key))) {
+        remove(key);
+        return true;
+      }
+      return false;
+    }
+  }
+
+  @Override
+  public boolean replace(K key, V oldValue, V newValue) {
+    Objects.requireNonNull(oldValue);
+    Objects.requireNonNull(newValue);
+    synchronized (writeLock) {
+      if (oldValue.equals(snapshot.get(key))) {
+        put(key, newValue);
+        return true;
+      }
+      return false;
+    }
+  }
+
+  @Override
+  public V replace(K key, V value) {
+    Objects.requireNonNull(value);
+    synchronized (writeLock) {
+      return snapshot.containsKey(key) ? put(key, value) : null;
+    }
+  }
+
+  @Override
+  public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+    Objects.requireNonNull(mappingFunction);
+    V value = snapshot.get(key);
+    if (value != null) {
+      return value;
+    }
+    synchronized (writeLock) {
+      value = snapshot.get(key);
+      if (value == null) {
+        value = mappingFunction.apply(key);
+        if (value != null) {
+          put(key, value);
+        }
+      }
+      return value;
+    }
+  }
+
+  @Override
+  public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+    Objects.requireNonNull(remappingFunction);
+    synchronized (writeLock) {
+      V old = snapshot.get(key);
+      if (old == null) {
+        return null;
+      }
+      return apply(key, old, remappingFunction.apply(key, old));
+    }
+  }
+
+  @Override
+  public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+    Objects.requireNonNull(remappingFunction);
+    synchronized (writeLock) {
+      V old = snapshot.get(key);
+      return apply(key, old, remappingFunction.apply(key, old));
+    }
+  }
+
+  @Override
+  public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+    Objects.requireNonNull(value);
+    Objects.requireNonNull(remappingFunction);
+    synchronized (writeLock) {
+      V old = snapshot.get(key);
+      return apply(key, old, old == null ? value : remappingFunction.apply(old, value));
+    }
+  }
+
+  // Must hold writeLock
+  private V apply(K key, V old, V value) {
+    if (value != null) {
+      if (value != old) {
+        put(key, value);
+      }
+    } else if (old != null) {
+      remove(key);
+    }
+    return value;
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    snapshot.forEach(action);
+  }
+
+  @Override
+  public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+    Objects.requireNonNull(function);
+    update(next -> next.replaceAll((k, v) -> Objects.requireNonNull(function.apply(k, v))));
+  }
+
+  @Override
+  public Set<K> keySet() {
+    return Collections.unmodifiableSet(snapshot.keySet());
+  }
+
+  @Override
+  public Collection<V> values() {
+    return Collections.unmodifiableCollection(snapshot.values());
+  }
+
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    return snapshot().entrySet();
+  }
+
+  @Override
+  public int hashCode() {
+    return snapshot.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o == this || snapshot.equals(o);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    boolean first = true;
+    for (Map.Entry<K, V> e : snapshot.entrySet()) {
+      if (!first) {
+        sb.append(", ");
+      }
+      first = false;
+      sb.append(e.getKey()).append('=').append(e.getValue());
+    }
+    return sb.append('}').toString();
+  }
+}
@@ -0,0 +1,76 @@
+package com.zolstein.compacthashmap;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/*
+ * Allocation and explicit release of direct buffers. The JDK only frees a
+ * direct buffer once it is garbage collected; free() releases the memory
+ * immediately through Unsafe.invokeCleaner (JDK 9+) or the buffer's Cleaner
+ * (JDK 8). If neither is reachable, free() does nothing and the memory is
+ * reclaimed by GC as usual.
+ *
+ * A freed buffer must never be touched again: callers drop every reference
+ * to it before or right after calling free().
+ */
+final class DirectBuffers {
+
+  private static final Object UNSAFE;
+  private static final Method INVOKE_CLEANER;
+  private static final Method CLEANER;
+  private static final Method CLEAN;
+
+  static {
+    Object unsafe = null;
+    Method invokeCleaner = null;
+    Method cleaner = null;
+    Method clean = null;
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      unsafe = theUnsafe.get(null);
+      invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      unsafe = null;
+      invokeCleaner = null;
+      try {
+        cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+        clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+      } catch (ReflectiveOperationException | RuntimeException e2) {
+        cleaner = null;
+        clean = null;
+      }
+    }
+    UNSAFE = unsafe;
+    INVOKE_CLEANER = invokeCleaner;
+    CLEANER = cleaner;
+    CLEAN = clean;
+  }
+
+  private DirectBuffers() {}
+
+  static ByteBuffer allocate(int bytes) {
+    return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+  }
+
+  static void free(ByteBuffer buffer) {
+    if (buffer == null || !buffer.isDirect()) {
+      return;
+    }
+    try {
+      if (INVOKE_CLEANER != null) {
+        INVOKE_CLEANER.invoke(UNSAFE, buffer);
+      } else if (CLEANER != null) {
+        Object cleaner = CLEANER.invoke(buffer);
+        if (cleaner != null) {
+          CLEAN.invoke(cleaner);
+        }
+      }
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // Fall back to freeing on GC
+    }
+  }
+}
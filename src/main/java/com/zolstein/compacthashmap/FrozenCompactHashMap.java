@@ -0,0 +1,456 @@
+package com.zolstein.compacthashmap;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/*
+ * Immutable map produced by CompactHashMap.freeze().
+ *
+ * Keeps the source map's dense arrays (trimmed to size, in the same order)
+ * but replaces the open-addressing index with a minimal perfect hash built
+ * with the hash-and-displace (CHD) scheme: hashes are split into buckets of
+ * about three, and each bucket stores one displacement that sends all of its
+ * hashes to distinct free slots. The index then has exactly one slot per
+ * distinct hash, with no slack and no DUMMY tombstones, and a get reads one
+ * displacement, one index slot and compares one key.
+ *
+ * Keys with identical hashCodes cannot be told apart by any hash function,
+ * so entries sharing a hash are chained through sameHashNext, which is only
+ * allocated when such keys exist.
+ *
+ * All state is final and never modified, so instances can be shared between
+ * threads without synchronization. Mutating methods throw
+ * UnsupportedOperationException.
+ */
+@SuppressWarnings("unchecked")
+public final class FrozenCompactHashMap<K, V> implements Map<K, V> {
+
+  private static final int BUCKET_SIZE = 3;
+  private static final int SLOT_SEED = 0x7F4A7C15;
+  private static final int DISPLACEMENT_STEP = 0x9E3779B9;
+
+  private final int size;
+  private final int[] hashes;
+  private final K[] keys;
+  private final V[] values;
+  private final CompactIndex indexMap;
+  private final int[] displacements;
+  private final int[] sameHashNext;
+  // The source map's strategy, or null for the keys' hashCode and equals
+  private final HashingStrategy<Object> hashingStrategy;
+
+  FrozenCompactHashMap(int size, int[] hashes, K[] keys, V[] values,
+      HashingStrategy<Object> hashingStrategy) {
+    this.size = size;
+    this.hashingStrategy = hashingStrategy;
+    this.hashes = Arrays.copyOf(hashes, size);
+    this.keys = Arrays.copyOf(keys, size);
+    this.values = Arrays.copyOf(values, size);
+
+    // Chain entries with equal hashes; only chain heads enter the perfect hash.
+    // Sorting (hash, index) pairs finds them without building another table.
+    long[] sorted = new long[size];
+    for (int i = 0; i < size; i++) {
+      sorted[i] = ((long) this.hashes[i] << 32) | i;
+    }
+    Arrays.sort(sorted);
+    int[] chainHeads = new int[size];
+    int[] next = null;
+    int distinct = 0;
+    for (int k = 0; k < size; k++) {
+      int i = (int) sorted[k];
+      if (k > 0 && (sorted[k] >> 32) == (sorted[k - 1] >> 32)) {
+        if (next == null) {
+          next = new int[size];
+          Arrays.fill(next, -1);
+        }
+        next[(int) sorted[k - 1]] = i;
+      } else {
+        chainHeads[distinct++] = i;
+      }
+    }
+    sameHashNext = next;
+
+    int bucketCount = Math.max(1, distinct / BUCKET_SIZE);
+    indexMap = CompactIndex.create(Math.max(1, distinct), Math.max(1, size));
+    displacements = new int[bucketCount];
+    buildPerfectHash(chainHeads, distinct, bucketCount);
+  }
+
+  private static int mix(int h) {
+    h ^= h >>> 16;
+    h *= 0x85EBCA6B;
+    h ^= h >>> 13;
+    h *= 0xC2B2AE35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  // Maps a 32-bit hash uniformly onto [0, n) without division
+  private static int reduce(int h, int n) {
+    return (int) (((h & 0xFFFFFFFFL) * n) >>> 32);
+  }
+
+  private static int bucket(int hash, int bucketCount) {
+    return reduce(mix(hash), bucketCount);
+  }
+
+  private static int slot(int hash, int displacement, int slots) {
+    return reduce(mix(hash + SLOT_SEED + displacement * DISPLACEMENT_STEP), slots);
+  }
+
+  private void buildPerfectHash(int[] entries, int distinct, int bucketCount) {
+    if (distinct == 0) {
+      return;
+    }
+    // Counting sort of entries by bucket
+    int[] bucketStart = new int[bucketCount + 1];
+    for (int k = 0; k < distinct; k++) {
+      bucketStart[bucket(hashes[entries[k]], bucketCount) + 1]++;
+    }
+    int maxBucket = 0;
+    for (int b = 0; b < bucketCount; b++) {
+      maxBucket = Math.max(maxBucket, bucketStart[b + 1]);
+      bucketStart[b + 1] += bucketStart[b];
+    }
+    int[] byBucket = new int[distinct];
+    int[] fill = Arrays.copyOf(bucketStart, bucketCount);
+    for (int k = 0; k < distinct; k++) {
+      int e = entries[k];
+      byBucket[fill[bucket(hashes[e], bucketCount)]++] = e;
+    }
+    // Order buckets largest first, since they are the hardest to place
+    int[] sizeStart = new int[maxBucket + 2];
+    for (int b = 0; b < bucketCount; b++) {
+      sizeStart[maxBucket - (bucketStart[b + 1] - bucketStart[b]) + 1]++;
+    }
+    for (int s = 0; s <= maxBucket; s++) {
+      sizeStart[s + 1] += sizeStart[s];
+    }
+    int[] order = new int[bucketCount];
+    for (int b = 0; b < bucketCount; b++) {
+      order[sizeStart[maxBucket - (bucketStart[b + 1] - bucketStart[b])]++] = b;
+    }
+
+    int slots = indexMap.size();
+    boolean[] taken = new boolean[slots];
+    int[] candidate = new int[maxBucket];
+    int nextFree = 0;
+    for (int b : order) {
+      int from = bucketStart[b];
+      int count = bucketStart[b + 1] - from;
+      if (count == 0) {
+        break;
+      } else if (count == 1) {
+        // Singletons take any free slot, encoded directly as -1 - slot
+        while (taken[nextFree]) {
+          nextFree++;
+        }
+        taken[nextFree] = true;
+        indexMap.set(nextFree, byBucket[from]);
+        displacements[b] = -1 - nextFree;
+        continue;
+      }
+      for (int d = 0; ; d++) {
+        if (d < 0) {
+          throw new IllegalStateException("Could not build perfect hash");
+        }
+        if (tryPlace(byBucket, from, count, d, slots, taken, candidate)) {
+          for (int k = 0; k < count; k++) {
+            taken[candidate[k]] = true;
+            indexMap.set(candidate[k], byBucket[from + k]);
+          }
+          displacements[b] = d;
+          break;
+        }
+      }
+    }
+  }
+
+  private boolean tryPlace(int[] byBucket, int from, int count, int d, int slots, boolean[] taken, int[] candidate) {
+    for (int k = 0; k < count; k++) {
+      int s = slot(hashes[byBucket[from + k]], d, slots);
+      if (taken[s]) {
+        return false;
+      }
+      for (int j = 0; j < k; j++) {
+        if (candidate[j] == s) {
+          return false;
+        }
+      }
+      candidate[k] = s;
+    }
+    return true;
+  }
+
+  private int hash(Object key) {
+    return hashingStrategy == null ? key.hashCode() : hashingStrategy.hash(key);
+  }
+
+  private int lookup(Object key, int hash) {
+    if (size == 0) {
+      return -1;
+    }
+    int d = displacements[bucket(hash, displacements.length)];
+    int slot = d < 0 ? -1 - d : slot(hash, d, indexMap.size());
+    int index = indexMap.get(slot);
+    if (hashes[index] != hash) {
+      return -1;
+    }
+    do {
+      K indexKey = keys[index];
+      if (indexKey == key || (hashingStrategy == null
+          ? Objects.equals(indexKey, key) : hashingStrategy.equals(indexKey, key))) {
+        return index;
+      }
+      index = sameHashNext == null ? -1 : sameHashNext[index];
+    } while (index >= 0);
+    return -1;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return lookup(key, hash(key)) >= 0;
+  }
+
+  @Override
+  public boolean containsValue(Object value) {
+    for (int i = 0; i < size; i++) {
+      if (Objects.equals(value, values[i])) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public V get(Object key) {
+    int index = lookup(key, hash(key));
+    return index < 0 ? null : values[index];
+  }
+
+  @Override
+  public V getOrDefault(Object key, V defaultValue) {
+    int index = lookup(key, hash(key));
+    return index < 0 ? defaultValue : values[index];
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    for (int i = 0; i < size; i++) {
+      action.accept(keys[i], values[i]);
+    }
+  }
+
+  @Override
+  public V put(K key, V value) {
+    throw new UnsupportedOperationException("FrozenCompactHashMap is immutable");
+  }
+
+  @Override
+  public V remove(Object key) {
+    throw new UnsupportedOperationException("FrozenCompactHashMap is immutable");
+  }
+
+  @Override
+  public void putAll(Map<? extends K, ? extends V> m) {
+    throw new UnsupportedOperationException("FrozenCompactHashMap is immutable");
+  }
+
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException("FrozenCompactHashMap is immutable");
+  }
+
+  @Override
+  public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+    throw new UnsupportedOperationException("FrozenCompactHashMap is immutable");
+  }
+
+  @Override
+  public V putIfAbsent(K key, V value) {
+    throw new UnsupportedOperationException("FrozenCompactHashMap is immutable");
+  }
+
+  @Override
+  public boolean remove(Object key, Object value) {
+    throw new UnsupportedOperationException("FrozenCompactHashMap is immutable");
+  }
+
+  @Override
+  public boolean replace(K key, V oldValue, V newValue) {
+    throw new UnsupportedOperationException("FrozenCompactHashMap is immutable");
+  }
+
+  @Override
+  public V replace(K key, V value) {
+    throw new UnsupportedOperationException("FrozenCompactHashMap is immutable");
+  }
+
+  @Override
+  public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+    throw new UnsupportedOperationException("FrozenCompactHashMap is immutable");
+  }
+
+  @Override
+  public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+    throw new UnsupportedOperationException("FrozenCompactHashMap is immutable");
+  }
+
+  @Override
+  public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+    throw new UnsupportedOperationException("FrozenCompactHashMap is immutable");
+  }
+
+  @Override
+  public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+    throw new UnsupportedOperationException("FrozenCompactHashMap is immutable");
+  }
+
+  @Override
+  public Set<K> keySet() {
+    return new AbstractSet<K>() {
+      @Override
+      public Iterator<K> iterator() {
+        return new ArrayIterator<>(keys, size);
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @Override
+      public boolean contains(Object o) {
+        return containsKey(o);
+      }
+    };
+  }
+
+  @Override
+  public Collection<V> values() {
+    return new AbstractCollection<V>() {
+      @Override
+      public Iterator<V> iterator() {
+        return new ArrayIterator<>(values, size);
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    return new AbstractSet<Map.Entry<K, V>>() {
+      @Override
+      public Iterator<Map.Entry<K, V>> iterator() {
+        return new TransformedIterator<>(
+            new ArrayIterator<>(keys, size),
+            new Function<K, Map.Entry<K, V>>() {
+              private int i = 0;
+
+              @Override
+              public Map.Entry<K, V> apply(K key) {
+                return new AbstractMap.SimpleImmutableEntry<>(key, values[i++]);
+              }
+            });
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @Override
+      public boolean contains(Object o) {
+        if (!(o instanceof Map.Entry)) {
+          return false;
+        }
+        Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+        int index = e.getKey() == null ? -1 : lookup(e.getKey(), hash(e.getKey()));
+        return index >= 0 && Objects.equals(values[index], e.getValue());
+      }
+    };
+  }
+
+  @Override
+  public int hashCode() {
+    int ret = 0;
+    for (int i = 0; i < size; i++) {
+      ret += Objects.hashCode(keys[i]) ^ Objects.hashCode(values[i]);
+    }
+    return ret;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    } else if (!(o instanceof Map)) {
+      return false;
+    }
+    Map<?, ?> other = (Map) o;
+    return entrySet().equals(other.entrySet());
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    for (int i = 0; i < size; i++) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      sb.append(keys[i]).append('=').append(values[i]);
+    }
+    return sb.append('}').toString();
+  }
+
+  private static class ArrayIterator<T> implements Iterator<T> {
+
+    private final T[] array;
+    private final int size;
+    private int nextIndex = 0;
+
+    ArrayIterator(T[] array, int size) {
+      this.array = array;
+      this.size = size;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return nextIndex < size;
+    }
+
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return array[nextIndex++];
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package com.zolstein.compacthashmap;
+
+import java.util.Arrays;
+
+/*
+ * Replaces a key's own hashCode and equals in CompactHashMap, so that keys
+ * such as arrays can be stored as they are instead of in holder objects.
+ * Keys that are equal under equals must have the same hash. Lookups pass
+ * the queried key to the strategy as a K, so querying a map with a key of
+ * another type may throw ClassCastException.
+ */
+public interface HashingStrategy<K> {
+
+  int hash(K key);
+
+  boolean equals(K a, K b);
+
+  // Reference equality, as in IdentityHashMap
+  HashingStrategy<Object> IDENTITY = new HashingStrategy<Object>() {
+    @Override
+    public int hash(Object key) {
+      return System.identityHashCode(key);
+    }
+
+    @Override
+    public boolean equals(Object a, Object b) {
+      return a == b;
+    }
+  };
+
+  HashingStrategy<byte[]> BYTE_ARRAY = new HashingStrategy<byte[]>() {
+    @Override
+    public int hash(byte[] key) {
+      return Arrays.hashCode(key);
+    }
+
+    @Override
+    public boolean equals(byte[] a, byte[] b) {
+      return Arrays.equals(a, b);
+    }
+  };
+
+  HashingStrategy<int[]> INT_ARRAY = new HashingStrategy<int[]>() {
+    @Override
+    public int hash(int[] key) {
+      return Arrays.hashCode(key);
+    }
+
+    @Override
+    public boolean equals(int[] a, int[] b) {
+      return Arrays.equals(a, b);
+    }
+  };
+
+  HashingStrategy<long[]> LONG_ARRAY = new HashingStrategy<long[]>() {
+    @Override
+    public int hash(long[] key) {
+      return Arrays.hashCode(key);
+    }
+
+    @Override
+    public boolean equals(long[] a, long[] b) {
+      return Arrays.equals(a, b);
+    }
+  };
+
+  // Element-wise with the elements' own hashCode and equals, not deep
+  HashingStrategy<Object[]> OBJECT_ARRAY = new HashingStrategy<Object[]>() {
+    @Override
+    public int hash(Object[] key) {
+      return Arrays.hashCode(key);
+    }
+
+    @Override
+    public boolean equals(Object[] a, Object[] b) {
+      return Arrays.equals(a, b);
+    }
+  };
+
+  /*
+   * Strings equal under equalsIgnoreCase. Hashes the case-folded code points
+   * in place rather than hashing a lower-cased copy.
+   */
+  HashingStrategy<String> CASE_INSENSITIVE = new HashingStrategy<String>() {
+    @Override
+    public int hash(String key) {
+      int h = 0;
+      for (int i = 0; i < key.length(); ) {
+        int c = key.codePointAt(i);
+        h = 31 * h + Character.toLowerCase(Character.toUpperCase(c));
+        i += Character.charCount(c);
+      }
+      return h;
+    }
+
+    @Override
+    public boolean equals(String a, String b) {
+      return a.equalsIgnoreCase(b);
+    }
+  };
+}
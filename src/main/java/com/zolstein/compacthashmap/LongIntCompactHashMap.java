@@ -0,0 +1,190 @@
+package com.zolstein.compacthashmap;
+
+import static com.zolstein.compacthashmap.CompactIndex.index;
+import static com.zolstein.compacthashmap.CompactIndex.slot;
+
+import java.util.Arrays;
+
+/*
+ * CompactHashMap specialized for primitive long keys and int values.
+ *
+ * Entries are stored in dense insertion-ordered long[] / int[] arrays behind the
+ * shared narrow index, so each entry costs 8 + 4 bytes plus its index
+ * slots. Absent keys are reported with a configurable "no value" sentinel
+ * (0 by default); use containsKey to tell a stored sentinel from a miss.
+ */
+public class LongIntCompactHashMap extends PrimitiveCompactMap {
+
+  private final int noValue;
+  long[] keys;
+  int[] values;
+
+  public LongIntCompactHashMap() {
+    this(0);
+  }
+
+  public LongIntCompactHashMap(int noValue) {
+    this.noValue = noValue;
+    clear();
+  }
+
+  @Override
+  int capacity() {
+    return keys.length;
+  }
+
+  @Override
+  void initArrays(int size) {
+    keys = new long[size];
+    values = new int[size];
+  }
+
+  @Override
+  void resizeArrays(int size) {
+    keys = Arrays.copyOf(keys, size);
+    values = Arrays.copyOf(values, size);
+  }
+
+  @Override
+  int hashAt(int index) {
+    return hash(keys[index]);
+  }
+
+  @Override
+  void moveEntry(int from, int to) {
+    keys[to] = keys[from];
+    values[to] = values[from];
+  }
+
+  private static int hash(long key) {
+    return Long.hashCode(key);
+  }
+
+  private long lookup(long key) {
+    assertLookupable();
+    return indexMap.lookup(key, hash(key), keys);
+  }
+
+  public int noValue() {
+    return noValue;
+  }
+
+  public boolean containsKey(long key) {
+    return index(lookup(key)) >= 0;
+  }
+
+  public int get(long key) {
+    return getOrDefault(key, noValue);
+  }
+
+  public int getOrDefault(long key, int defaultValue) {
+    int index = index(lookup(key));
+    if (index < 0) {
+      return defaultValue;
+    }
+    return values[index];
+  }
+
+  /*
+   * Returns the previous value, or noValue() if the key was absent.
+   */
+  public int put(long key, int value) {
+    long lookups = lookup(key);
+    int index = index(lookups);
+    if (index >= 0) {
+      int old = values[index];
+      values[index] = value;
+      return old;
+    }
+    index = reserveEntry();
+    keys[index] = key;
+    values[index] = value;
+    commitEntry(lookups);
+    return noValue;
+  }
+
+  /*
+   * Returns the removed value, or noValue() if the key was absent.
+   */
+  public int remove(long key) {
+    long lookups = lookup(key);
+    int index = index(lookups);
+    if (index < 0) {
+      return noValue;
+    }
+    int old = values[index];
+    removeEntry(slot(lookups), index);
+    return old;
+  }
+
+  public long[] keysToArray() {
+    return Arrays.copyOf(keys, used);
+  }
+
+  public int[] valuesToArray() {
+    return Arrays.copyOf(values, used);
+  }
+
+  /*
+   * Passes each entry to action in iteration order without boxing.
+   */
+  public void forEach(LongIntConsumer action) {
+    long expectedVersion = version;
+    long[] keys = this.keys;
+    int[] values = this.values;
+    int size = used;
+    for (int i = 0; i < size; i++) {
+      action.accept(keys[i], values[i]);
+      checkVersion(expectedVersion);
+    }
+  }
+
+  public Cursor cursor() {
+    return new Cursor(this);
+  }
+
+  @FunctionalInterface
+  public interface LongIntConsumer {
+    void accept(long key, int value);
+  }
+
+  /*
+   * Allocation-free cursor over the entries; see PrimitiveCursor for the
+   * advance() and remove() contract.
+   *
+   *   LongIntCompactHashMap.Cursor cursor = map.cursor();
+   *   while (cursor.advance()) {
+   *     use(cursor.key(), cursor.value());
+   *   }
+   */
+  public static final class Cursor extends PrimitiveCursor {
+
+    private final LongIntCompactHashMap map;
+
+    private Cursor(LongIntCompactHashMap map) {
+      super(map);
+      this.map = map;
+    }
+
+    public long key() {
+      checkCurrent();
+      return map.keys[index];
+    }
+
+    public int value() {
+      checkCurrent();
+      return map.values[index];
+    }
+
+    /*
+     * Replaces the current entry's value and returns the old one.
+     */
+    public int setValue(int value) {
+      checkCurrent();
+      int[] values = map.values;
+      int ret = values[index];
+      values[index] = value;
+      return ret;
+    }
+  }
+}
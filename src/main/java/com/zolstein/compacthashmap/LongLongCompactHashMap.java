@@ -0,0 +1,190 @@
+package com.zolstein.compacthashmap;
+
+import static com.zolstein.compacthashmap.CompactIndex.index;
+import static com.zolstein.compacthashmap.CompactIndex.slot;
+
+import java.util.Arrays;
+
+/*
+ * CompactHashMap specialized for primitive long keys and values.
+ *
+ * Entries are stored in dense insertion-ordered long[] arrays behind the
+ * shared narrow index, so each entry costs 8 + 8 bytes plus its index
+ * slots. Absent keys are reported with a configurable "no value" sentinel
+ * (0 by default); use containsKey to tell a stored sentinel from a miss.
+ */
+public class LongLongCompactHashMap extends PrimitiveCompactMap {
+
+  private final long noValue;
+  long[] keys;
+  long[] values;
+
+  public LongLongCompactHashMap() {
+    this(0);
+  }
+
+  public LongLongCompactHashMap(long noValue) {
+    this.noValue = noValue;
+    clear();
+  }
+
+  @Override
+  int capacity() {
+    return keys.length;
+  }
+
+  @Override
+  void initArrays(int size) {
+    keys = new long[size];
+    values = new long[size];
+  }
+
+  @Override
+  void resizeArrays(int size) {
+    keys = Arrays.copyOf(keys, size);
+    values = Arrays.copyOf(values, size);
+  }
+
+  @Override
+  int hashAt(int index) {
+    return hash(keys[index]);
+  }
+
+  @Override
+  void moveEntry(int from, int to) {
+    keys[to] = keys[from];
+    values[to] = values[from];
+  }
+
+  private static int hash(long key) {
+    return Long.hashCode(key);
+  }
+
+  private long lookup(long key) {
+    assertLookupable();
+    return indexMap.lookup(key, hash(key), keys);
+  }
+
+  public long noValue() {
+    return noValue;
+  }
+
+  public boolean containsKey(long key) {
+    return index(lookup(key)) >= 0;
+  }
+
+  public long get(long key) {
+    return getOrDefault(key, noValue);
+  }
+
+  public long getOrDefault(long key, long defaultValue) {
+    int index = index(lookup(key));
+    if (index < 0) {
+      return defaultValue;
+    }
+    return values[index];
+  }
+
+  /*
+   * Returns the previous value, or noValue() if the key was absent.
+   */
+  public long put(long key, long value) {
+    long lookups = lookup(key);
+    int index = index(lookups);
+    if (index >= 0) {
+      long old = values[index];
+      values[index] = value;
+      return old;
+    }
+    index = reserveEntry();
+    keys[index] = key;
+    values[index] = value;
+    commitEntry(lookups);
+    return noValue;
+  }
+
+  /*
+   * Returns the removed value, or noValue() if the key was absent.
+   */
+  public long remove(long key) {
+    long lookups = lookup(key);
+    int index = index(lookups);
+    if (index < 0) {
+      return noValue;
+    }
+    long old = values[index];
+    removeEntry(slot(lookups), index);
+    return old;
+  }
+
+  public long[] keysToArray() {
+    return Arrays.copyOf(keys, used);
+  }
+
+  public long[] valuesToArray() {
+    return Arrays.copyOf(values, used);
+  }
+
+  /*
+   * Passes each entry to action in iteration order without boxing.
+   */
+  public void forEach(LongLongConsumer action) {
+    long expectedVersion = version;
+    long[] keys = this.keys;
+    long[] values = this.values;
+    int size = used;
+    for (int i = 0; i < size; i++) {
+      action.accept(keys[i], values[i]);
+      checkVersion(expectedVersion);
+    }
+  }
+
+  public Cursor cursor() {
+    return new Cursor(this);
+  }
+
+  @FunctionalInterface
+  public interface LongLongConsumer {
+    void accept(long key, long value);
+  }
+
+  /*
+   * Allocation-free cursor over the entries; see PrimitiveCursor for the
+   * advance() and remove() contract.
+   *
+   *   LongLongCompactHashMap.Cursor cursor = map.cursor();
+   *   while (cursor.advance()) {
+   *     use(cursor.key(), cursor.value());
+   *   }
+   */
+  public static final class Cursor extends PrimitiveCursor {
+
+    private final LongLongCompactHashMap map;
+
+    private Cursor(LongLongCompactHashMap map) {
+      super(map);
+      this.map = map;
+    }
+
+    public long key() {
+      checkCurrent();
+      return map.keys[index];
+    }
+
+    public long value() {
+      checkCurrent();
+      return map.values[index];
+    }
+
+    /*
+     * Replaces the current entry's value and returns the old one.
+     */
+    public long setValue(long value) {
+      checkCurrent();
+      long[] values = map.values;
+      long ret = values[index];
+      values[index] = value;
+      return ret;
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package com.zolstein.compacthashmap;
+
+import static com.zolstein.compacthashmap.CompactIndex.index;
+import static com.zolstein.compacthashmap.CompactIndex.slot;
+
+import java.util.Arrays;
+
+/*
+ * CompactHashMap specialized for primitive long keys.
+ *
+ * Uses the same dense insertion-ordered entry arrays and narrow index as
+ * CompactHashMap, but keys live in a long[] so lookups never box, and keys are
+ * compared with ==. The hash of a long is cheap to recompute, so unlike
+ * CompactHashMap no hashes[] array is kept alongside the keys.
+ */
+@SuppressWarnings("unchecked")
+public class LongObjectCompactHashMap<V> extends PrimitiveCompactMap {
+
+  long[] keys;
+  V[] values;
+
+  public LongObjectCompactHashMap() {
+    clear();
+  }
+
+  @Override
+  int capacity() {
+    return keys.length;
+  }
+
+  @Override
+  void initArrays(int size) {
+    keys = new long[size];
+    values = (V[]) new Object[size];
+  }
+
+  @Override
+  void resizeArrays(int size) {
+    keys = Arrays.copyOf(keys, size);
+    values = Arrays.copyOf(values, size);
+  }
+
+  @Override
+  int hashAt(int index) {
+    return hash(keys[index]);
+  }
+
+  @Override
+  void moveEntry(int from, int to) {
+    keys[to] = keys[from];
+    values[to] = values[from];
+  }
+
+  @Override
+  void clearEntry(int index) {
+    values[index] = null;
+  }
+
+  private static int hash(long key) {
+    return Long.hashCode(key);
+  }
+
+  private long lookup(long key) {
+    assertLookupable();
+    return indexMap.lookup(key, hash(key), keys);
+  }
+
+  public boolean containsKey(long key) {
+    return index(lookup(key)) >= 0;
+  }
+
+  public V get(long key) {
+    int index = index(lookup(key));
+    if (index < 0) {
+      return null;
+    }
+    return values[index];
+  }
+
+  public V put(long key, V value) {
+    long lookups = lookup(key);
+    int index = index(lookups);
+    if (index >= 0) {
+      V old = values[index];
+      values[index] = value;
+      return old;
+    }
+    index = reserveEntry();
+    keys[index] = key;
+    values[index] = value;
+    commitEntry(lookups);
+    return null;
+  }
+
+  public V remove(long key) {
+    long lookups = lookup(key);
+    int index = index(lookups);
+    if (index < 0) {
+      return null;
+    }
+    V old = values[index];
+    removeEntry(slot(lookups), index);
+    return old;
+  }
+
+  public long[] keysToArray() {
+    return Arrays.copyOf(keys, used);
+  }
+
+  /*
+   * Passes each entry to action in iteration order without boxing the key.
+   */
+  public void forEach(LongObjectConsumer<? super V> action) {
+    long expectedVersion = version;
+    long[] keys = this.keys;
+    V[] values = this.values;
+    int size = used;
+    for (int i = 0; i < size; i++) {
+      action.accept(keys[i], values[i]);
+      checkVersion(expectedVersion);
+    }
+  }
+
+  public Cursor<V> cursor() {
+    return new Cursor<>(this);
+  }
+
+  @FunctionalInterface
+  public interface LongObjectConsumer<V> {
+    void accept(long key, V value);
+  }
+
+  /*
+   * Allocation-free cursor over the entries; see PrimitiveCursor for the
+   * advance() and remove() contract.
+   */
+  public static final class Cursor<V> extends PrimitiveCursor {
+
+    private final LongObjectCompactHashMap<V> map;
+
+    private Cursor(LongObjectCompactHashMap<V> map) {
+      super(map);
+      this.map = map;
+    }
+
+    public long key() {
+      checkCurrent();
+      return map.keys[index];
+    }
+
+    public V value() {
+      checkCurrent();
+      return map.values[index];
+    }
+
+    /*
+     * Replaces the current entry's value and returns the old one.
+     */
+    public V setValue(V value) {
+      checkCurrent();
+      V[] values = map.values;
+      V ret = values[index];
+      values[index] = value;
+      return ret;
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package com.zolstein.compacthashmap;
+
+/*
+ * Forward-only cursor over a map's entries, in iteration order. Unlike an
+ * entry iterator it hands out no objects: key() and value() read the
+ * current entry in place.
+ *
+ *   MapCursor<K, V> cursor = map.cursor();
+ *   while (cursor.advance()) {
+ *     use(cursor.key(), cursor.value());
+ *   }
+ *
+ * Modifying the map other than through the cursor invalidates it; the next
+ * advance() throws ConcurrentModificationException.
+ */
+public interface MapCursor<K, V> {
+
+  /*
+   * Moves to the next entry. Returns false, leaving no current entry, once
+   * every entry has been visited.
+   */
+  boolean advance();
+
+  K key();
+
+  V value();
+
+  /*
+   * Replaces the current entry's value and returns the old one.
+   */
+  V setValue(V value);
+
+  /*
+   * Removes the current entry. There is no current entry afterwards until
+   * the next advance(), which continues with the entry that would have
+   * followed the removed one.
+   */
+  void remove();
+}
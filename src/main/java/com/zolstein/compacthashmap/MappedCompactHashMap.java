@@ -0,0 +1,589 @@
+package com.zolstein.compacthashmap;
+
+import static com.zolstein.compacthashmap.CompactIndex.BYTE_LIMIT;
+import static com.zolstein.compacthashmap.CompactIndex.DUMMY;
+import static com.zolstein.compacthashmap.CompactIndex.FREE;
+import static com.zolstein.compacthashmap.CompactIndex.PERTURB_SHIFT;
+import static com.zolstein.compacthashmap.CompactIndex.SHORT_LIMIT;
+import static com.zolstein.compacthashmap.CompactIndex.constructLookupReturn;
+import static com.zolstein.compacthashmap.CompactIndex.index;
+import static com.zolstein.compacthashmap.CompactIndex.initialPerturb;
+import static com.zolstein.compacthashmap.CompactIndex.nextProbe;
+import static com.zolstein.compacthashmap.CompactIndex.slot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Persistent hash map with fixed-width binary keys and values, stored in a
+ * memory-mapped file. Reopening a file maps it and reads a 64-byte header;
+ * nothing is rehashed or copied, so lookups are served straight from the
+ * page cache.
+ *
+ * The file mirrors CompactHashMap's layout: after the header come the
+ * byte/short/int index, then the insertion-ordered hashes, keys and values
+ * regions. Each region is mapped separately and must stay below 2GB.
+ *
+ *   0  magic "CMPCMAP1"    24 used            36 index slot width
+ *   8  format version      28 filled          40 reserved up to 64
+ *   12 key width           32 index size
+ *   16 value width
+ *   20 capacity (entries)
+ *
+ * Keys and values are opaque byte records. The long methods are shortcuts
+ * for 8-byte records holding a big-endian long, and address the same
+ * entries as the byte[] methods.
+ *
+ * Writes go to the mapping immediately; force() flushes them to disk. Growth
+ * writes a complete new file beside the old one and atomically renames it
+ * over the original, so a crash mid-resize leaves the previous file intact.
+ * Not thread-safe.
+ */
+public class MappedCompactHashMap implements Closeable {
+
+  private static final long MAGIC = 0x434D50434D415031L; // "CMPCMAP1"
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 64;
+  private static final int HASH_BYTES = 4;
+  private static final int INITIAL_CAPACITY = 8;
+
+  private static final int MAGIC_OFFSET = 0;
+  private static final int VERSION_OFFSET = 8;
+  private static final int KEY_WIDTH_OFFSET = 12;
+  private static final int VALUE_WIDTH_OFFSET = 16;
+  private static final int CAPACITY_OFFSET = 20;
+  private static final int USED_OFFSET = 24;
+  private static final int FILLED_OFFSET = 28;
+  private static final int INDEX_SIZE_OFFSET = 32;
+  private static final int SLOT_WIDTH_OFFSET = 36;
+
+  private final Path path;
+  private final int keyWidth;
+  private final int valueWidth;
+
+  private FileChannel channel;
+  private MappedByteBuffer header;
+  private MappedByteBuffer indexMap;
+  private MappedByteBuffer hashes;
+  private MappedByteBuffer keys;
+  private MappedByteBuffer values;
+  private int capacity;
+  private int used;
+  private int filled;
+  private int indexMapSize;
+  private int slotWidth;
+
+  private MappedCompactHashMap(Path path, int keyWidth, int valueWidth) {
+    this.path = path;
+    this.keyWidth = keyWidth;
+    this.valueWidth = valueWidth;
+  }
+
+  /*
+   * Creates an empty map at path, replacing any existing file.
+   */
+  public static MappedCompactHashMap create(Path path, int keyWidth, int valueWidth) throws IOException {
+    if (keyWidth <= 0 || valueWidth <= 0) {
+      throw new IllegalArgumentException("Key and value widths must be positive");
+    }
+    MappedCompactHashMap map = new MappedCompactHashMap(path, keyWidth, valueWidth);
+    map.writeFile(path, INITIAL_CAPACITY, INITIAL_CAPACITY);
+    map.mapFile();
+    return map;
+  }
+
+  public static MappedCompactHashMap open(Path path) throws IOException {
+    int keyWidth;
+    int valueWidth;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+      while (header.hasRemaining() && channel.read(header) >= 0) {
+        // Keep reading until the header is complete or the file ends
+      }
+      if (header.hasRemaining() || header.getLong(MAGIC_OFFSET) != MAGIC) {
+        throw new IOException("Not a MappedCompactHashMap file: " + path);
+      }
+      if (header.getInt(VERSION_OFFSET) != VERSION) {
+        throw new IOException("Unsupported MappedCompactHashMap version: " + header.getInt(VERSION_OFFSET));
+      }
+      keyWidth = header.getInt(KEY_WIDTH_OFFSET);
+      valueWidth = header.getInt(VALUE_WIDTH_OFFSET);
+    }
+    MappedCompactHashMap map = new MappedCompactHashMap(path, keyWidth, valueWidth);
+    map.mapFile();
+    return map;
+  }
+
+  private static int slotWidthFor(int indexMapSize) {
+    if (indexMapSize <= BYTE_LIMIT) {
+      return 1;
+    } else if (indexMapSize <= SHORT_LIMIT) {
+      return 2;
+    }
+    return 4;
+  }
+
+  private static long align8(long n) {
+    return (n + 7) & ~7L;
+  }
+
+  private static int regionSize(long bytes) {
+    if (bytes > Integer.MAX_VALUE) {
+      throw new IllegalStateException("MappedCompactHashMap region exceeds 2GB");
+    }
+    return (int) bytes;
+  }
+
+  private long indexOffset() {
+    return HEADER_BYTES;
+  }
+
+  private long hashesOffset(int indexMapSize, int slotWidth) {
+    return indexOffset() + align8((long) indexMapSize * slotWidth);
+  }
+
+  private void mapFile() throws IOException {
+    channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+    capacity = header.getInt(CAPACITY_OFFSET);
+    used = header.getInt(USED_OFFSET);
+    filled = header.getInt(FILLED_OFFSET);
+    indexMapSize = header.getInt(INDEX_SIZE_OFFSET);
+    slotWidth = header.getInt(SLOT_WIDTH_OFFSET);
+    long hashesOffset = hashesOffset(indexMapSize, slotWidth);
+    long keysOffset = hashesOffset + align8((long) capacity * HASH_BYTES);
+    long valuesOffset = keysOffset + align8((long) capacity * keyWidth);
+    long end = valuesOffset + (long) capacity * valueWidth;
+    if (channel.size() < end) {
+      channel.close();
+      throw new IOException("Truncated MappedCompactHashMap file: " + path);
+    }
+    indexMap = map(indexOffset(), (long) indexMapSize * slotWidth);
+    hashes = map(hashesOffset, (long) capacity * HASH_BYTES);
+    keys = map(keysOffset, (long) capacity * keyWidth);
+    values = map(valuesOffset, (long) capacity * valueWidth);
+  }
+
+  private MappedByteBuffer map(long offset, long bytes) throws IOException {
+    return channel.map(FileChannel.MapMode.READ_WRITE, offset, regionSize(bytes));
+  }
+
+  private void unmapFile() throws IOException {
+    MappedByteBuffer[] buffers = {header, indexMap, hashes, keys, values};
+    header = indexMap = hashes = keys = values = null;
+    channel.close();
+    channel = null;
+    for (MappedByteBuffer buffer : buffers) {
+      DirectBuffers.free(buffer);
+    }
+  }
+
+  /*
+   * Writes a complete file with the given capacity and index size holding
+   * this map's current entries (none if not yet mapped). The index is rebuilt
+   * from the stored hashes.
+   */
+  private void writeFile(Path target, int newCapacity, int newIndexMapSize) throws IOException {
+    int newSlotWidth = slotWidthFor(newIndexMapSize);
+    long hashesOffset = hashesOffset(newIndexMapSize, newSlotWidth);
+    long keysOffset = hashesOffset + align8((long) newCapacity * HASH_BYTES);
+    long valuesOffset = keysOffset + align8((long) newCapacity * keyWidth);
+    long end = valuesOffset + (long) newCapacity * valueWidth;
+    int count = channel == null ? 0 : used;
+
+    try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      // Extend the file first so every region can be mapped
+      out.write(ByteBuffer.allocate(1), end - 1);
+
+      MappedByteBuffer newIndexMap = out.map(FileChannel.MapMode.READ_WRITE, indexOffset(),
+          regionSize((long) newIndexMapSize * newSlotWidth));
+      for (int i = 0; i < newIndexMap.capacity(); i++) {
+        newIndexMap.put(i, (byte) FREE);
+      }
+      int mask = newIndexMapSize - 1;
+      for (int index = 0; index < count; index++) {
+        int perturb = initialPerturb(hash(index));
+        int i = perturb & mask;
+        while (getIndex(newIndexMap, newSlotWidth, i) != FREE) {
+          i = nextProbe(i, perturb, mask);
+          perturb >>= PERTURB_SHIFT;
+        }
+        setIndex(newIndexMap, newSlotWidth, i, index);
+      }
+      DirectBuffers.free(newIndexMap);
+
+      if (count > 0) {
+        copyRegion(out, hashes, count * HASH_BYTES, hashesOffset);
+        copyRegion(out, keys, count * keyWidth, keysOffset);
+        copyRegion(out, values, count * valueWidth, valuesOffset);
+      }
+
+      ByteBuffer newHeader = ByteBuffer.allocate(HEADER_BYTES);
+      newHeader.putLong(MAGIC_OFFSET, MAGIC);
+      newHeader.putInt(VERSION_OFFSET, VERSION);
+      newHeader.putInt(KEY_WIDTH_OFFSET, keyWidth);
+      newHeader.putInt(VALUE_WIDTH_OFFSET, valueWidth);
+      newHeader.putInt(CAPACITY_OFFSET, newCapacity);
+      newHeader.putInt(USED_OFFSET, count);
+      newHeader.putInt(FILLED_OFFSET, count);
+      newHeader.putInt(INDEX_SIZE_OFFSET, newIndexMapSize);
+      newHeader.putInt(SLOT_WIDTH_OFFSET, newSlotWidth);
+      out.write(newHeader, 0);
+      out.force(true);
+    }
+  }
+
+  private static void copyRegion(FileChannel out, ByteBuffer source, int bytes, long offset) throws IOException {
+    ByteBuffer region = source.duplicate();
+    region.position(0).limit(bytes);
+    while (region.hasRemaining()) {
+      offset += out.write(region, offset);
+    }
+  }
+
+  private void relayout(int newCapacity, int newIndexMapSize) {
+    try {
+      Path temp = path.resolveSibling(path.getFileName() + ".resize");
+      writeFile(temp, newCapacity, newIndexMapSize);
+      unmapFile();
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      mapFile();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void ensureOpen() {
+    if (channel == null) {
+      throw new IllegalStateException("MappedCompactHashMap is closed");
+    }
+  }
+
+  private static int getIndex(ByteBuffer indexMap, int slotWidth, int i) {
+    switch (slotWidth) {
+      case 1:
+        return indexMap.get(i);
+      case 2:
+        return indexMap.getShort(i << 1);
+      default:
+        return indexMap.getInt(i << 2);
+    }
+  }
+
+  private static void setIndex(ByteBuffer indexMap, int slotWidth, int i, int v) {
+    switch (slotWidth) {
+      case 1:
+        indexMap.put(i, (byte) v);
+        break;
+      case 2:
+        indexMap.putShort(i << 1, (short) v);
+        break;
+      default:
+        indexMap.putInt(i << 2, v);
+        break;
+    }
+  }
+
+  private int getIndex(int i) {
+    return getIndex(indexMap, slotWidth, i);
+  }
+
+  private void setIndex(int i, int v) {
+    setIndex(indexMap, slotWidth, i, v);
+  }
+
+  private int hash(int index) {
+    return hashes.getInt(index * HASH_BYTES);
+  }
+
+  private static int hashLong(long key) {
+    return Long.hashCode(key);
+  }
+
+  /*
+   * Hashes a record as a sequence of big-endian longs (the last one
+   * zero-padded), so an 8-byte record hashes like the long it encodes.
+   */
+  private static int hashRecord(byte[] key) {
+    int h = 0;
+    for (int i = 0; i < key.length; i += 8) {
+      long chunk = 0;
+      for (int j = i; j < i + 8; j++) {
+        chunk = (chunk << 8) | (j < key.length ? key[j] & 0xFF : 0);
+      }
+      h = 31 * h + Long.hashCode(chunk);
+    }
+    return h;
+  }
+
+  private boolean isKey(int index, byte[] key) {
+    int base = index * keyWidth;
+    for (int j = 0; j < keyWidth; j++) {
+      if (keys.get(base + j) != key[j]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private long lookup(byte[] key, int hashValue) {
+    int freeSlot = FREE;
+    int mask = indexMapSize - 1;
+    int perturb = initialPerturb(hashValue);
+    for (int i = perturb & mask; ; i = nextProbe(i, perturb, mask), perturb >>= PERTURB_SHIFT) {
+      int index = getIndex(i);
+      if (index == FREE) {
+        return freeSlot == FREE ? constructLookupReturn(FREE, i) : constructLookupReturn(DUMMY, freeSlot);
+      } else if (index == DUMMY) {
+        if (freeSlot == FREE) {
+          freeSlot = i;
+        }
+      } else if (hash(index) == hashValue && isKey(index, key)) {
+        return constructLookupReturn(index, i);
+      }
+    }
+  }
+
+  private long lookupLong(long key, int hashValue) {
+    int freeSlot = FREE;
+    int mask = indexMapSize - 1;
+    int perturb = initialPerturb(hashValue);
+    for (int i = perturb & mask; ; i = nextProbe(i, perturb, mask), perturb >>= PERTURB_SHIFT) {
+      int index = getIndex(i);
+      if (index == FREE) {
+        return freeSlot == FREE ? constructLookupReturn(FREE, i) : constructLookupReturn(DUMMY, freeSlot);
+      } else if (index == DUMMY) {
+        if (freeSlot == FREE) {
+          freeSlot = i;
+        }
+      } else if (keys.getLong(index << 3) == key) {
+        return constructLookupReturn(index, i);
+      }
+    }
+  }
+
+  private int lookupForIndex(int desiredIndex, int hashValue) {
+    int mask = indexMapSize - 1;
+    int perturb = initialPerturb(hashValue);
+    for (int i = perturb & mask; ; i = nextProbe(i, perturb, mask), perturb >>= PERTURB_SHIFT) {
+      int index = getIndex(i);
+      if (index == desiredIndex) {
+        return i;
+      } else if (index == FREE) {
+        return FREE;
+      }
+    }
+  }
+
+  private void checkKey(byte[] key) {
+    ensureOpen();
+    if (key.length != keyWidth) {
+      throw new IllegalArgumentException("Key must be " + keyWidth + " bytes, was " + key.length);
+    }
+  }
+
+  private void checkValue(byte[] value) {
+    if (value.length != valueWidth) {
+      throw new IllegalArgumentException("Value must be " + valueWidth + " bytes, was " + value.length);
+    }
+  }
+
+  private void checkLongs() {
+    ensureOpen();
+    if (keyWidth != 8 || valueWidth != 8) {
+      throw new IllegalStateException("long accessors need 8-byte keys and values");
+    }
+  }
+
+  public int keyWidth() {
+    return keyWidth;
+  }
+
+  public int valueWidth() {
+    return valueWidth;
+  }
+
+  public int size() {
+    ensureOpen();
+    return used;
+  }
+
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  public boolean containsKey(byte[] key) {
+    checkKey(key);
+    return index(lookup(key, hashRecord(key))) >= 0;
+  }
+
+  /*
+   * Copies the value for key into valueOut and returns true, or returns false
+   * if the key is absent.
+   */
+  public boolean get(byte[] key, byte[] valueOut) {
+    checkKey(key);
+    checkValue(valueOut);
+    int index = index(lookup(key, hashRecord(key)));
+    if (index < 0) {
+      return false;
+    }
+    ByteBuffer value = values.duplicate();
+    value.position(index * valueWidth);
+    value.get(valueOut);
+    return true;
+  }
+
+  public byte[] get(byte[] key) {
+    byte[] value = new byte[valueWidth];
+    return get(key, value) ? value : null;
+  }
+
+  /*
+   * Returns true if the key was newly inserted, false if its value was
+   * replaced.
+   */
+  public boolean put(byte[] key, byte[] value) {
+    checkKey(key);
+    checkValue(value);
+    int hash = hashRecord(key);
+    long lookups = lookup(key, hash);
+    int index = index(lookups);
+    if (index >= 0) {
+      writeValue(index, value);
+      return false;
+    }
+    ByteBuffer keyRegion = keys.duplicate();
+    keyRegion.position(used * keyWidth);
+    keyRegion.put(key);
+    writeValue(used, value);
+    insert(lookups, hash);
+    return true;
+  }
+
+  public boolean remove(byte[] key) {
+    checkKey(key);
+    long lookups = lookup(key, hashRecord(key));
+    int index = index(lookups);
+    if (index < 0) {
+      return false;
+    }
+    removeInternal(slot(lookups), index);
+    return true;
+  }
+
+  public boolean containsKey(long key) {
+    checkLongs();
+    return index(lookupLong(key, hashLong(key))) >= 0;
+  }
+
+  public long get(long key, long noValue) {
+    checkLongs();
+    int index = index(lookupLong(key, hashLong(key)));
+    return index < 0 ? noValue : values.getLong(index << 3);
+  }
+
+  public boolean put(long key, long value) {
+    checkLongs();
+    int hash = hashLong(key);
+    long lookups = lookupLong(key, hash);
+    int index = index(lookups);
+    if (index >= 0) {
+      values.putLong(index << 3, value);
+      return false;
+    }
+    keys.putLong(used << 3, key);
+    values.putLong(used << 3, value);
+    insert(lookups, hash);
+    return true;
+  }
+
+  public boolean remove(long key) {
+    checkLongs();
+    long lookups = lookupLong(key, hashLong(key));
+    int index = index(lookups);
+    if (index < 0) {
+      return false;
+    }
+    removeInternal(slot(lookups), index);
+    return true;
+  }
+
+  private void writeValue(int index, byte[] value) {
+    ByteBuffer valueRegion = values.duplicate();
+    valueRegion.position(index * valueWidth);
+    valueRegion.put(value);
+  }
+
+  /*
+   * Completes an insert whose key and value are already written at position
+   * used. May relayout the file and replace every mapped region.
+   */
+  private void insert(long lookups, int hash) {
+    int index = index(lookups);
+    hashes.putInt(used * HASH_BYTES, hash);
+    setIndex(slot(lookups), used++);
+    if (index == FREE) {
+      ++filled;
+    }
+    header.putInt(USED_OFFSET, used);
+    header.putInt(FILLED_OFFSET, filled);
+    if (filled * 3 > indexMapSize * 2) {
+      relayout(Math.max(capacity, used * 2), CompactIndex.tableSizeFor(2 * used));
+    } else if (used == capacity) {
+      relayout(capacity * 2, indexMapSize);
+    }
+  }
+
+  private void removeInternal(int i, int index) {
+    setIndex(i, DUMMY);
+    int lastIndex = --used;
+    if (index != lastIndex) {
+      int lastHash = hash(lastIndex);
+      int j = lookupForIndex(lastIndex, lastHash);
+      setIndex(j, index);
+      hashes.putInt(index * HASH_BYTES, lastHash);
+      moveRecord(keys, keyWidth, lastIndex, index);
+      moveRecord(values, valueWidth, lastIndex, index);
+    }
+    header.putInt(USED_OFFSET, used);
+  }
+
+  private static void moveRecord(ByteBuffer region, int width, int from, int to) {
+    ByteBuffer source = region.duplicate();
+    source.position(from * width).limit(from * width + width);
+    ByteBuffer target = region.duplicate();
+    target.position(to * width);
+    target.put(source);
+  }
+
+  /*
+   * Flushes all changes to the file.
+   */
+  public void force() {
+    ensureOpen();
+    indexMap.force();
+    hashes.force();
+    keys.force();
+    values.force();
+    header.force();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (channel == null) {
+      return;
+    }
+    force();
+    unmapFile();
+  }
+}
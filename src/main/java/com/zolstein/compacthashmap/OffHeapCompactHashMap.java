@@ -0,0 +1,409 @@
+package com.zolstein.compacthashmap;
+
+import static com.zolstein.compacthashmap.CompactIndex.DUMMY;
+import static com.zolstein.compacthashmap.CompactIndex.FREE;
+import static com.zolstein.compacthashmap.CompactIndex.PERTURB_SHIFT;
+import static com.zolstein.compacthashmap.CompactIndex.constructLookupReturn;
+import static com.zolstein.compacthashmap.CompactIndex.index;
+import static com.zolstein.compacthashmap.CompactIndex.initialPerturb;
+import static com.zolstein.compacthashmap.CompactIndex.nextProbe;
+import static com.zolstein.compacthashmap.CompactIndex.slot;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/*
+ * CompactHashMap variant for very large maps that keeps its reference-free
+ * parts, the index and the stored hashes, in direct (off-heap) memory. Keys
+ * and values stay in on-heap arrays. This shrinks the heap and the work GC
+ * has to do for the map to the two reference arrays.
+ *
+ * Off-heap index slots are always 4 bytes wide; the mode is meant for maps
+ * large enough to need int slots anyway. It is a separate class rather than
+ * a CompactHashMap option, so it has no insertion-ordered, hardened or
+ * HashingStrategy mode.
+ *
+ * Memory is freed explicitly, either by close() or, for outgrown buffers,
+ * as soon as a resize replaces them. Any use after close() throws
+ * IllegalStateException. Like CompactHashMap, this class is not thread-safe.
+ */
+@SuppressWarnings("unchecked")
+public class OffHeapCompactHashMap<K, V> extends AbstractMap<K, V> implements AutoCloseable {
+
+  private static final int SLOT_BYTES = 4;
+  private static final int HASH_BYTES = 4;
+
+  private ByteBuffer indexMap;
+  private int indexMapSize;
+  private ByteBuffer hashes;
+  private K[] keys;
+  private V[] values;
+  private int used;
+  private int filled;
+  private long version = 0;
+  private boolean closed = false;
+
+  public OffHeapCompactHashMap() {
+    clear();
+  }
+
+  public OffHeapCompactHashMap(Map<? extends K, ? extends V> source) {
+    this();
+    putAll(source);
+  }
+
+  private void ensureOpen() {
+    if (closed) {
+      throw new IllegalStateException("OffHeapCompactHashMap is closed");
+    }
+  }
+
+  private void initArrays(int size) {
+    DirectBuffers.free(hashes);
+    hashes = DirectBuffers.allocate(size * HASH_BYTES);
+    keys = (K[]) new Object[size];
+    values = (V[]) new Object[size];
+  }
+
+  private void resizeArrays(int size) {
+    ByteBuffer newHashes = DirectBuffers.allocate(size * HASH_BYTES);
+    ByteBuffer source = hashes.duplicate();
+    source.limit(used * HASH_BYTES);
+    newHashes.put(source);
+    newHashes.clear();
+    DirectBuffers.free(hashes);
+    hashes = newHashes;
+    K[] newKeys = (K[]) new Object[size];
+    System.arraycopy(keys, 0, newKeys, 0, used);
+    keys = newKeys;
+    V[] newValues = (V[]) new Object[size];
+    System.arraycopy(values, 0, newValues, 0, used);
+    values = newValues;
+  }
+
+  private void insertArrays(int index, int hash, K key, V value) {
+    hashes.putInt(index * HASH_BYTES, hash);
+    keys[index] = key;
+    values[index] = value;
+  }
+
+  private int hash(int index) {
+    return hashes.getInt(index * HASH_BYTES);
+  }
+
+  private int getIndex(int i) {
+    return indexMap.getInt(i * SLOT_BYTES);
+  }
+
+  private void setIndex(int i, int v) {
+    indexMap.putInt(i * SLOT_BYTES, v);
+  }
+
+  private void makeIndex(int n) {
+    ByteBuffer newIndexMap = DirectBuffers.allocate(n * SLOT_BYTES);
+    for (int i = 0; i < n; i++) {
+      newIndexMap.putInt(i * SLOT_BYTES, FREE);
+    }
+    DirectBuffers.free(indexMap);
+    indexMap = newIndexMap;
+    indexMapSize = n;
+  }
+
+  private boolean isKey(int i, int hash, Object key) {
+    K indexKey = keys[i];
+    return indexKey == key || (hash(i) == hash && Objects.equals(indexKey, key));
+  }
+
+  private long lookup(Object key, int hashValue) {
+    ensureOpen();
+    assert filled < indexMapSize;
+    int freeSlot = FREE;
+    int mask = indexMapSize - 1;
+    int perturb = initialPerturb(hashValue);
+    for (int i = perturb & mask; ; i = nextProbe(i, perturb, mask), perturb >>= PERTURB_SHIFT) {
+      int index = getIndex(i);
+      if (index == FREE) {
+        return freeSlot == FREE ? constructLookupReturn(FREE, i) : constructLookupReturn(DUMMY, freeSlot);
+      } else if (index == DUMMY) {
+        if (freeSlot == FREE) {
+          freeSlot = i;
+        }
+      } else if (isKey(index, hashValue, key)) {
+        return constructLookupReturn(index, i);
+      }
+    }
+  }
+
+  private int lookupForIndex(int desiredIndex, int hashValue) {
+    int mask = indexMapSize - 1;
+    int perturb = initialPerturb(hashValue);
+    for (int i = perturb & mask; ; i = nextProbe(i, perturb, mask), perturb >>= PERTURB_SHIFT) {
+      int index = getIndex(i);
+      if (index == desiredIndex) {
+        return i;
+      } else if (index == FREE) {
+        return FREE;
+      }
+    }
+  }
+
+  private void resizeIndexMap(int n) {
+    makeIndex(CompactIndex.tableSizeFor(n));
+    for (int index = 0; index < used; index++) {
+      int mask = indexMapSize - 1;
+      int perturb = initialPerturb(hash(index));
+      int i = perturb & mask;
+      while (getIndex(i) != FREE) {
+        i = nextProbe(i, perturb, mask);
+        perturb >>= PERTURB_SHIFT;
+      }
+      setIndex(i, index);
+    }
+    filled = used;
+  }
+
+  /*
+   * Off-heap bytes currently held by the index and the hashes.
+   */
+  public long offHeapBytes() {
+    ensureOpen();
+    return (long) indexMap.capacity() + hashes.capacity();
+  }
+
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    ByteBuffer oldIndexMap = indexMap;
+    ByteBuffer oldHashes = hashes;
+    indexMap = null;
+    hashes = null;
+    keys = null;
+    values = null;
+    used = 0;
+    DirectBuffers.free(oldIndexMap);
+    DirectBuffers.free(oldHashes);
+  }
+
+  @Override
+  public int size() {
+    ensureOpen();
+    return used;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return index(lookup(key, key.hashCode())) >= 0;
+  }
+
+  @Override
+  public boolean containsValue(Object value) {
+    ensureOpen();
+    for (int i = 0; i < used; i++) {
+      if (Objects.equals(value, values[i])) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public V get(Object key) {
+    int index = index(lookup(key, key.hashCode()));
+    if (index < 0) {
+      return null;
+    }
+    return values[index];
+  }
+
+  @Override
+  public V put(K key, V value) {
+    int hash = key.hashCode();
+    long lookups = lookup(key, hash);
+    int index = index(lookups);
+    int i = slot(lookups);
+    V old = null;
+    if (index < 0) {
+      if (used == keys.length) {
+        resizeArrays(used * 2);
+      }
+      insertArrays(used, hash, key, value);
+      setIndex(i, used++);
+      if (index == FREE) {
+        int localFilled = ++filled;
+        if (localFilled * 3 > indexMapSize * 2) {
+          resizeIndexMap(2 * used);
+        }
+      }
+      ++version;
+    } else {
+      old = values[index];
+      values[index] = value;
+    }
+    return old;
+  }
+
+  @Override
+  public V remove(Object key) {
+    long lookups = lookup(key, key.hashCode());
+    int index = index(lookups);
+    if (index < 0) {
+      return null;
+    }
+    return removeInternal(slot(lookups), index);
+  }
+
+  private void removeAtIndex(int index) {
+    removeInternal(lookupForIndex(index, hash(index)), index);
+  }
+
+  private V removeInternal(int i, int index) {
+    setIndex(i, DUMMY);
+    int lastIndex = --used;
+    V lastValue = values[lastIndex];
+    if (index != lastIndex) {
+      int lastHash = hash(lastIndex);
+      int j = lookupForIndex(lastIndex, lastHash);
+      assert lastIndex >= 0 && i != j;
+      setIndex(j, index);
+      V valueToReturn = values[index];
+      insertArrays(index, lastHash, keys[lastIndex], lastValue);
+      lastValue = valueToReturn;
+    }
+    keys[lastIndex] = null;
+    values[lastIndex] = null;
+    ++version;
+    return lastValue;
+  }
+
+  @Override
+  public void clear() {
+    ensureOpen();
+    makeIndex(8);
+    initArrays(8);
+    used = 0;
+    filled = 0;
+    ++version;
+  }
+
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    ensureOpen();
+    return new AbstractSet<Map.Entry<K, V>>() {
+      @Override
+      public Iterator<Map.Entry<K, V>> iterator() {
+        return new EntryIterator();
+      }
+
+      @Override
+      public int size() {
+        return OffHeapCompactHashMap.this.size();
+      }
+
+      @Override
+      public void clear() {
+        OffHeapCompactHashMap.this.clear();
+      }
+    };
+  }
+
+  private class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+    private boolean canRemove = false;
+    private int nextIndex = 0;
+    private long expectedVersion = version;
+
+    @Override
+    public boolean hasNext() {
+      return nextIndex < used;
+    }
+
+    @Override
+    public Map.Entry<K, V> next() {
+      ensureOpen();
+      if (expectedVersion != version) {
+        throw new ConcurrentModificationException();
+      }
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      canRemove = true;
+      return new Entry(nextIndex++);
+    }
+
+    @Override
+    public void remove() {
+      if (!canRemove) {
+        throw new IllegalStateException();
+      }
+      ensureOpen();
+      if (expectedVersion != version) {
+        throw new ConcurrentModificationException();
+      }
+      removeAtIndex(--nextIndex);
+      expectedVersion = version;
+      canRemove = false;
+    }
+  }
+
+  private class Entry implements Map.Entry<K, V> {
+
+    private final int index;
+
+    Entry(int index) {
+      this.index = index;
+    }
+
+    @Override
+    public K getKey() {
+      return keys[index];
+    }
+
+    @Override
+    public V getValue() {
+      return values[index];
+    }
+
+    @Override
+    public V setValue(V value) {
+      V ret = values[index];
+      values[index] = value;
+      return ret;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o == this) {
+        return true;
+      } else if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry<?, ?> other = (Map.Entry) o;
+      return Objects.equals(getKey(), other.getKey()) && Objects.equals(getValue(), other.getValue());
+    }
+
+    @Override
+    public String toString() {
+      return getKey() + "=" + getValue();
+    }
+  }
+}
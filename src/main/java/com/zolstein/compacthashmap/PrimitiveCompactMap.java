@@ -0,0 +1,179 @@
+package com.zolstein.compacthashmap;
+
+import static com.zolstein.compacthashmap.CompactIndex.DUMMY;
+import static com.zolstein.compacthashmap.CompactIndex.FREE;
+import static com.zolstein.compacthashmap.CompactIndex.index;
+import static com.zolstein.compacthashmap.CompactIndex.slot;
+
+import java.util.ConcurrentModificationException;
+
+/*
+ * Shared bookkeeping for the primitive-keyed compact maps.
+ *
+ * Subclasses own the typed key and value arrays and do their own typed
+ * lookups; everything that only moves dense indexes around - growing the
+ * arrays and the index, swap-removal, the modification count and cursor
+ * positioning - lives here so the specializations cannot drift apart.
+ */
+abstract class PrimitiveCompactMap {
+
+  CompactIndex indexMap;
+  int used;
+  int filled;
+  long version = 0;
+
+  abstract int capacity();
+
+  abstract void initArrays(int size);
+
+  abstract void resizeArrays(int size);
+
+  /*
+   * Recomputes the hash of the key stored at the given dense index.
+   */
+  abstract int hashAt(int index);
+
+  /*
+   * Copies the entry at index from to index to.
+   */
+  abstract void moveEntry(int from, int to);
+
+  /*
+   * Drops any references held by the now-unused entry at index.
+   */
+  void clearEntry(int index) {}
+
+  final void assertLookupable() {
+    assert filled < indexMap.size();
+  }
+
+  private void resizeIndexMap(int n) {
+    n = CompactIndex.tableSizeFor(n);
+    CompactIndex newIndexMap = CompactIndex.reuseOrCreate(indexMap, n);
+    for (int index = 0; index < used; index++) {
+      newIndexMap.insertFresh(index, hashAt(index));
+    }
+    indexMap = newIndexMap;
+    filled = used;
+  }
+
+  /*
+   * Returns the dense index a new entry will occupy, growing the arrays if
+   * needed. The caller stores the key and value there and then calls
+   * commitEntry with the lookup result that found the key absent.
+   */
+  final int reserveEntry() {
+    if (used == capacity()) {
+      resizeArrays(used * 2);
+    }
+    return used;
+  }
+
+  final void commitEntry(long lookups) {
+    indexMap.set(slot(lookups), used++);
+    if (index(lookups) == FREE) {
+      int localFilled = ++filled;
+      if (localFilled * 3 > indexMap.size() * 2) {
+        resizeIndexMap(2 * used);
+      }
+    }
+    ++version;
+  }
+
+  /*
+   * Removes the entry at dense index found at index slot i by moving the
+   * last entry into its place.
+   */
+  final void removeEntry(int i, int index) {
+    indexMap.set(i, DUMMY);
+    int lastIndex = --used;
+    if (index != lastIndex) {
+      int j = indexMap.lookupForIndex(lastIndex, hashAt(lastIndex));
+      assert i != j;
+      indexMap.set(j, index);
+      moveEntry(lastIndex, index);
+    }
+    clearEntry(lastIndex);
+    ++version;
+  }
+
+  final void checkVersion(long expected) {
+    if (version != expected) {
+      throw new ConcurrentModificationException();
+    }
+  }
+
+  public int size() {
+    return used;
+  }
+
+  public boolean isEmpty() {
+    return used == 0;
+  }
+
+  public void clear() {
+    indexMap = CompactIndex.create(8);
+    initArrays(8);
+    used = 0;
+    filled = 0;
+    ++version;
+  }
+
+  /*
+   * Forward-only cursor over the dense entries, in the map's iteration
+   * order. Subclasses add typed key(), value() and setValue() that read the
+   * current entry in place, so iteration allocates nothing per entry.
+   *
+   * Modifying the map other than through the cursor invalidates it; the
+   * next advance() throws ConcurrentModificationException.
+   */
+  abstract static class PrimitiveCursor {
+
+    private final PrimitiveCompactMap backingMap;
+    private long version;
+    int index = -1;
+    private boolean hasCurrent = false;
+
+    PrimitiveCursor(PrimitiveCompactMap map) {
+      this.backingMap = map;
+      this.version = map.version;
+    }
+
+    final void checkCurrent() {
+      if (!hasCurrent) {
+        throw new IllegalStateException("No current entry");
+      }
+    }
+
+    /*
+     * Moves to the next entry. Returns false, leaving no current entry, once
+     * every entry has been visited.
+     */
+    public boolean advance() {
+      backingMap.checkVersion(version);
+      if (index + 1 < backingMap.used) {
+        index++;
+        hasCurrent = true;
+      } else {
+        index = backingMap.used;
+        hasCurrent = false;
+      }
+      return hasCurrent;
+    }
+
+    /*
+     * Removes the current entry. There is no current entry afterwards until
+     * the next advance(), which continues with the entry that would have
+     * followed the removed one.
+     */
+    public void remove() {
+      checkCurrent();
+      backingMap.checkVersion(version);
+      // The last entry moves into this position, so visit it again next.
+      int i = backingMap.indexMap.lookupForIndex(index, backingMap.hashAt(index));
+      backingMap.removeEntry(i, index--);
+      version = backingMap.version;
+      hasCurrent = false;
+    }
+  }
+}
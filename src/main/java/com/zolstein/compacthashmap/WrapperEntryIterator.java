@@ -11,19 +11,18 @@ class WrapperEntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
   private boolean canRemove;
   private int nextIndex;
   private long version;
-  private int size;
 
   WrapperEntryIterator(CompactHashMap<K, V> map) {
     this.backingMap = map;
     this.version = map.version;
     this.canRemove = false;
     this.nextIndex = 0;
-    this.size = map.size();
   }
 
   @Override
   public boolean hasNext() {
-    return nextIndex < size;
+    nextIndex = backingMap.skipHoles(nextIndex);
+    return nextIndex < backingMap.denseSize();
   }
 
   @Override
@@ -49,7 +48,6 @@ class WrapperEntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
     }
     backingMap.removeAtIndex(--nextIndex);
     version = backingMap.version; // increment?
-    size = backingMap.size(); // decrement?
     canRemove = false;
   }
 }
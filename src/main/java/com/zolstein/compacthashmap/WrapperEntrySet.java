@@ -4,8 +4,8 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
+import java.util.Spliterator;
 
 public class WrapperEntrySet<K, V> implements Set<Map.Entry<K, V>> {
 
@@ -31,8 +31,7 @@ public class WrapperEntrySet<K, V> implements Set<Map.Entry<K, V>> {
       return false;
     }
     Map.Entry entry = (Map.Entry) o;
-    Map.Entry<K, V> inSet = backingMap.getEntry(entry.getKey());
-    return Objects.equals(inSet, entry);
+    return backingMap.containsEntry(entry.getKey(), entry.getValue());
   }
 
   @Override
@@ -40,6 +39,11 @@ public class WrapperEntrySet<K, V> implements Set<Map.Entry<K, V>> {
     return new WrapperEntryIterator<>(backingMap);
   }
 
+  @Override
+  public Spliterator<Map.Entry<K, V>> spliterator() {
+    return new CompactMapSpliterator.EntrySpliterator<>(backingMap, 0, -1, 0);
+  }
+
   @Override
   public Object[] toArray() {
     Object[] array = new Object[backingMap.size()];
@@ -71,13 +75,7 @@ public class WrapperEntrySet<K, V> implements Set<Map.Entry<K, V>> {
       return false;
     }
     Map.Entry entry = (Map.Entry) o;
-    Map.Entry<K, V> inSet = backingMap.getEntry(entry.getKey());
-    if (Objects.equals(entry, inSet)) {
-      backingMap.remove(entry.getKey());
-      return true;
-    } else {
-      return false;
-    }
+    return backingMap.removeEntry(entry.getKey(), entry.getValue());
   }
 
   @Override
@@ -5,6 +5,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
 
 class WrapperKeySet<K> implements Set<K> {
 
@@ -34,6 +35,11 @@ class WrapperKeySet<K> implements Set<K> {
     return new TransformedIterator<>(backingMap.entrySet().iterator(), Map.Entry::getKey);
   }
 
+  @Override
+  public Spliterator<K> spliterator() {
+    return new CompactMapSpliterator.KeySpliterator<>(backingMap, 0, -1, 0);
+  }
+
   @Override
   public Object[] toArray() {
     Object[] array = new Object[backingMap.size()];
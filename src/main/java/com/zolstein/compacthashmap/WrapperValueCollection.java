@@ -5,6 +5,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Spliterator;
 
 class WrapperValueCollection<V> implements Collection<V> {
 
@@ -36,6 +37,11 @@ class WrapperValueCollection<V> implements Collection<V> {
     return new TransformedIterator<>(backingMap.entrySet().iterator(), Map.Entry::getValue);
   }
 
+  @Override
+  public Spliterator<V> spliterator() {
+    return new CompactMapSpliterator.ValueSpliterator<>(backingMap, 0, -1, 0);
+  }
+
   @Override
   public Object[] toArray() {
     Object[] array = new Object[backingMap.size()];
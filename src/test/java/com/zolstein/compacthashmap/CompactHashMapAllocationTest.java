@@ -0,0 +1,101 @@
+package com.zolstein.compacthashmap;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Checks that lookups and in-place updates allocate nothing, using the
+ * per-thread allocation counter. Tests run mostly interpreted, where escape
+ * analysis cannot hide allocations, so any per-call allocation shows up.
+ */
+public class CompactHashMapAllocationTest {
+
+  private static final int SIZE = 1000;
+  private static final int ROUNDS = 100;
+
+  @Test
+  public void testLookupsAndUpdatesDoNotAllocate() {
+    com.sun.management.ThreadMXBean threads = threadBean();
+    CompactHashMap<Long, Long> map = new CompactHashMap<>();
+    Long[] keys = new Long[SIZE];
+    Long[] missing = new Long[SIZE];
+    for (int i = 0; i < SIZE; i++) {
+      keys[i] = (long) i * 31;
+      missing[i] = (long) i * 31 + 1;
+      map.put(keys[i], keys[i]);
+    }
+    Set<Map.Entry<Long, Long>> entries = map.entrySet();
+    Map.Entry<Long, Long> probe = new SimpleImmutableEntry<>(keys[7], keys[7]);
+    exercise(map, keys, missing, entries, probe);
+
+    long thread = Thread.currentThread().getId();
+    long before = threads.getThreadAllocatedBytes(thread);
+    long sum = exercise(map, keys, missing, entries, probe);
+    long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+    assertThat(sum).isNotEqualTo(0);
+    // One allocation per operation would be several MB; leave room only for
+    // incidental JVM bookkeeping.
+    assertThat(allocated).isLessThan(1024L);
+  }
+
+  @Test
+  public void testCursorScanDoesNotAllocatePerEntry() {
+    com.sun.management.ThreadMXBean threads = threadBean();
+    CompactHashMap<Long, Long> map = new CompactHashMap<>();
+    for (long i = 0; i < 100000; i++) {
+      map.put(i, i);
+    }
+    scan(map);
+
+    long thread = Thread.currentThread().getId();
+    long before = threads.getThreadAllocatedBytes(thread);
+    long sum = scan(map);
+    long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+    assertThat(sum).isNotEqualTo(0);
+    assertThat(allocated).isLessThan(1024L);
+  }
+
+  private static long scan(CompactHashMap<Long, Long> map) {
+    long sum = 0;
+    MapCursor<Long, Long> cursor = map.cursor();
+    while (cursor.advance()) {
+      sum += cursor.key() ^ cursor.value();
+      cursor.setValue(cursor.value());
+    }
+    return sum + map.size();
+  }
+
+  private static long exercise(CompactHashMap<Long, Long> map, Long[] keys, Long[] missing,
+      Set<Map.Entry<Long, Long>> entries, Map.Entry<Long, Long> probe) {
+    long sum = 0;
+    for (int round = 0; round < ROUNDS; round++) {
+      for (int i = 0; i < SIZE; i++) {
+        Long key = keys[i];
+        sum += map.get(key);
+        sum += map.containsKey(missing[i]) ? 1 : 0;
+        map.put(key, key);
+        sum += map.remove(key);
+        map.put(key, key);
+      }
+      sum += entries.contains(probe) ? 1 : 0;
+    }
+    return sum;
+  }
+
+  private static com.sun.management.ThreadMXBean threadBean() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+    return threads;
+  }
+}
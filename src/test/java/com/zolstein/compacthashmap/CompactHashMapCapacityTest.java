@@ -0,0 +1,181 @@
+package com.zolstein.compacthashmap;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.zolstein.compacthashmap.CompactIndex.KeySize;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class CompactHashMapCapacityTest {
+
+  @Test
+  public void testInitialCapacityAvoidsResizing() {
+    CompactHashMap<Integer, Integer> map = new CompactHashMap<>(1000);
+    int[] hashes = map.hashes;
+    CompactIndex index = map.indexMap;
+    for (int i = 0; i < 1000; i++) {
+      map.put(i, i);
+    }
+    assertThat(map.hashes == hashes).isTrue();
+    assertThat(map.indexMap == index).isTrue();
+    assertThrows(IllegalArgumentException.class, () -> new CompactHashMap<>(-1));
+  }
+
+  @Test
+  public void testEnsureCapacity() {
+    CompactHashMap<Integer, Integer> map = new CompactHashMap<>();
+    map.put(-1, -1);
+    map.ensureCapacity(100001);
+    int[] hashes = map.hashes;
+    CompactIndex index = map.indexMap;
+    assertThat(index.keySize()).isEqualTo(KeySize.INT);
+    for (int i = 0; i < 100000; i++) {
+      map.put(i, i);
+    }
+    assertThat(map.hashes == hashes).isTrue();
+    assertThat(map.indexMap == index).isTrue();
+    assertThat(map.get(-1)).isEqualTo(-1);
+  }
+
+  @Test
+  public void testTrimToSize() {
+    CompactHashMap<Integer, Integer> map = new CompactHashMap<>();
+    map.setLowWaterMark(0);
+    for (int i = 0; i < 100000; i++) {
+      map.put(i, i);
+    }
+    for (int i = 10; i < 100000; i++) {
+      map.remove(i);
+    }
+    assertThat(map.indexMap.keySize()).isEqualTo(KeySize.INT);
+    map.trimToSize();
+    assertThat(map.hashes.length).isEqualTo(10);
+    assertThat(map.indexMap.keySize()).isEqualTo(KeySize.BYTE);
+    for (int i = 0; i < 10; i++) {
+      assertThat(map.get(i)).isEqualTo(i);
+    }
+    map.put(10, 10);
+    assertThat(map).hasSize(11);
+  }
+
+  @Test
+  public void testRemoveShrinksPastLowWaterMark() {
+    CompactHashMap<Integer, Integer> map = new CompactHashMap<>();
+    for (int i = 0; i < 100000; i++) {
+      map.put(i, i);
+    }
+    for (int i = 0; i < 99990; i++) {
+      assertThat(map.remove(i)).isEqualTo(i);
+    }
+    assertThat(map.hashes.length).isLessThan(100);
+    assertThat(map.indexMap.keySize()).isEqualTo(KeySize.BYTE);
+    for (int i = 99990; i < 100000; i++) {
+      assertThat(map.get(i)).isEqualTo(i);
+    }
+  }
+
+  @Test
+  public void testCopyIsPresizedButStillShrinks() {
+    Map<Integer, Integer> source = new HashMap<>();
+    for (int i = 0; i < 100000; i++) {
+      source.put(i, i);
+    }
+    CompactHashMap<Integer, Integer> map = new CompactHashMap<>(source);
+    assertThat(map.hashes.length).isEqualTo(100000);
+    assertThat(map).isEqualTo(source);
+    for (int i = 0; i < 99990; i++) {
+      map.remove(i);
+    }
+    assertThat(map.hashes.length).isLessThan(100);
+    assertThat(map.indexMap.keySize()).isEqualTo(KeySize.BYTE);
+  }
+
+  @Test
+  public void testShrinkKeepsRequestedCapacity() {
+    CompactHashMap<Integer, Integer> map = new CompactHashMap<>(1000);
+    for (int i = 0; i < 10; i++) {
+      map.put(i, i);
+      map.remove(i);
+    }
+    assertThat(map.hashes.length).isEqualTo(1000);
+  }
+
+  @Test
+  public void testShrinkDuringIteration() {
+    CompactHashMap<Integer, Integer> map = new CompactHashMap<>();
+    for (int i = 0; i < 1000; i++) {
+      map.put(i, i);
+    }
+    List<Integer> kept = new ArrayList<>();
+    Iterator<Map.Entry<Integer, Integer>> iterator = map.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<Integer, Integer> entry = iterator.next();
+      if (entry.getKey() % 100 != 0) {
+        iterator.remove();
+      } else {
+        kept.add(entry.getKey());
+      }
+    }
+    assertThat(map.keySet()).containsExactlyElementsIn(kept);
+    assertThat(map.hashes.length).isLessThan(1000);
+  }
+
+  @Test
+  public void testChurnPurgesIndexInPlace() {
+    CompactHashMap<Integer, Integer> map = new CompactHashMap<>();
+    for (int i = 0; i < 1000; i++) {
+      map.put(i, i);
+    }
+    CompactIndex index = map.indexMap;
+    int[] hashes = map.hashes;
+    // Queue-like churn: insert a new key, remove the oldest
+    for (int i = 1000; i < 1000000; i++) {
+      map.put(i, i);
+      map.remove(i - 1000);
+    }
+    assertThat(map.indexMap == index).isTrue();
+    assertThat(map.hashes == hashes).isTrue();
+    for (int i = 999000; i < 1000000; i++) {
+      assertThat(map.get(i)).isEqualTo(i);
+    }
+    assertThat(map.get(998999)).isNull();
+  }
+
+  @Test
+  public void testLowWaterMarkValidation() {
+    CompactHashMap<Integer, Integer> map = new CompactHashMap<>();
+    assertThrows(IllegalArgumentException.class, () -> map.setLowWaterMark(0.5f));
+    assertThrows(IllegalArgumentException.class, () -> map.setLowWaterMark(-0.1f));
+    assertThrows(IllegalArgumentException.class, () -> map.setLowWaterMark(Float.NaN));
+  }
+
+  @Test
+  public void testContainsNullValueIgnoresSpareCapacity() {
+    CompactHashMap<Integer, Integer> map = new CompactHashMap<>();
+    map.put(1, 1);
+    assertThat(map.containsValue(null)).isFalse();
+    map.put(2, null);
+    assertThat(map.containsValue(null)).isTrue();
+  }
+
+  @Test
+  public void testIndexWidthBoundaries() {
+    assertThat(indexWidthAfterPuts(42)).isEqualTo(KeySize.BYTE);
+    assertThat(indexWidthAfterPuts(43)).isEqualTo(KeySize.SHORT);
+    assertThat(indexWidthAfterPuts(10922)).isEqualTo(KeySize.SHORT);
+    assertThat(indexWidthAfterPuts(10923)).isEqualTo(KeySize.INT);
+  }
+
+  private static KeySize indexWidthAfterPuts(int n) {
+    CompactHashMap<Integer, Integer> map = new CompactHashMap<>();
+    for (int i = 0; i < n; i++) {
+      map.put(i, i);
+    }
+    return map.indexMap.keySize();
+  }
+}
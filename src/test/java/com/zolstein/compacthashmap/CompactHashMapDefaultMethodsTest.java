@@ -0,0 +1,105 @@
+package com.zolstein.compacthashmap;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class CompactHashMapDefaultMethodsTest {
+
+  @Test
+  public void testMergeCounts() {
+    Map<String, Integer> map = new CompactHashMap<>();
+    for (String word : "a b a c b a".split(" ")) {
+      map.merge(word, 1, Integer::sum);
+    }
+    assertThat(map).containsExactly("a", 3, "b", 2, "c", 1);
+    assertThat(map.merge("a", 1, (a, b) -> null)).isNull();
+    assertThat(map).doesNotContainKey("a");
+  }
+
+  @Test
+  public void testNullValues() {
+    Map<String, String> map = new CompactHashMap<>();
+    map.put("k", null);
+    assertThat(map.getOrDefault("k", "default")).isNull();
+    assertThat(map.getOrDefault("x", "default")).isEqualTo("default");
+    assertThat(map.putIfAbsent("k", "v")).isNull();
+    assertThat(map.get("k")).isEqualTo("v");
+    map.put("k", null);
+    assertThat(map.computeIfAbsent("k", k -> "w")).isEqualTo("w");
+    map.put("k", null);
+    assertThat(map.computeIfPresent("k", (k, v) -> "never")).isNull();
+    assertThat(map.merge("k", "m", String::concat)).isEqualTo("m");
+    assertThat(map.compute("k", (k, v) -> null)).isNull();
+    assertThat(map).isEmpty();
+  }
+
+  @Test
+  public void testStructuralChangeInFunctionThrows() {
+    Map<Integer, Integer> map = new CompactHashMap<>();
+    map.put(1, 1);
+    assertThrows(ConcurrentModificationException.class,
+        () -> map.computeIfAbsent(2, k -> map.put(3, 3)));
+    assertThrows(ConcurrentModificationException.class,
+        () -> map.compute(1, (k, v) -> map.remove(3)));
+    // Replacing a value is not a structural change
+    assertThat(map.merge(1, 5, (a, b) -> {
+      map.put(1, 100);
+      return a + b;
+    })).isEqualTo(6);
+  }
+
+  @Test
+  public void pseudoRandomTest() {
+    Random random = new Random(0x1234567887654321L);
+    Map<Integer, Integer> expected = new HashMap<>();
+    Map<Integer, Integer> map = new CompactHashMap<>();
+    for (int i = 0; i < 200000; i++) {
+      Integer key = random.nextInt(500);
+      Integer value = random.nextInt(10) == 0 ? null : random.nextInt(5);
+      Integer other = random.nextInt(5);
+      switch (random.nextInt(10)) {
+        case 0:
+          assertThat(map.getOrDefault(key, -1)).isEqualTo(expected.getOrDefault(key, -1));
+          break;
+        case 1:
+          assertThat(map.putIfAbsent(key, value)).isEqualTo(expected.putIfAbsent(key, value));
+          break;
+        case 2:
+          assertThat(map.remove(key, value)).isEqualTo(expected.remove(key, value));
+          break;
+        case 3:
+          assertThat(map.replace(key, value, other)).isEqualTo(expected.replace(key, value, other));
+          break;
+        case 4:
+          assertThat(map.replace(key, value)).isEqualTo(expected.replace(key, value));
+          break;
+        case 5:
+          assertThat(map.computeIfAbsent(key, k -> value)).isEqualTo(expected.computeIfAbsent(key, k -> value));
+          break;
+        case 6:
+          assertThat(map.computeIfPresent(key, (k, v) -> v == 0 ? null : v - 1))
+              .isEqualTo(expected.computeIfPresent(key, (k, v) -> v == 0 ? null : v - 1));
+          break;
+        case 7:
+          assertThat(map.compute(key, (k, v) -> value))
+              .isEqualTo(expected.compute(key, (k, v) -> value));
+          break;
+        case 8:
+          assertThat(map.merge(key, other, (a, b) -> a + b > 6 ? null : a + b))
+              .isEqualTo(expected.merge(key, other, (a, b) -> a + b > 6 ? null : a + b));
+          break;
+        default:
+          assertThat(map.put(key, value)).isEqualTo(expected.put(key, value));
+          break;
+      }
+      assertThat(map.size()).isEqualTo(expected.size());
+    }
+    assertThat(map).isEqualTo(expected);
+  }
+}
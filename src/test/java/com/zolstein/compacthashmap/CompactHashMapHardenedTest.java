@@ -0,0 +1,209 @@
+package com.zolstein.compacthashmap;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class CompactHashMapHardenedTest {
+
+  // 2^bits distinct strings of "Aa" and "BB" blocks, all with the same hashCode
+  private static String[] collidingStrings(int bits) {
+    String[] ret = new String[1 << bits];
+    for (int n = 0; n < ret.length; n++) {
+      StringBuilder sb = new StringBuilder();
+      for (int b = 0; b < bits; b++) {
+        sb.append((n >>> b & 1) == 0 ? "Aa" : "BB");
+      }
+      ret[n] = sb.toString();
+    }
+    return ret;
+  }
+
+  private static <K, V> CompactHashMap<K, V> hardenedMap(boolean insertionOrdered) {
+    CompactHashMap<K, V> map = new CompactHashMap<>(0, insertionOrdered);
+    map.setHardened(true);
+    return map;
+  }
+
+  @Test
+  public void testFullCollisionsMoveToTree() {
+    String[] keys = collidingStrings(13);
+    CompactHashMap<String, Integer> map = hardenedMap(false);
+    for (int i = 0; i < keys.length; i++) {
+      assertThat(map.put(keys[i], i)).isNull();
+    }
+    assertThat(map).hasSize(keys.length);
+    assertThat(map.collisionTree.size()).isEqualTo(keys.length);
+    for (int i = 0; i < keys.length; i++) {
+      assertThat(map.get(keys[i])).isEqualTo(i);
+    }
+    assertThat(map.get("AaAaAa")).isNull();
+    assertThat(map.get(12345)).isNull();
+  }
+
+  @Test
+  public void testRemovalsWithTreeMatchHashMap() {
+    for (boolean insertionOrdered : new boolean[] {false, true}) {
+      String[] keys = collidingStrings(10);
+      CompactHashMap<String, Integer> map = hardenedMap(insertionOrdered);
+      Map<String, Integer> expected = new HashMap<>();
+      for (int i = 0; i < keys.length; i++) {
+        map.put(keys[i], i);
+        expected.put(keys[i], i);
+        map.put("plain" + i, i);
+        expected.put("plain" + i, i);
+      }
+      for (int i = 0; i < keys.length; i += 3) {
+        assertThat(map.remove(keys[i])).isEqualTo(i);
+        expected.remove(keys[i]);
+      }
+      Iterator<String> iterator = map.keySet().iterator();
+      while (iterator.hasNext()) {
+        String key = iterator.next();
+        if (key.hashCode() % 5 == 0) {
+          iterator.remove();
+          expected.remove(key);
+        }
+      }
+      assertThat(map).isEqualTo(expected);
+      for (Map.Entry<String, Integer> e : expected.entrySet()) {
+        assertThat(map.get(e.getKey())).isEqualTo(e.getValue());
+      }
+      map.trimToSize();
+      assertThat(map).isEqualTo(expected);
+    }
+  }
+
+  @Test
+  public void testFreshKeysAfterTreeifyStayReachable() {
+    for (boolean incremental : new boolean[] {false, true}) {
+      for (int bits : new int[] {8, 12}) {
+        String[] keys = collidingStrings(bits);
+        CompactHashMap<String, Integer> map = hardenedMap(false);
+        map.setIncrementalResize(incremental);
+        Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+          map.put(keys[i], i);
+          expected.put(keys[i], i);
+        }
+        for (int i = 0; i < 2000; i++) {
+          map.put("x" + i, i);
+          expected.put("x" + i, i);
+        }
+        assertThat(map).hasSize(expected.size());
+        for (Map.Entry<String, Integer> e : expected.entrySet()) {
+          assertThat(map.containsKey(e.getKey())).isTrue();
+          assertThat(map.get(e.getKey())).isEqualTo(e.getValue());
+        }
+        assertThat(map).isEqualTo(expected);
+      }
+    }
+  }
+
+  @Test
+  public void testToggleRestoresHashes() {
+    CompactHashMap<Integer, Integer> map = new CompactHashMap<>();
+    for (int i = 0; i < 1000; i++) {
+      map.put(i, i);
+    }
+    map.setHardened(true);
+    assertThat(map.isHardened()).isTrue();
+    for (int i = 0; i < 1000; i++) {
+      assertThat(map.get(i)).isEqualTo(i);
+    }
+    map.setHardened(false);
+    for (int i = 0; i < 1000; i++) {
+      assertThat(map.hashes[i]).isEqualTo(Integer.hashCode(i));
+      assertThat(map.get(i)).isEqualTo(i);
+    }
+  }
+
+  @Test
+  public void testFreezeAndSerialize() throws Exception {
+    String[] keys = collidingStrings(9);
+    CompactHashMap<String, Integer> map = hardenedMap(false);
+    for (int i = 0; i < keys.length; i++) {
+      map.put(keys[i], i);
+      map.put("plain" + i, i);
+    }
+    FrozenCompactHashMap<String, Integer> frozen = map.freeze();
+    assertThat(frozen).isEqualTo(map);
+    for (int i = 0; i < keys.length; i++) {
+      assertThat(frozen.get(keys[i])).isEqualTo(i);
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    map.writeTo(out, Codec.STRING, Codec.INTEGER, true);
+    CompactHashMap<String, Integer> read =
+        CompactHashMap.readFrom(new ByteArrayInputStream(out.toByteArray()), Codec.STRING, Codec.INTEGER);
+    assertThat(read.isHardened()).isTrue();
+    assertThat(read).isEqualTo(map);
+    read.put("extra", -1);
+    assertThat(read.get(keys[7])).isEqualTo(7);
+  }
+
+  @Test
+  public void testRebuiltIndexKeepsFloodsInTree() throws Exception {
+    String[] keys = collidingStrings(11);
+    CompactHashMap<String, Integer> map = hardenedMap(false);
+    CompactHashMap<String, Integer> toggled = new CompactHashMap<>();
+    for (int i = 0; i < keys.length; i++) {
+      map.put(keys[i], i);
+      map.put("plain" + i, i);
+      toggled.put(keys[i], i);
+      toggled.put("plain" + i, i);
+    }
+    toggled.setHardened(true);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    map.writeTo(out, Codec.STRING, Codec.INTEGER, true);
+    CompactHashMap<String, Integer> read =
+        CompactHashMap.readFrom(new ByteArrayInputStream(out.toByteArray()), Codec.STRING, Codec.INTEGER);
+    for (CompactHashMap<String, Integer> rebuilt : Arrays.asList(read, toggled)) {
+      CompactMapStats stats = rebuilt.stats();
+      assertThat(stats.treeSize()).isEqualTo(keys.length);
+      assertThat(stats.maxProbeLength()).isLessThan(64);
+      assertThat(rebuilt).isEqualTo(map);
+      for (int i = 0; i < keys.length; i++) {
+        assertThat(rebuilt.get(keys[i])).isEqualTo(i);
+      }
+    }
+  }
+
+  @Test
+  public void testNonComparableCollisionsStayCorrect() {
+    CompactHashMap<Object, Integer> map = hardenedMap(false);
+    for (int i = 0; i < 2000; i++) {
+      map.put(new Colliding(i), i);
+    }
+    assertThat(map.collisionTree).isNull();
+    for (int i = 0; i < 2000; i++) {
+      assertThat(map.get(new Colliding(i))).isEqualTo(i);
+    }
+  }
+
+  private static final class Colliding {
+
+    private final int i;
+
+    private Colliding(int i) {
+      this.i = i;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Colliding && ((Colliding) o).i == i;
+    }
+
+    @Override
+    public int hashCode() {
+      return 42;
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package com.zolstein.compacthashmap;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.HashMap;
+import java.util.Iterator;
+import org.junit.jupiter.api.Test;
+
+public class CompactHashMapHashingStrategyTest {
+
+  private static byte[] bytes(int i) {
+    return new byte[] {(byte) i, (byte) (i >>> 8), 42};
+  }
+
+  @Test
+  public void testArrayKeysMatchByContent() {
+    for (boolean insertionOrdered : new boolean[] {false, true}) {
+      CompactHashMap<byte[], Integer> map =
+          new CompactHashMap<>(0, insertionOrdered, HashingStrategy.BYTE_ARRAY);
+      for (int i = 0; i < 1000; i++) {
+        assertThat(map.put(bytes(i), i)).isNull();
+      }
+      assertThat(map.put(bytes(6), -6)).isEqualTo(6);
+      assertThat(map).hasSize(1000);
+      for (int i = 0; i < 1000; i += 2) {
+        assertThat(map.remove(bytes(i))).isEqualTo(i == 6 ? -6 : i);
+      }
+      Iterator<byte[]> iterator = map.keySet().iterator();
+      while (iterator.hasNext()) {
+        if (iterator.next()[0] % 3 == 0) {
+          iterator.remove();
+        }
+      }
+      for (int i = 0; i < 1000; i++) {
+        boolean present = i % 2 != 0 && (byte) i % 3 != 0;
+        assertThat(map.containsKey(bytes(i))).isEqualTo(present);
+      }
+      assertThat(map.get(new byte[] {1, 0})).isNull();
+    }
+  }
+
+  @Test
+  public void testIdentityKeepsEqualKeysApart() {
+    CompactHashMap<String, Integer> map = new CompactHashMap<>(HashingStrategy.IDENTITY);
+    String a = new String("key");
+    String b = new String("key");
+    map.put(a, 1);
+    map.put(b, 2);
+    assertThat(map).hasSize(2);
+    assertThat(map.get(a)).isEqualTo(1);
+    assertThat(map.get(b)).isEqualTo(2);
+    assertThat(map.get("key")).isNull();
+  }
+
+  @Test
+  public void testCaseInsensitiveHashAgreesWithEquals() {
+    String[] strings = {"", "a", "A", "hello", "HeLLo", "straße", "STRAßE", "İ", "i", "I",
+        "ı", "Ångström", "Ångström", "𐐀", "𐐨"};
+    HashingStrategy<String> strategy = HashingStrategy.CASE_INSENSITIVE;
+    for (String x : strings) {
+      for (String y : strings) {
+        if (x.equalsIgnoreCase(y)) {
+          assertThat(strategy.hash(x)).isEqualTo(strategy.hash(y));
+        }
+      }
+    }
+    CompactHashMap<String, Integer> map = new CompactHashMap<>(strategy);
+    map.put("Content-Type", 1);
+    assertThat(map.get("content-type")).isEqualTo(1);
+    assertThat(map.put("CONTENT-TYPE", 2)).isEqualTo(1);
+    assertThat(map).hasSize(1);
+  }
+
+  @Test
+  public void testFreezeAndSerializeKeepStrategy() throws Exception {
+    CompactHashMap<String, Integer> map = new CompactHashMap<>(HashingStrategy.CASE_INSENSITIVE);
+    for (int i = 0; i < 500; i++) {
+      map.put("Key" + i, i);
+    }
+    FrozenCompactHashMap<String, Integer> frozen = map.freeze();
+    assertThat(frozen.get("KEY42")).isEqualTo(42);
+    assertThat(frozen.containsKey("kEy499")).isTrue();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    map.writeTo(out, Codec.STRING, Codec.INTEGER, false);
+    CompactHashMap<String, Integer> read = CompactHashMap.readFrom(
+        new ByteArrayInputStream(out.toByteArray()), Codec.STRING, Codec.INTEGER,
+        HashingStrategy.CASE_INSENSITIVE);
+    assertThat(read.get("key7")).isEqualTo(7);
+    read.put("KEY7", -7);
+    assertThat(read).hasSize(500);
+  }
+
+  @Test
+  public void testReadFromChannelKeepsStrategy() throws Exception {
+    CompactHashMap<String, Integer> map = new CompactHashMap<>(HashingStrategy.CASE_INSENSITIVE);
+    for (int i = 0; i < 100; i++) {
+      map.put("Key" + i, i);
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    map.writeTo(out, Codec.STRING, Codec.INTEGER, true);
+    CompactHashMap<String, Integer> read = CompactHashMap.readFrom(
+        Channels.newChannel(new ByteArrayInputStream(out.toByteArray())), Codec.STRING,
+        Codec.INTEGER, HashingStrategy.CASE_INSENSITIVE);
+    assertThat(read.get("KEY42")).isEqualTo(42);
+    assertThat(read).hasSize(100);
+  }
+
+  @Test
+  public void testFrozenHashCodeFollowsMapContract() {
+    CompactHashMap<String, Integer> map = new CompactHashMap<>(HashingStrategy.CASE_INSENSITIVE);
+    HashMap<String, Integer> expected = new HashMap<>();
+    for (int i = 0; i < 500; i++) {
+      map.put("key" + i, i);
+      expected.put("key" + i, i);
+    }
+    FrozenCompactHashMap<String, Integer> frozen = map.freeze();
+    assertThat(frozen.hashCode()).isEqualTo(expected.hashCode());
+    assertThat(frozen.equals(expected)).isTrue();
+    assertThat(expected.equals(frozen)).isTrue();
+    assertThat(map.hashCode()).isEqualTo(expected.hashCode());
+  }
+
+  @Test
+  public void testHardenedWithStrategy() {
+    CompactHashMap<int[], Integer> map = new CompactHashMap<>(HashingStrategy.INT_ARRAY);
+    map.setHardened(true);
+    for (int i = 0; i < 1000; i++) {
+      map.put(new int[] {i, -i}, i);
+    }
+    for (int i = 0; i < 1000; i++) {
+      assertThat(map.get(new int[] {i, -i})).isEqualTo(i);
+    }
+    map.setHardened(false);
+    assertThat(map.get(new int[] {999, -999})).isEqualTo(999);
+  }
+}
@@ -0,0 +1,110 @@
+package com.zolstein.compacthashmap;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.zolstein.compacthashmap.CompactHashMap.IndexType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class CompactHashMapIncrementalResizeTest {
+
+  private static CompactHashMap<Integer, Integer> incrementalMap() {
+    CompactHashMap<Integer, Integer> map = new CompactHashMap<>();
+    map.setIncrementalResize(true);
+    return map;
+  }
+
+  @Test
+  public void testPutKeepsOldIndexUntilDrained() {
+    CompactHashMap<Integer, Integer> map = incrementalMap();
+    for (int i = 0; i < 1365; i++) {
+      map.put(i, i);
+    }
+    CompactIndex index = map.indexMap;
+    assertThat(index.size()).isEqualTo(2048);
+    map.put(1365, 1365);
+    assertThat(map.indexMap.size()).isEqualTo(4096);
+    assertThat(map.indexMap == index).isFalse();
+    for (int i = 0; i <= 1365; i++) {
+      assertThat(map.get(i)).isEqualTo(i);
+    }
+    assertThat(map.get(-1)).isNull();
+    for (int i = 1366; i < 1366 + 2048 / 8; i++) {
+      map.put(i, i);
+    }
+    for (int i = 0; i < 1366 + 2048 / 8; i++) {
+      assertThat(map.indexMap.lookupForIndex(i, Integer.hashCode(i))).isAtLeast(0);
+    }
+  }
+
+  @Test
+  public void testMatchesHashMap() {
+    for (IndexType indexType : IndexType.values()) {
+      for (boolean ordered : new boolean[] {false, true}) {
+        CompactHashMap<Integer, Integer> map = new CompactHashMap<>(0, ordered);
+        map.setIncrementalResize(true);
+        map.setIndexType(indexType);
+        map.setLowWaterMark(0);
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(21);
+        for (int i = 0; i < 200000; i++) {
+          Integer key = random.nextInt(i / 4 + 1);
+          switch (random.nextInt(4)) {
+            case 0:
+              assertThat(map.remove(key)).isEqualTo(expected.remove(key));
+              break;
+            case 1:
+              assertThat(map.get(key)).isEqualTo(expected.get(key));
+              break;
+            default:
+              assertThat(map.put(key, i)).isEqualTo(expected.put(key, i));
+          }
+        }
+        assertThat(map).isEqualTo(expected);
+      }
+    }
+  }
+
+  @Test
+  public void testIteratorRemoveDuringMigration() {
+    CompactHashMap<Integer, Integer> map = incrementalMap();
+    for (int i = 0; i < 1367; i++) {
+      map.put(i, i);
+    }
+    map.entrySet().removeIf(e -> e.getKey() % 2 == 0);
+    assertThat(map).hasSize(683);
+    for (int i = 0; i < 1367; i++) {
+      assertThat(map.containsKey(i)).isEqualTo(i % 2 == 1);
+    }
+  }
+
+  @Test
+  public void testCopyAndSerializeDuringMigration() throws Exception {
+    CompactHashMap<Integer, Integer> map = incrementalMap();
+    for (int i = 0; i < 1367; i++) {
+      map.put(i, i);
+    }
+    CompactHashMap<Integer, Integer> copy = map.copy();
+    copy.remove(5);
+    assertThat(map.get(5)).isEqualTo(5);
+    assertThat(copy.get(5)).isNull();
+    assertThat(map.stats().isResizing()).isTrue();
+    CompactIndex oldIndex = map.indexMap;
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    map.writeTo(out, Codec.INTEGER, Codec.INTEGER, true);
+    // Writing must not advance the map's own migration
+    assertThat(map.stats().isResizing()).isTrue();
+    assertThat(map.indexMap).isSameInstanceAs(oldIndex);
+    CompactHashMap<Integer, Integer> read =
+        CompactHashMap.readFrom(new ByteArrayInputStream(out.toByteArray()), Codec.INTEGER, Codec.INTEGER);
+    assertThat(read).isEqualTo(map);
+    map.setIncrementalResize(false);
+    for (int i = 0; i < 1367; i++) {
+      assertThat(map.indexMap.lookupForIndex(i, Integer.hashCode(i))).isAtLeast(0);
+    }
+  }
+}
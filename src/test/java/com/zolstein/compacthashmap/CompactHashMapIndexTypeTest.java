@@ -0,0 +1,144 @@
+package com.zolstein.compacthashmap;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.zolstein.compacthashmap.CompactHashMap.IndexType;
+import com.zolstein.compacthashmap.CompactIndex.KeySize;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class CompactHashMapIndexTypeTest {
+
+  private static <K, V> CompactHashMap<K, V> newMap(IndexType indexType) {
+    CompactHashMap<K, V> map = new CompactHashMap<>();
+    map.setIndexType(indexType);
+    return map;
+  }
+
+  // Equal hash codes for every 16 consecutive values
+  private static final class Colliding {
+    final int value;
+
+    Colliding(int value) {
+      this.value = value;
+    }
+
+    @Override
+    public int hashCode() {
+      return value >>> 4;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Colliding && ((Colliding) o).value == value;
+    }
+  }
+
+  @Test
+  public void testMatchesHashMap() {
+    for (IndexType indexType : IndexType.values()) {
+      CompactHashMap<Integer, Integer> map = newMap(indexType);
+      Map<Integer, Integer> expected = new HashMap<>();
+      Random random = new Random(19);
+      for (int i = 0; i < 200000; i++) {
+        Integer key = random.nextInt(5000);
+        switch (random.nextInt(3)) {
+          case 0:
+            assertThat(map.remove(key)).isEqualTo(expected.remove(key));
+            break;
+          case 1:
+            assertThat(map.get(key)).isEqualTo(expected.get(key));
+            break;
+          default:
+            assertThat(map.put(key, i)).isEqualTo(expected.put(key, i));
+        }
+      }
+      assertThat(map).isEqualTo(expected);
+      assertThat(map.getIndexType()).isEqualTo(indexType);
+    }
+  }
+
+  @Test
+  public void testCollidingHashes() {
+    for (IndexType indexType : IndexType.values()) {
+      CompactHashMap<Colliding, Integer> map = newMap(indexType);
+      for (int i = 0; i < 1000; i++) {
+        map.put(new Colliding(i), i);
+      }
+      for (int i = 0; i < 1000; i += 2) {
+        assertThat(map.remove(new Colliding(i))).isEqualTo(i);
+      }
+      for (int i = 0; i < 1000; i++) {
+        assertThat(map.get(new Colliding(i))).isEqualTo(i % 2 == 0 ? null : i);
+      }
+      assertThat(map.get(new Colliding(1001))).isNull();
+      assertThat(map).hasSize(500);
+    }
+  }
+
+  @Test
+  public void testSwitchingRebuildsIndex() {
+    CompactHashMap<Integer, Integer> map = new CompactHashMap<>(0, true);
+    for (int i = 0; i < 100; i++) {
+      map.put(i, i);
+    }
+    map.remove(50);
+    map.setIndexType(IndexType.SWISS);
+    assertThat(map.indexMap).isInstanceOf(CompactIndex.SwissIndex.class);
+    for (int i = 0; i < 100; i++) {
+      assertThat(map.get(i)).isEqualTo(i == 50 ? null : i);
+    }
+    map.remove(10);
+    map.setIndexType(IndexType.FINGERPRINT);
+    assertThat(map.indexMap).isInstanceOf(CompactIndex.ShortFingerprintIndex.class);
+    map.remove(20);
+    map.setIndexType(IndexType.PERTURBATION);
+    assertThat(map.indexMap).isInstanceOf(CompactIndex.ShortIndex.class);
+    assertThat(map.keySet().iterator().next()).isEqualTo(0);
+    assertThat(map.get(10)).isNull();
+    assertThat(map.get(20)).isNull();
+    assertThat(map.get(99)).isEqualTo(99);
+  }
+
+  @Test
+  public void testFingerprintWidensIndex() {
+    CompactHashMap<Integer, Integer> map = newMap(IndexType.FINGERPRINT);
+    assertThat(map.indexMap.keySize()).isEqualTo(KeySize.SHORT);
+    for (int i = 0; i < 1365; i++) {
+      map.put(i, i);
+    }
+    assertThat(map.indexMap.size()).isEqualTo(2048);
+    assertThat(map.indexMap.keySize()).isEqualTo(KeySize.SHORT);
+    map.put(1365, 1365);
+    assertThat(map.indexMap.keySize()).isEqualTo(KeySize.INT);
+    for (int i = 0; i <= 1365; i++) {
+      assertThat(map.get(i)).isEqualTo(i);
+    }
+  }
+
+  @Test
+  public void testSerialization() throws Exception {
+    for (IndexType indexType : IndexType.values()) {
+      CompactHashMap<Long, String> map = newMap(indexType);
+      for (long i = 0; i < 1000; i++) {
+        map.put(i * 31, Long.toString(i));
+      }
+      map.remove(31L);
+      for (boolean includeIndex : new boolean[] {false, true}) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        map.writeTo(out, Codec.LONG, Codec.STRING, includeIndex);
+        CompactHashMap<Long, String> read =
+            CompactHashMap.readFrom(new ByteArrayInputStream(out.toByteArray()), Codec.LONG, Codec.STRING);
+        assertThat(read.getIndexType()).isEqualTo(indexType);
+        assertThat(read).isEqualTo(map);
+        assertThat(read.get(62L)).isEqualTo("2");
+        read.put(31L, "1");
+        assertThat(read.get(31L)).isEqualTo("1");
+      }
+    }
+  }
+}
@@ -0,0 +1,218 @@
+package com.zolstein.compacthashmap;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+public class CompactHashMapInsertionOrderTest {
+
+  private static CompactHashMap<Integer, Integer> orderedMap(int n) {
+    CompactHashMap<Integer, Integer> map = new CompactHashMap<>(0, true);
+    for (int i = 0; i < n; i++) {
+      map.put(i, i);
+    }
+    return map;
+  }
+
+  @Test
+  public void testRemovalKeepsOrder() {
+    CompactHashMap<Integer, Integer> map = orderedMap(10);
+    assertThat(map.isInsertionOrdered()).isTrue();
+    map.remove(0);
+    map.remove(4);
+    map.remove(5);
+    map.put(4, 40);
+    assertThat(map.keySet()).containsExactly(1, 2, 3, 6, 7, 8, 9, 4).inOrder();
+    assertThat(map.values()).containsExactly(1, 2, 3, 6, 7, 8, 9, 40).inOrder();
+    assertThat(map).hasSize(8);
+    assertThat(map.containsKey(5)).isFalse();
+    assertThat(map.containsValue(null)).isFalse();
+    assertThat(map.hashCode()).isEqualTo(new LinkedHashMap<>(map).hashCode());
+  }
+
+  @Test
+  public void testMatchesLinkedHashMap() {
+    CompactHashMap<Integer, Integer> map = new CompactHashMap<>(0, true);
+    LinkedHashMap<Integer, Integer> expected = new LinkedHashMap<>();
+    Random random = new Random(17);
+    for (int i = 0; i < 100000; i++) {
+      Integer key = random.nextInt(2000);
+      if (random.nextInt(3) == 0) {
+        assertThat(map.remove(key)).isEqualTo(expected.remove(key));
+      } else {
+        assertThat(map.put(key, i)).isEqualTo(expected.put(key, i));
+      }
+    }
+    assertThat(map.entrySet()).containsExactlyElementsIn(expected.entrySet()).inOrder();
+    assertThat(map).isEqualTo(expected);
+  }
+
+  @Test
+  public void testCompactsOnceHolesDominate() {
+    CompactHashMap<Integer, Integer> map = orderedMap(1000);
+    map.setLowWaterMark(0);
+    for (int i = 0; i < 500; i++) {
+      map.remove(2 * i);
+    }
+    assertThat(map.denseSize()).isGreaterThan(map.size());
+    map.remove(1);
+    assertThat(map.denseSize()).isEqualTo(map.size());
+    assertThat(map.hashes.length).isEqualTo(1024);
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 3; i < 1000; i += 2) {
+      expected.add(i);
+    }
+    assertThat(map.keySet()).containsExactlyElementsIn(expected).inOrder();
+    for (int key : expected) {
+      assertThat(map.get(key)).isEqualTo(key);
+    }
+  }
+
+  @Test
+  public void testRemovingTailDropsHoles() {
+    CompactHashMap<Integer, Integer> map = orderedMap(10);
+    map.remove(8);
+    map.remove(7);
+    assertThat(map.denseSize()).isEqualTo(10);
+    map.remove(9);
+    assertThat(map.denseSize()).isEqualTo(7);
+    assertThat(map.size()).isEqualTo(7);
+  }
+
+  @Test
+  public void testIteratorRemove() {
+    CompactHashMap<Integer, Integer> map = orderedMap(1000);
+    Iterator<Integer> it = map.keySet().iterator();
+    while (it.hasNext()) {
+      if (it.next() % 3 != 0) {
+        it.remove();
+      }
+    }
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 1000; i += 3) {
+      expected.add(i);
+    }
+    assertThat(map.keySet()).containsExactlyElementsIn(expected).inOrder();
+    assertThat(map.size()).isEqualTo(expected.size());
+  }
+
+  @Test
+  public void testGrowAfterIteratorRemovals() {
+    for (CompactHashMap.IndexType indexType : CompactHashMap.IndexType.values()) {
+      for (int n : new int[] {10, 143, 1000}) {
+        CompactHashMap<Integer, Integer> map = new CompactHashMap<>(0, true);
+        map.setIndexType(indexType);
+        Map<Integer, Integer> expected = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++) {
+          map.put(i, i);
+          expected.put(i, i);
+        }
+        map.keySet().removeIf(k -> k < n - 3);
+        expected.keySet().removeIf(k -> k < n - 3);
+        for (int i = n; i < n + 2 * n; i++) {
+          map.put(i, i);
+          expected.put(i, i);
+        }
+        assertThat(map.stats().holes()).isEqualTo(0);
+        assertThat(map.keySet()).containsExactlyElementsIn(expected.keySet()).inOrder();
+        for (Map.Entry<Integer, Integer> e : expected.entrySet()) {
+          assertThat(map.containsKey(e.getKey())).isTrue();
+          assertThat(map.get(e.getKey())).isEqualTo(e.getValue());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testCursorRemove() {
+    CompactHashMap<Integer, Integer> map = orderedMap(100);
+    MapCursor<Integer, Integer> cursor = map.cursor();
+    while (cursor.advance()) {
+      if (cursor.key() % 2 == 0) {
+        cursor.remove();
+      } else {
+        cursor.setValue(-cursor.value());
+      }
+    }
+    List<Integer> keys = new ArrayList<>();
+    map.forEach((k, v) -> {
+      assertThat(v).isEqualTo(-k);
+      keys.add(k);
+    });
+    assertThat(keys).hasSize(50);
+    assertThat(keys).isInOrder();
+  }
+
+  @Test
+  public void testSpliteratorWithHoles() {
+    CompactHashMap<Integer, Integer> map = orderedMap(1000);
+    for (int i = 0; i < 1000; i += 4) {
+      map.remove(i);
+    }
+    Spliterator<Integer> spliterator = map.keySet().spliterator();
+    assertThat(spliterator.hasCharacteristics(Spliterator.SIZED)).isFalse();
+    assertThat(spliterator.hasCharacteristics(Spliterator.ORDERED)).isTrue();
+    List<Integer> parallel = map.keySet().parallelStream().collect(Collectors.toList());
+    assertThat(parallel).containsExactlyElementsIn(map.keySet()).inOrder();
+    assertThat(map.entrySet().stream().count()).isEqualTo(750);
+    map.replaceAll((k, v) -> v + 1);
+    assertThat(map.values().stream().mapToInt(Integer::intValue).sum()).isEqualTo(375000 + 750);
+  }
+
+  @Test
+  public void testInsertCompactsInsteadOfGrowing() {
+    CompactHashMap<Integer, Integer> map = orderedMap(64);
+    map.setLowWaterMark(0);
+    for (int i = 0; i < 16; i++) {
+      map.remove(i);
+    }
+    for (int i = 64; i < 80; i++) {
+      map.put(i, i);
+    }
+    assertThat(map.hashes.length).isEqualTo(64);
+    assertThat(map.keySet().iterator().next()).isEqualTo(16);
+    assertThat(map.get(79)).isEqualTo(79);
+  }
+
+  @Test
+  public void testCopiesDropHoles() throws Exception {
+    CompactHashMap<Integer, Integer> map = orderedMap(100);
+    for (int i = 0; i < 100; i += 3) {
+      map.remove(i);
+    }
+    FrozenCompactHashMap<Integer, Integer> frozen = map.freeze();
+    assertThat(frozen.keySet()).containsExactlyElementsIn(map.keySet()).inOrder();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    map.writeTo(out, Codec.INTEGER, Codec.INTEGER, true);
+    CompactHashMap<Integer, Integer> read =
+        CompactHashMap.readFrom(new ByteArrayInputStream(out.toByteArray()), Codec.INTEGER, Codec.INTEGER);
+    assertThat(read.isInsertionOrdered()).isTrue();
+    assertThat(read.entrySet()).containsExactlyElementsIn(map.entrySet()).inOrder();
+    map.trimToSize();
+    assertThat(map.hashes.length).isEqualTo(66);
+    assertThat(map.keySet()).containsExactlyElementsIn(read.keySet()).inOrder();
+  }
+
+  @Test
+  public void testDefaultModeStillSwaps() {
+    CompactHashMap<Integer, Integer> map = new CompactHashMap<>();
+    for (int i = 0; i < 4; i++) {
+      map.put(i, i);
+    }
+    map.remove(0);
+    assertThat(map.isInsertionOrdered()).isFalse();
+    assertThat(map.keySet()).containsExactly(3, 1, 2).inOrder();
+    Map<Integer, Integer> copy = map.copy();
+    assertThat(copy).isEqualTo(map);
+  }
+}
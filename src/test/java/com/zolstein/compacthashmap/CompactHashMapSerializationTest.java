@@ -0,0 +1,150 @@
+package com.zolstein.compacthashmap;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class CompactHashMapSerializationTest {
+
+  @Test
+  public void testRoundTripWithoutIndex() throws IOException {
+    checkRoundTrip(buildMap(1000), false);
+  }
+
+  @Test
+  public void testRoundTripWithIndex() throws IOException {
+    // Sizes on both sides of the byte and short slot limits
+    for (int size : new int[] {0, 1, 100, 1000, 40000}) {
+      checkRoundTrip(buildMap(size), true);
+    }
+  }
+
+  @Test
+  public void testRoundTripKeepsRemovals() throws IOException {
+    CompactHashMap<String, Long> map = buildMap(500);
+    for (long i = 0; i < 500; i += 3) {
+      map.remove(Long.toString(i));
+    }
+    CompactHashMap<String, Long> copy = checkRoundTrip(map, true);
+    copy.put("new", -1L);
+    assertThat(copy.get("new")).isEqualTo(-1L);
+    assertThat(copy.remove("1")).isEqualTo(1L);
+  }
+
+  @Test
+  public void testChannels() throws IOException {
+    CompactHashMap<String, Long> map = buildMap(100);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    map.writeTo(Channels.newChannel(bytes), Codec.STRING, Codec.LONG, true);
+    CompactHashMap<String, Long> copy = CompactHashMap.readFrom(
+        Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())), Codec.STRING, Codec.LONG);
+    assertThat(copy).isEqualTo(map);
+  }
+
+  @Test
+  public void testLoadDoesNotCallHashCode() throws IOException {
+    CompactHashMap<CountingKey, Integer> map = new CompactHashMap<>();
+    for (int i = 0; i < 100; i++) {
+      map.put(new CountingKey(i), i);
+    }
+    Codec<CountingKey> keyCodec = new Codec<CountingKey>() {
+      @Override
+      public void write(CountingKey value, DataOutput out) throws IOException {
+        out.writeInt(value.i);
+      }
+
+      @Override
+      public CountingKey read(DataInput in) throws IOException {
+        return new CountingKey(in.readInt());
+      }
+    };
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    map.writeTo(bytes, keyCodec, Codec.INTEGER, false);
+    CountingKey.hashCodeCalls = 0;
+    CompactHashMap<CountingKey, Integer> copy =
+        CompactHashMap.readFrom(new ByteArrayInputStream(bytes.toByteArray()), keyCodec, Codec.INTEGER);
+    assertThat(CountingKey.hashCodeCalls).isEqualTo(0);
+    assertThat(copy.get(new CountingKey(42))).isEqualTo(42);
+  }
+
+  @Test
+  public void testRejectsOtherData() {
+    byte[] garbage = new byte[16];
+    assertThrows(IOException.class,
+        () -> CompactHashMap.readFrom(new ByteArrayInputStream(garbage), Codec.STRING, Codec.LONG));
+  }
+
+  @Test
+  public void testRejectsCorruptIndex() throws IOException {
+    CompactHashMap<String, Long> map = buildMap(10);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    map.writeTo(bytes, Codec.STRING, Codec.LONG, true);
+    byte[] data = bytes.toByteArray();
+    // Header, hashes, filled count and index header precede the byte slots
+    int slots = 4 + 1 + 1 + 4 + 4 * 10 + 4 + 1 + 4;
+    int i = slots;
+    while (data[i] < 0) {
+      i++;
+    }
+    data[i] = 10;
+    IOException e = assertThrows(IOException.class,
+        () -> CompactHashMap.readFrom(new ByteArrayInputStream(data), Codec.STRING, Codec.LONG));
+    assertThat(e).hasMessageThat().contains("index slot " + (i - slots));
+  }
+
+  private static CompactHashMap<String, Long> buildMap(int size) {
+    CompactHashMap<String, Long> map = new CompactHashMap<>();
+    for (long i = 0; i < size; i++) {
+      map.put(Long.toString(i), i);
+    }
+    return map;
+  }
+
+  private static CompactHashMap<String, Long> checkRoundTrip(CompactHashMap<String, Long> map, boolean includeIndex)
+      throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    map.writeTo(bytes, Codec.STRING, Codec.LONG, includeIndex);
+    bytes.write(7); // Trailing data must be left unread
+    ByteArrayInputStream in = new ByteArrayInputStream(bytes.toByteArray());
+    CompactHashMap<String, Long> copy = CompactHashMap.readFrom(in, Codec.STRING, Codec.LONG);
+    assertThat(in.read()).isEqualTo(7);
+    assertThat(copy).isEqualTo(map);
+    assertThat(new ArrayList<>(copy.keySet())).isEqualTo(new ArrayList<>(map.keySet()));
+    List<String> keys = new ArrayList<>(map.keySet());
+    for (String key : keys) {
+      assertThat(copy.get(key)).isEqualTo(map.get(key));
+    }
+    return copy;
+  }
+
+  private static class CountingKey {
+
+    private static int hashCodeCalls;
+
+    private final int i;
+
+    private CountingKey(int i) {
+      this.i = i;
+    }
+
+    @Override
+    public int hashCode() {
+      hashCodeCalls++;
+      return i * 31;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof CountingKey && ((CountingKey) o).i == i;
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package com.zolstein.compacthashmap;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+public class CompactHashMapSpliteratorTest {
+
+  private static CompactHashMap<Integer, Integer> buildMap(int size) {
+    CompactHashMap<Integer, Integer> map = new CompactHashMap<>();
+    for (int i = 0; i < size; i++) {
+      map.put(i, i * 2);
+    }
+    return map;
+  }
+
+  @Test
+  public void testCharacteristics() {
+    CompactHashMap<Integer, Integer> map = buildMap(10);
+    int sized = Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED;
+    int distinct = sized | Spliterator.DISTINCT | Spliterator.NONNULL;
+    assertThat(map.keySet().spliterator().characteristics()).isEqualTo(distinct);
+    assertThat(map.entrySet().spliterator().characteristics()).isEqualTo(distinct);
+    assertThat(map.values().spliterator().characteristics()).isEqualTo(sized);
+    assertThat(map.values().spliterator().getExactSizeIfKnown()).isEqualTo(10);
+  }
+
+  @Test
+  public void testSplitsExactly() {
+    Spliterator<Integer> right = buildMap(101).keySet().spliterator();
+    Spliterator<Integer> left = right.trySplit();
+    assertThat(left.estimateSize()).isEqualTo(50);
+    assertThat(right.estimateSize()).isEqualTo(51);
+    List<Integer> keys = new ArrayList<>();
+    left.forEachRemaining(keys::add);
+    while (right.tryAdvance(keys::add)) {
+      // Drain one element at a time
+    }
+    assertThat(keys).hasSize(101);
+    for (int i = 0; i < 101; i++) {
+      assertThat(keys.get(i)).isEqualTo(i);
+    }
+    Spliterator<Integer> single = buildMap(1).keySet().spliterator();
+    assertThat(single.trySplit()).isNull();
+  }
+
+  @Test
+  public void testParallelStreams() {
+    CompactHashMap<Integer, Integer> map = buildMap(100000);
+    long expectedKeys = 100000L * 99999 / 2;
+    assertThat(map.keySet().parallelStream().mapToLong(Integer::longValue).sum()).isEqualTo(expectedKeys);
+    assertThat(map.values().parallelStream().mapToLong(Integer::longValue).sum()).isEqualTo(2 * expectedKeys);
+    assertThat(map.entrySet().parallelStream().filter(e -> e.getValue() == 2 * e.getKey()).count())
+        .isEqualTo(100000);
+    List<Integer> ordered = map.keySet().parallelStream().collect(Collectors.toList());
+    assertThat(ordered).containsExactlyElementsIn(map.keySet()).inOrder();
+    // Entries may be kept by the pipeline, so each must stay distinct
+    List<Map.Entry<Integer, Integer>> entries =
+        map.entrySet().parallelStream().collect(Collectors.toList());
+    for (int i = 0; i < entries.size(); i++) {
+      assertThat(entries.get(i).getKey()).isEqualTo(i);
+    }
+  }
+
+  @Test
+  public void testForEachAndReplaceAll() {
+    CompactHashMap<Integer, Integer> map = buildMap(100);
+    List<Integer> keys = new ArrayList<>();
+    map.forEach((k, v) -> keys.add(k));
+    assertThat(keys).containsExactlyElementsIn(map.keySet()).inOrder();
+    map.replaceAll((k, v) -> v + k);
+    for (Map.Entry<Integer, Integer> e : map.entrySet()) {
+      assertThat(e.getValue()).isEqualTo(3 * e.getKey());
+    }
+    assertThrows(ConcurrentModificationException.class, () -> map.forEach((k, v) -> map.remove(0)));
+  }
+
+  @Test
+  public void testParallelForEach() {
+    CompactHashMap<Integer, Integer> map = buildMap(100000);
+    AtomicLong sum = new AtomicLong();
+    map.parallelForEach((k, v) -> sum.addAndGet(v - k));
+    assertThat(sum.get()).isEqualTo(100000L * 99999 / 2);
+  }
+
+  @Test
+  public void testModificationDuringTraversal() {
+    CompactHashMap<Integer, Integer> map = buildMap(10);
+    assertThrows(ConcurrentModificationException.class,
+        () -> map.keySet().spliterator().forEachRemaining(k -> map.put(-k - 1, 0)));
+  }
+}
@@ -0,0 +1,111 @@
+package com.zolstein.compacthashmap;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.zolstein.compacthashmap.CompactHashMap.IndexType;
+import org.junit.jupiter.api.Test;
+
+public class CompactHashMapStatsTest {
+
+  @Test
+  public void testLayoutSnapshot() {
+    CompactHashMap<Integer, Integer> map = new CompactHashMap<>();
+    for (int i = 0; i < 100; i++) {
+      map.put(i, i);
+    }
+    CompactMapStats stats = map.stats();
+    assertThat(stats.size()).isEqualTo(100);
+    assertThat(stats.denseSize()).isEqualTo(100);
+    assertThat(stats.indexType()).isEqualTo(IndexType.PERTURBATION);
+    assertThat(stats.indexSize()).isEqualTo(256);
+    assertThat(stats.slotBytes()).isEqualTo(2);
+    assertThat(stats.filled()).isEqualTo(100);
+    assertThat(stats.tombstones()).isEqualTo(0);
+    assertThat(stats.averageProbeLength()).isAtLeast(1.0);
+    assertThat(stats.maxProbeLength()).isAtLeast(1);
+    assertThat(stats.retainedBytes()).isEqualTo(12L * stats.capacity() + 2 * 256);
+    assertThat(stats.countersEnabled()).isFalse();
+    assertThat(stats.lookups()).isEqualTo(0);
+
+    for (int i = 0; i < 10; i++) {
+      map.remove(i);
+    }
+    stats = map.stats();
+    assertThat(stats.size()).isEqualTo(90);
+    assertThat(stats.filled()).isEqualTo(100);
+    assertThat(stats.tombstones()).isEqualTo(10);
+    assertThat(stats.loadFactor()).isWithin(1e-9).of(100.0 / 256);
+  }
+
+  @Test
+  public void testSwissSlotBytes() {
+    CompactHashMap<Integer, Integer> map = new CompactHashMap<>();
+    map.setIndexType(IndexType.SWISS);
+    for (int i = 0; i < 1000; i++) {
+      map.put(i, i);
+    }
+    CompactMapStats stats = map.stats();
+    assertThat(stats.indexType()).isEqualTo(IndexType.SWISS);
+    assertThat(stats.slotBytes()).isEqualTo(3);
+    assertThat(stats.retainedBytes()).isEqualTo(12L * stats.capacity() + 3 * stats.indexSize());
+  }
+
+  @Test
+  public void testCounters() {
+    CompactHashMap<Integer, Integer> map = new CompactHashMap<>();
+    map.setStatsEnabled(true);
+    for (int i = 0; i < 1000; i++) {
+      map.put(i, i);
+    }
+    CompactMapStats stats = map.stats();
+    assertThat(stats.countersEnabled()).isTrue();
+    assertThat(stats.lookups()).isEqualTo(1000);
+    assertThat(stats.probeSteps()).isAtLeast(1000);
+    // 8 slots up to 2048
+    assertThat(stats.indexResizes()).isEqualTo(8);
+    // Byte slots to short slots at 128
+    assertThat(stats.widthUpgrades()).isEqualTo(1);
+
+    for (int i = 1000; i < 100000; i++) {
+      map.put(i, i);
+      map.remove(i - 1000);
+    }
+    stats = map.stats();
+    assertThat(stats.lookups()).isEqualTo(1000 + 2 * 99000);
+    assertThat(stats.tombstonePurges()).isGreaterThan(0);
+    assertThat(stats.indexResizes()).isEqualTo(8);
+
+    map.setStatsEnabled(false);
+    assertThat(map.stats().countersEnabled()).isFalse();
+    map.setStatsEnabled(true);
+    assertThat(map.stats().lookups()).isEqualTo(0);
+  }
+
+  @Test
+  public void testReportsUnreachableEntries() {
+    CompactHashMap<Integer, Integer> map = new CompactHashMap<>();
+    map.setIncrementalResize(true);
+    for (int i = 0; i < 100; i++) {
+      map.put(i, i);
+    }
+    assertThat(map.stats().unreachable()).isEqualTo(0);
+    // A stored hash no longer matching the slot that holds the entry
+    map.hashes[5] = 12345;
+    CompactMapStats stats = map.stats();
+    assertThat(stats.unreachable()).isEqualTo(1);
+    assertThat(stats.toString()).contains("unreachable=1");
+  }
+
+  @Test
+  public void testIncrementalResizeAndTree() {
+    CompactHashMap<String, Integer> map = new CompactHashMap<>();
+    map.setIncrementalResize(true);
+    map.setHardened(true);
+    for (int i = 0; i < 1366; i++) {
+      map.put("key" + i, i);
+    }
+    assertThat(map.stats().isResizing()).isTrue();
+    assertThat(map.stats().treeSize()).isEqualTo(0);
+    assertThat(map.stats().maxProbeLength()).isAtLeast(1);
+  }
+}
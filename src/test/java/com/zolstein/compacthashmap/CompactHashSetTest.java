@@ -0,0 +1,166 @@
+package com.zolstein.compacthashmap;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+public class CompactHashSetTest {
+
+  @Test
+  public void testEmptySet() {
+    Set<String> set = new CompactHashSet<>();
+    assertThat(set).isEmpty();
+    assertThat(set).hasSize(0);
+    assertThat(set.contains("foo")).isFalse();
+    assertThat(set.remove("foo")).isFalse();
+    assertThat(set.iterator().hasNext()).isFalse();
+    assertThrows(NoSuchElementException.class, () -> set.iterator().next());
+  }
+
+  @Test
+  public void testAddRemove() {
+    Set<String> set = new CompactHashSet<>();
+    assertThat(set.add("a")).isTrue();
+    assertThat(set.add("a")).isFalse();
+    assertThat(set.add("b")).isTrue();
+    assertThat(set).containsExactly("a", "b").inOrder();
+    assertThat(set.remove("a")).isTrue();
+    assertThat(set.remove("a")).isFalse();
+    assertThat(set).containsExactly("b");
+  }
+
+  @Test
+  public void testIteratorRemove() {
+    Set<Integer> set = new CompactHashSet<>();
+    for (int i = 0; i < 10; i++) {
+      set.add(i);
+    }
+    Iterator<Integer> iterator = set.iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next() % 2 == 0) {
+        iterator.remove();
+      }
+    }
+    assertThat(set).containsExactly(1, 3, 5, 7, 9);
+
+    iterator = set.iterator();
+    assertThrows(IllegalStateException.class, iterator::remove);
+    Integer first = iterator.next();
+    iterator.remove();
+    assertThrows(IllegalStateException.class, iterator::remove);
+    assertThat(set).hasSize(4);
+    assertThat(set).doesNotContain(first);
+
+    iterator = set.iterator();
+    set.add(100);
+    assertThrows(ConcurrentModificationException.class, iterator::next);
+  }
+
+  @Test
+  public void testBulkOperationsPreserveOrder() {
+    CompactHashSet<Integer> set = new CompactHashSet<>();
+    for (int i = 0; i < 1000; i++) {
+      set.add(i);
+    }
+    CompactHashSet<Integer> evens = new CompactHashSet<>();
+    for (int i = 0; i < 2000; i += 2) {
+      evens.add(i);
+    }
+    assertThat(set.retainAll(evens)).isTrue();
+    assertThat(set.retainAll(evens)).isFalse();
+    assertThat(set).hasSize(500);
+    Iterator<Integer> iterator = set.iterator();
+    for (int i = 0; i < 1000; i += 2) {
+      assertThat(iterator.next()).isEqualTo(i);
+    }
+
+    assertThat(set.removeAll(Arrays.asList(0, 2, 4, 5))).isTrue();
+    assertThat(set).hasSize(497);
+    assertThat(set.contains(4)).isFalse();
+    assertThat(set.contains(6)).isTrue();
+
+    assertThat(set.addAll(evens)).isTrue();
+    assertThat(set).hasSize(1000);
+    assertThat(set.containsAll(evens)).isTrue();
+    assertThat(set.removeAll(evens)).isTrue();
+    assertThat(set).isEmpty();
+  }
+
+  @Test
+  public void testEquals() {
+    Set<Integer> set = new CompactHashSet<>();
+    Set<Integer> other = new HashSet<>();
+    for (int i = 0; i < 100; i++) {
+      set.add(i);
+      other.add(i);
+    }
+    assertThat(set.hashCode()).isEqualTo(other.hashCode());
+    assertThat(set).isEqualTo(other);
+    assertThat(other).isEqualTo(set);
+    other.add(100);
+    assertThat(set).isNotEqualTo(other);
+    assertThat(set.toArray(new Integer[0])).hasLength(100);
+  }
+
+  @Test
+  public void testNullQueries() {
+    CompactHashSet<Integer> set = new CompactHashSet<>();
+    Set<Integer> withNull = new HashSet<>();
+    for (int i = 0; i < 10; i++) {
+      set.add(i);
+      withNull.add(i);
+    }
+    withNull.remove(9);
+    withNull.add(null);
+    assertThat(set.contains(null)).isFalse();
+    assertThat(set.remove(null)).isFalse();
+    assertThat(set.equals(withNull)).isFalse();
+    assertThat(withNull.equals(set)).isFalse();
+    assertThat(set.containsAll(withNull)).isFalse();
+    assertThat(set.containsAll(Arrays.asList(1, 2, null))).isFalse();
+
+    assertThat(set.removeAll(Arrays.asList(null, 0))).isTrue();
+    assertThat(set).doesNotContain(0);
+    assertThat(set.retainAll(Arrays.asList(null, 1, 2, 3, 4, 5, 6, 7, 8, 9))).isFalse();
+    assertThat(set.retainAll(withNull)).isTrue();
+    assertThat(set).containsExactly(1, 2, 3, 4, 5, 6, 7, 8);
+    assertThat(set.removeAll(withNull)).isTrue();
+    assertThat(set).isEmpty();
+  }
+
+  @Test
+  public void pseudoRandomTest() {
+    Random random = new Random(0x8765432101234567L);
+    Set<String> set = new CompactHashSet<>();
+    Set<String> expected = new HashSet<>();
+    for (int i = 0; i < 200000; i++) {
+      String key = Integer.toString(random.nextInt(20000));
+      switch (random.nextInt(4)) {
+        case 0:
+          assertThat(set.remove(key)).isEqualTo(expected.remove(key));
+          break;
+        case 1:
+          List<String> batch = Arrays.asList(key, key + "0", key + "1");
+          if (random.nextBoolean()) {
+            assertThat(set.removeAll(batch)).isEqualTo(expected.removeAll(batch));
+          } else {
+            assertThat(set.addAll(batch)).isEqualTo(expected.addAll(batch));
+          }
+          break;
+        default:
+          assertThat(set.add(key)).isEqualTo(expected.add(key));
+      }
+      assertThat(set.size()).isEqualTo(expected.size());
+    }
+    assertThat(set).isEqualTo(expected);
+  }
+}
@@ -0,0 +1,109 @@
+package com.zolstein.compacthashmap;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class CompactLruCacheTest {
+
+  private static <K, V> List<K> keysInOrder(CompactLruCache<K, V> cache) {
+    List<K> keys = new ArrayList<>();
+    cache.forEach((k, v) -> keys.add(k));
+    return keys;
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() {
+    List<String> evicted = new ArrayList<>();
+    CompactLruCache<String, Integer> cache = new CompactLruCache<>(3, (k, v) -> evicted.add(k + "=" + v));
+    cache.put("a", 1);
+    cache.put("b", 2);
+    cache.put("c", 3);
+    assertThat(cache.get("a")).isEqualTo(1);
+    cache.put("d", 4);
+    assertThat(evicted).containsExactly("b=2");
+    assertThat(keysInOrder(cache)).containsExactly("c", "a", "d").inOrder();
+    assertThat(cache.peek("c")).isEqualTo(3);
+    assertThat(cache.eldestKey()).isEqualTo("c");
+    cache.put("c", 30);
+    cache.put("e", 5);
+    assertThat(evicted).containsExactly("b=2", "a=1").inOrder();
+    assertThat(cache.size()).isEqualTo(3);
+    assertThat(cache.get("b")).isNull();
+    assertThat(cache.hitCount()).isEqualTo(1);
+    assertThat(cache.missCount()).isEqualTo(1);
+    assertThat(cache.evictionCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void testRemoveRelinksMovedEntry() {
+    CompactLruCache<Integer, Integer> cache = new CompactLruCache<>(10);
+    for (int i = 0; i < 5; i++) {
+      cache.put(i, i);
+    }
+    cache.get(4);
+    cache.get(0);
+    assertThat(cache.remove(1)).isEqualTo(1);
+    assertThat(cache.remove(1)).isNull();
+    assertThat(keysInOrder(cache)).containsExactly(2, 3, 4, 0).inOrder();
+    assertThat(cache.remove(0)).isEqualTo(0);
+    assertThat(cache.remove(2)).isEqualTo(2);
+    assertThat(keysInOrder(cache)).containsExactly(3, 4).inOrder();
+    assertThat(cache.eldestKey()).isEqualTo(3);
+    cache.clear();
+    assertThat(cache.isEmpty()).isTrue();
+    assertThat(cache.eldestKey()).isNull();
+  }
+
+  @Test
+  public void testMatchesAccessOrderedLinkedHashMap() {
+    int maxSize = 100;
+    LinkedHashMap<Integer, Integer> expected = new LinkedHashMap<Integer, Integer>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest) {
+        return size() > maxSize;
+      }
+    };
+    CompactLruCache<Integer, Integer> cache = new CompactLruCache<>(maxSize);
+    Random random = new Random(18);
+    for (int i = 0; i < 200000; i++) {
+      Integer key = random.nextInt(300);
+      switch (random.nextInt(4)) {
+        case 0:
+          assertThat(cache.remove(key)).isEqualTo(expected.remove(key));
+          break;
+        case 1:
+          assertThat(cache.get(key)).isEqualTo(expected.get(key));
+          break;
+        default:
+          assertThat(cache.put(key, i)).isEqualTo(expected.put(key, i));
+      }
+      assertThat(cache.size()).isEqualTo(expected.size());
+    }
+    assertThat(keysInOrder(cache)).containsExactlyElementsIn(expected.keySet()).inOrder();
+    for (Map.Entry<Integer, Integer> e : expected.entrySet()) {
+      assertThat(cache.peek(e.getKey())).isEqualTo(e.getValue());
+    }
+  }
+
+  @Test
+  public void testCapacityOne() {
+    CompactLruCache<Integer, Integer> cache = new CompactLruCache<>(1);
+    for (int i = 0; i < 1000; i++) {
+      cache.put(i, i);
+      assertThat(cache.get(i)).isEqualTo(i);
+      assertThat(cache.containsKey(i - 1)).isFalse();
+    }
+    assertThat(cache.size()).isEqualTo(1);
+    assertThat(cache.evictionCount()).isEqualTo(999);
+    cache.resetCounters();
+    assertThat(cache.hitCount()).isEqualTo(0);
+    assertThrows(IllegalArgumentException.class, () -> new CompactLruCache<>(0));
+  }
+}
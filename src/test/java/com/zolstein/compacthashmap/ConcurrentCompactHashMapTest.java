@@ -0,0 +1,110 @@
+package com.zolstein.compacthashmap;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class ConcurrentCompactHashMapTest {
+
+  @Test
+  public void testSingleThreaded() {
+    ConcurrentMap<String, Integer> map = new ConcurrentCompactHashMap<>(4);
+    assertThat(map).isEmpty();
+    assertThat(map.putIfAbsent("a", 1)).isNull();
+    assertThat(map.putIfAbsent("a", 2)).isEqualTo(1);
+    assertThat(map.replace("a", 2, 3)).isFalse();
+    assertThat(map.replace("a", 1, 3)).isTrue();
+    assertThat(map.replace("b", 1)).isNull();
+    assertThat(map.containsKey("b")).isFalse();
+    assertThat(map.merge("a", 10, Integer::sum)).isEqualTo(13);
+    assertThat(map.computeIfAbsent("b", k -> 5)).isEqualTo(5);
+    assertThat(map.computeIfAbsent("b", k -> 6)).isEqualTo(5);
+    assertThat(map.compute("b", (k, v) -> null)).isNull();
+    assertThat(map.remove("a", 12)).isFalse();
+    assertThat(map.remove("a", 13)).isTrue();
+    assertThat(map).isEmpty();
+    assertThrows(NullPointerException.class, () -> map.put("a", null));
+  }
+
+  @Test
+  public void testViewsAndEquality() {
+    ConcurrentMap<Integer, Integer> map = new ConcurrentCompactHashMap<>();
+    Map<Integer, Integer> expected = new HashMap<>();
+    for (int i = 0; i < 1000; i++) {
+      map.put(i, i * 2);
+      expected.put(i, i * 2);
+    }
+    assertThat(map).isEqualTo(expected);
+    assertThat(expected).isEqualTo(map);
+    assertThat(map.hashCode()).isEqualTo(expected.hashCode());
+    assertThat(map.keySet()).isEqualTo(expected.keySet());
+    assertThat(map.values()).containsExactlyElementsIn(expected.values());
+
+    for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+      entry.setValue(entry.getValue() + 1);
+    }
+    assertThat(map.get(10)).isEqualTo(21);
+
+    Iterator<Integer> keys = map.keySet().iterator();
+    while (keys.hasNext()) {
+      if (keys.next() % 2 == 0) {
+        keys.remove();
+      }
+    }
+    assertThat(map).hasSize(500);
+    assertThat(map.containsKey(2)).isFalse();
+    assertThat(map.containsValue(3)).isTrue();
+    assertThat(map.containsValue(5)).isFalse();
+  }
+
+  @Test
+  public void testConcurrentMerge() throws Exception {
+    ConcurrentMap<Integer, Integer> map = new ConcurrentCompactHashMap<>(8);
+    int threads = 8;
+    int perThread = 100000;
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> workers = new ArrayList<>();
+    AtomicInteger absentWins = new AtomicInteger();
+    for (int t = 0; t < threads; t++) {
+      Thread worker = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        for (int i = 0; i < perThread; i++) {
+          map.merge(i % 1000, 1, Integer::sum);
+          if (map.putIfAbsent(1000 + i % 5000, i) == null) {
+            absentWins.incrementAndGet();
+          }
+        }
+      });
+      worker.start();
+      workers.add(worker);
+    }
+    start.countDown();
+    // Weakly consistent iteration while writers are active must not throw
+    while (workers.get(0).isAlive()) {
+      for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+        assertThat(entry.getValue()).isNotNull();
+      }
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    for (int i = 0; i < 1000; i++) {
+      assertThat(map.get(i)).isEqualTo(threads * perThread / 1000);
+    }
+    assertThat(absentWins.get()).isEqualTo(5000);
+    assertThat(map).hasSize(6000);
+  }
+}
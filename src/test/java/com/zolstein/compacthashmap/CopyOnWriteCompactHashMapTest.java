@@ -0,0 +1,86 @@
+package com.zolstein.compacthashmap;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+public class CopyOnWriteCompactHashMapTest {
+
+  @Test
+  public void testBasicOperations() {
+    CopyOnWriteCompactHashMap<String, Integer> map = new CopyOnWriteCompactHashMap<>();
+    assertThat(map.put("a", 1)).isNull();
+    assertThat(map.put("a", 2)).isEqualTo(1);
+    assertThat(map.putIfAbsent("a", 3)).isEqualTo(2);
+    assertThat(map.merge("a", 5, Integer::sum)).isEqualTo(7);
+    assertThat(map.merge("b", 5, Integer::sum)).isEqualTo(5);
+    assertThat(map.computeIfAbsent("c", k -> 9)).isEqualTo(9);
+    assertThat(map.computeIfPresent("c", (k, v) -> null)).isNull();
+    assertThat(map.containsKey("c")).isFalse();
+    assertThat(map.remove("b", 4)).isFalse();
+    assertThat(map.remove("b")).isEqualTo(5);
+    assertThat(map).hasSize(1);
+    assertThat(map.toString()).isEqualTo("{a=7}");
+    assertThrows(NullPointerException.class, () -> map.put("a", null));
+  }
+
+  @Test
+  public void testSnapshotIsolation() {
+    CopyOnWriteCompactHashMap<Integer, Integer> map = new CopyOnWriteCompactHashMap<>();
+    for (int i = 0; i < 100; i++) {
+      map.put(i, i);
+    }
+    Map<Integer, Integer> before = map.snapshot();
+    Iterator<Integer> keys = map.keySet().iterator();
+    map.remove(0);
+    map.put(100, 100);
+    assertThat(before).hasSize(100);
+    assertThat(before).containsKey(0);
+    assertThat(before.containsKey(100)).isFalse();
+    assertThat(keys.next()).isEqualTo(0);
+    assertThrows(UnsupportedOperationException.class, keys::remove);
+    assertThat(map).hasSize(100);
+    assertThat(map.containsKey(0)).isFalse();
+  }
+
+  @Test
+  public void testBatchIsAtomic() throws Exception {
+    CopyOnWriteCompactHashMap<String, Integer> map = new CopyOnWriteCompactHashMap<>();
+    map.update(m -> {
+      m.put("x", 0);
+      m.put("y", 100);
+    });
+    AtomicBoolean done = new AtomicBoolean();
+    AtomicReference<String> failure = new AtomicReference<>();
+    Thread reader = new Thread(() -> {
+      while (!done.get()) {
+        Map<String, Integer> snapshot = map.snapshot();
+        if (snapshot.get("x") + snapshot.get("y") != 100) {
+          failure.set("Saw partial batch: " + snapshot);
+        }
+      }
+    });
+    reader.start();
+    for (int i = 1; i <= 10000; i++) {
+      int x = i % 100;
+      map.update(m -> {
+        m.put("x", x);
+        m.put("y", 100 - x);
+      });
+    }
+    done.set(true);
+    reader.join();
+    assertThat(failure.get()).isNull();
+
+    assertThrows(IllegalStateException.class, () -> map.update(m -> {
+      m.put("z", 1);
+      throw new IllegalStateException();
+    }));
+    assertThat(map.containsKey("z")).isFalse();
+  }
+}
@@ -0,0 +1,112 @@
+package com.zolstein.compacthashmap;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class FrozenCompactHashMapTest {
+
+  @Test
+  public void testEmptyAndSingleton() {
+    Map<String, String> empty = new CompactHashMap<String, String>().freeze();
+    assertThat(empty).isEmpty();
+    assertThat(empty.get("foo")).isNull();
+    assertThat(empty.containsKey("foo")).isFalse();
+
+    CompactHashMap<String, String> source = new CompactHashMap<>();
+    source.put("key", "value");
+    Map<String, String> frozen = source.freeze();
+    assertThat(frozen).hasSize(1);
+    assertThat(frozen.get("key")).isEqualTo("value");
+    assertThat(frozen.get("value")).isNull();
+    assertThat(frozen).isEqualTo(source);
+  }
+
+  @Test
+  public void testMatchesSourceAtManySizes() {
+    Random hasher = new Random();
+    for (int size : new int[] {2, 3, 7, 100, 127, 128, 1000, 40000, 100000}) {
+      CompactHashMap<Long, Integer> source = new CompactHashMap<>();
+      for (int i = 0; i < size; i++) {
+        hasher.setSeed(i);
+        source.put(hasher.nextLong(), i);
+      }
+      FrozenCompactHashMap<Long, Integer> frozen = source.freeze();
+      assertThat(frozen).hasSize(size);
+      for (int i = 0; i < size; i++) {
+        hasher.setSeed(i);
+        assertThat(frozen.get(hasher.nextLong())).isEqualTo(i);
+        hasher.setSeed(size + i);
+        assertThat(frozen.get(hasher.nextLong())).isNull();
+      }
+      assertThat(frozen).isEqualTo(source);
+      assertThat(frozen.hashCode()).isEqualTo(source.hashCode());
+    }
+  }
+
+  @Test
+  public void testPreservesOrder() {
+    CompactHashMap<String, Integer> source = new CompactHashMap<>();
+    for (int i = 0; i < 1000; i++) {
+      source.put(Integer.toString(i), i);
+    }
+    Iterator<Map.Entry<String, Integer>> frozen = source.freeze().entrySet().iterator();
+    for (Map.Entry<String, Integer> entry : source.entrySet()) {
+      assertThat(frozen.next()).isEqualTo(entry);
+    }
+    assertThat(frozen.hasNext()).isFalse();
+  }
+
+  @Test
+  public void testCollidingHashes() {
+    CompactHashMap<Colliding, Integer> source = new CompactHashMap<>();
+    for (int i = 0; i < 1000; i++) {
+      source.put(new Colliding(i), i);
+    }
+    Map<Colliding, Integer> frozen = source.freeze();
+    for (int i = 0; i < 1000; i++) {
+      assertThat(frozen.get(new Colliding(i))).isEqualTo(i);
+    }
+    assertThat(frozen.get(new Colliding(1000))).isNull();
+    assertThat(frozen).isEqualTo(new HashMap<>(source));
+  }
+
+  @Test
+  public void testImmutable() {
+    CompactHashMap<String, String> source = new CompactHashMap<>();
+    source.put("key", "value");
+    Map<String, String> frozen = source.freeze();
+    source.put("other", "value");
+    assertThat(frozen).hasSize(1);
+    assertThrows(UnsupportedOperationException.class, () -> frozen.put("a", "b"));
+    assertThrows(UnsupportedOperationException.class, () -> frozen.remove("key"));
+    assertThrows(UnsupportedOperationException.class, () -> frozen.merge("key", "b", String::concat));
+    assertThrows(UnsupportedOperationException.class, frozen::clear);
+    assertThrows(UnsupportedOperationException.class, () -> frozen.keySet().remove("key"));
+  }
+
+  private static class Colliding {
+
+    private final int i;
+
+    private Colliding(int i) {
+      this.i = i;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Colliding && ((Colliding) o).i == i;
+    }
+
+    @Override
+    public int hashCode() {
+      // Groups of 10 keys share a hash
+      return i / 10;
+    }
+  }
+}
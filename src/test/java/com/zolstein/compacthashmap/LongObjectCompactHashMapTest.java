@@ -0,0 +1,124 @@
+package com.zolstein.compacthashmap;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class LongObjectCompactHashMapTest {
+
+  @Test
+  public void testEmptyMap() {
+    LongObjectCompactHashMap<String> map = new LongObjectCompactHashMap<>();
+    assertThat(map.isEmpty()).isTrue();
+    assertThat(map.size()).isEqualTo(0);
+    assertThat(map.get(0L)).isNull();
+    assertThat(map.containsKey(0L)).isFalse();
+    assertThat(map.remove(0L)).isNull();
+  }
+
+  @Test
+  public void testOneElement() {
+    LongObjectCompactHashMap<String> map = new LongObjectCompactHashMap<>();
+    assertThat(map.put(42L, "value")).isNull();
+    assertThat(map.isEmpty()).isFalse();
+    assertThat(map.size()).isEqualTo(1);
+    assertThat(map.get(42L)).isEqualTo("value");
+    assertThat(map.containsKey(42L)).isTrue();
+    assertThat(map.get(43L)).isNull();
+    // Replace element
+    assertThat(map.put(42L, "new_value")).isEqualTo("value");
+    assertThat(map.size()).isEqualTo(1);
+    assertThat(map.get(42L)).isEqualTo("new_value");
+    // Remove element
+    assertThat(map.remove(42L)).isEqualTo("new_value");
+    assertThat(map.isEmpty()).isTrue();
+    assertThat(map.get(42L)).isNull();
+    assertThat(map.containsKey(42L)).isFalse();
+  }
+
+  @Test
+  public void testIteration() {
+    LongObjectCompactHashMap<String> map = new LongObjectCompactHashMap<>();
+    for (long i = 0; i < 50; i++) {
+      map.put(i, Long.toString(i));
+    }
+    Map<Long, String> seen = new HashMap<>();
+    map.forEach(seen::put);
+    assertThat(seen).hasSize(50);
+    assertThat(seen.get(42L)).isEqualTo("42");
+    assertThat(map.keysToArray()).hasLength(50);
+
+    LongObjectCompactHashMap.Cursor<String> cursor = map.cursor();
+    while (cursor.advance()) {
+      if (cursor.key() < 25) {
+        cursor.remove();
+      } else {
+        cursor.setValue(cursor.value() + "!");
+      }
+    }
+    assertThat(map.size()).isEqualTo(25);
+    assertThat(map.get(10L)).isNull();
+    assertThat(map.get(30L)).isEqualTo("30!");
+    // Slots vacated by removal no longer retain their values
+    Object[] values = ((LongObjectCompactHashMap<?>) map).values;
+    for (int i = map.size(); i < values.length; i++) {
+      assertThat(values[i]).isNull();
+    }
+
+    LongObjectCompactHashMap.Cursor<String> stale = map.cursor();
+    map.remove(30L);
+    assertThrows(ConcurrentModificationException.class, stale::advance);
+  }
+
+  @Test
+  public void testManyInsertsCollidingHashes() {
+    // Keys differing only in matching high and low words all hash to 0.
+    int maxSize = 10000;
+    LongObjectCompactHashMap<Integer> map = new LongObjectCompactHashMap<>();
+    for (int i = 1; i <= maxSize; i++) {
+      long key = ((long) i << 32) | i;
+      assertThat(map.put(key, i)).isNull();
+      assertThat(map.size()).isEqualTo(i);
+    }
+    for (int i = 1; i <= maxSize; i++) {
+      long key = ((long) i << 32) | i;
+      assertThat(map.get(key)).isEqualTo(i);
+    }
+    for (int i = 1; i <= maxSize; i++) {
+      long key = ((long) i << 32) | i;
+      assertThat(map.remove(key)).isEqualTo(i);
+      assertThat(map.containsKey(key)).isFalse();
+      assertThat(map.size()).isEqualTo(maxSize - i);
+    }
+  }
+
+  @Test
+  public void pseudoRandomTest() {
+    Random random = new Random(0x8765432101234567L);
+    Random hasher = new Random();
+    int sizeLimit = 100000;
+    LongObjectCompactHashMap<Integer> map = new LongObjectCompactHashMap<>();
+    Map<Long, Integer> expected = new HashMap<>();
+    for (int i = 0; i < 1000000; i++) {
+      int value = random.nextInt(sizeLimit);
+      hasher.setSeed(value);
+      long key = hasher.nextLong();
+      if (map.containsKey(key)) {
+        assertThat(map.remove(key)).isEqualTo(expected.remove(key));
+      } else {
+        assertThat(map.put(key, value)).isNull();
+        expected.put(key, value);
+        assertThat(map.get(key)).isEqualTo(value);
+      }
+      assertThat(map.size()).isEqualTo(expected.size());
+    }
+    for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+      assertThat(map.get(entry.getKey())).isEqualTo(entry.getValue());
+    }
+  }
+}
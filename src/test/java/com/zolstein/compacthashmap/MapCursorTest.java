@@ -0,0 +1,86 @@
+package com.zolstein.compacthashmap;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class MapCursorTest {
+
+  @Test
+  public void testEmptyMap() {
+    MapCursor<String, String> cursor = new CompactHashMap<String, String>().cursor();
+    assertThrows(IllegalStateException.class, cursor::key);
+    assertThat(cursor.advance()).isFalse();
+    assertThat(cursor.advance()).isFalse();
+    assertThrows(IllegalStateException.class, cursor::value);
+    assertThrows(IllegalStateException.class, cursor::remove);
+  }
+
+  @Test
+  public void testVisitsEntriesInOrder() {
+    CompactHashMap<Integer, String> map = new CompactHashMap<>();
+    for (int i = 0; i < 100; i++) {
+      map.put(i, Integer.toString(i));
+    }
+    List<Integer> keys = new ArrayList<>();
+    MapCursor<Integer, String> cursor = map.cursor();
+    while (cursor.advance()) {
+      assertThat(cursor.value()).isEqualTo(Integer.toString(cursor.key()));
+      keys.add(cursor.key());
+    }
+    assertThat(keys).containsExactlyElementsIn(map.keySet()).inOrder();
+  }
+
+  @Test
+  public void testSetValue() {
+    CompactHashMap<Integer, Integer> map = new CompactHashMap<>();
+    for (int i = 0; i < 10; i++) {
+      map.put(i, i);
+    }
+    MapCursor<Integer, Integer> cursor = map.cursor();
+    while (cursor.advance()) {
+      assertThat(cursor.setValue(-cursor.value())).isEqualTo(cursor.key());
+    }
+    for (int i = 0; i < 10; i++) {
+      assertThat(map.get(i)).isEqualTo(-i);
+    }
+  }
+
+  @Test
+  public void testRemoveVisitsEveryEntryOnce() {
+    CompactHashMap<Integer, Integer> map = new CompactHashMap<>();
+    for (int i = 0; i < 1000; i++) {
+      map.put(i, i);
+    }
+    int visited = 0;
+    MapCursor<Integer, Integer> cursor = map.cursor();
+    while (cursor.advance()) {
+      visited++;
+      if (cursor.key() % 3 != 0) {
+        cursor.remove();
+        assertThrows(IllegalStateException.class, cursor::key);
+        assertThrows(IllegalStateException.class, cursor::remove);
+      }
+    }
+    assertThat(visited).isEqualTo(1000);
+    assertThat(map).hasSize(334);
+    for (int key : map.keySet()) {
+      assertThat(key % 3).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void testConcurrentModification() {
+    CompactHashMap<Integer, Integer> map = new CompactHashMap<>();
+    map.put(1, 1);
+    map.put(2, 2);
+    MapCursor<Integer, Integer> cursor = map.cursor();
+    assertThat(cursor.advance()).isTrue();
+    map.put(3, 3);
+    assertThrows(ConcurrentModificationException.class, cursor::advance);
+  }
+}
@@ -0,0 +1,115 @@
+package com.zolstein.compacthashmap;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MappedCompactHashMapTest {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  public void testBasicOperations() throws IOException {
+    try (MappedCompactHashMap map = MappedCompactHashMap.create(dir.resolve("map"), 8, 8)) {
+      assertThat(map.isEmpty()).isTrue();
+      assertThat(map.put(1L, 10L)).isTrue();
+      assertThat(map.put(1L, 11L)).isFalse();
+      assertThat(map.get(1L, -1L)).isEqualTo(11L);
+      assertThat(map.get(2L, -1L)).isEqualTo(-1L);
+      assertThat(map.containsKey(2L)).isFalse();
+      assertThat(map.remove(1L)).isTrue();
+      assertThat(map.remove(1L)).isFalse();
+      assertThat(map.isEmpty()).isTrue();
+    }
+  }
+
+  @Test
+  public void testByteRecords() throws IOException {
+    try (MappedCompactHashMap map = MappedCompactHashMap.create(dir.resolve("map"), 3, 5)) {
+      byte[] key = {1, 2, 3};
+      assertThat(map.get(key)).isNull();
+      assertThat(map.put(key, new byte[] {9, 8, 7, 6, 5})).isTrue();
+      assertThat(map.get(new byte[] {1, 2, 3})).isEqualTo(new byte[] {9, 8, 7, 6, 5});
+      assertThat(map.containsKey(new byte[] {1, 2, 4})).isFalse();
+      assertThrows(IllegalArgumentException.class, () -> map.put(new byte[2], new byte[5]));
+      assertThrows(IllegalStateException.class, () -> map.get(1L, 0L));
+    }
+  }
+
+  @Test
+  public void testLongAndByteAccessorsAgree() throws IOException {
+    try (MappedCompactHashMap map = MappedCompactHashMap.create(dir.resolve("map"), 8, 8)) {
+      map.put(0x0102030405060708L, 42L);
+      byte[] value = map.get(new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+      assertThat(value).isEqualTo(new byte[] {0, 0, 0, 0, 0, 0, 0, 42});
+    }
+  }
+
+  @Test
+  public void testReopen() throws IOException {
+    Path path = dir.resolve("map");
+    try (MappedCompactHashMap map = MappedCompactHashMap.create(path, 8, 8)) {
+      for (long i = 0; i < 100000; i++) {
+        map.put(i, i * 3);
+      }
+      for (long i = 0; i < 100000; i += 2) {
+        map.remove(i);
+      }
+    }
+    try (MappedCompactHashMap map = MappedCompactHashMap.open(path)) {
+      assertThat(map.size()).isEqualTo(50000);
+      assertThat(map.get(7L, -1L)).isEqualTo(21L);
+      assertThat(map.containsKey(8L)).isFalse();
+      map.put(8L, 0L);
+    }
+    try (MappedCompactHashMap map = MappedCompactHashMap.open(path)) {
+      assertThat(map.size()).isEqualTo(50001);
+      assertThat(map.get(8L, -1L)).isEqualTo(0L);
+    }
+  }
+
+  @Test
+  public void testOpenRejectsOtherFiles() throws IOException {
+    Path path = dir.resolve("other");
+    Files.write(path, new byte[100]);
+    assertThrows(IOException.class, () -> MappedCompactHashMap.open(path));
+  }
+
+  @Test
+  public void testUseAfterClose() throws IOException {
+    MappedCompactHashMap map = MappedCompactHashMap.create(dir.resolve("map"), 8, 8);
+    map.close();
+    map.close();
+    assertThrows(IllegalStateException.class, map::size);
+  }
+
+  @Test
+  public void pseudoRandomTest() throws IOException {
+    Random random = new Random(0x8765432101234567L);
+    Map<Long, Long> expected = new HashMap<>();
+    try (MappedCompactHashMap map = MappedCompactHashMap.create(dir.resolve("map"), 8, 8)) {
+      for (int i = 0; i < 200000; i++) {
+        long key = random.nextInt(20000);
+        if (random.nextBoolean()) {
+          long value = random.nextLong();
+          assertThat(map.put(key, value)).isEqualTo(expected.put(key, value) == null);
+        } else {
+          assertThat(map.remove(key)).isEqualTo(expected.remove(key) != null);
+        }
+        assertThat(map.size()).isEqualTo(expected.size());
+      }
+      for (Map.Entry<Long, Long> e : expected.entrySet()) {
+        assertThat(map.get(e.getKey(), 0L)).isEqualTo(e.getValue());
+      }
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package com.zolstein.compacthashmap;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class OffHeapCompactHashMapTest {
+
+  @Test
+  public void testBasicOperations() {
+    try (OffHeapCompactHashMap<String, String> map = new OffHeapCompactHashMap<>()) {
+      assertThat(map).isEmpty();
+      assertThat(map.put("key", "value")).isNull();
+      assertThat(map.put("key", "new_value")).isEqualTo("value");
+      assertThat(map.get("key")).isEqualTo("new_value");
+      assertThat(map.containsKey("value")).isFalse();
+      assertThat(map.remove("key")).isEqualTo("new_value");
+      assertThat(map).isEmpty();
+    }
+  }
+
+  @Test
+  public void testIterationAndRemove() {
+    try (OffHeapCompactHashMap<Integer, Integer> map = new OffHeapCompactHashMap<>()) {
+      for (int i = 0; i < 1000; i++) {
+        map.put(i, i);
+      }
+      Iterator<Map.Entry<Integer, Integer>> iterator = map.entrySet().iterator();
+      int expected = 0;
+      while (iterator.hasNext()) {
+        Map.Entry<Integer, Integer> entry = iterator.next();
+        if (entry.getKey() % 2 == 0) {
+          iterator.remove();
+        } else {
+          entry.setValue(-entry.getValue());
+        }
+        expected++;
+      }
+      assertThat(expected).isEqualTo(1000);
+      assertThat(map).hasSize(500);
+      assertThat(map.get(3)).isEqualTo(-3);
+      assertThat(map.containsKey(4)).isFalse();
+    }
+  }
+
+  @Test
+  public void pseudoRandomTest() {
+    Random random = new Random(0x8765432101234567L);
+    Random hasher = new Random();
+    Map<Long, Integer> expected = new HashMap<>();
+    try (OffHeapCompactHashMap<Long, Integer> map = new OffHeapCompactHashMap<>()) {
+      for (int i = 0; i < 1000000; i++) {
+        int value = random.nextInt(100000);
+        hasher.setSeed(value);
+        long key = hasher.nextLong();
+        if (map.containsKey(key)) {
+          assertThat(map.remove(key)).isEqualTo(expected.remove(key));
+        } else {
+          map.put(key, value);
+          expected.put(key, value);
+        }
+      }
+      assertThat(map).isEqualTo(expected);
+      assertThat(map.offHeapBytes()).isGreaterThan(4L * map.size());
+    }
+  }
+
+  @Test
+  public void testUseAfterClose() {
+    OffHeapCompactHashMap<String, String> map = new OffHeapCompactHashMap<>();
+    map.put("key", "value");
+    map.close();
+    map.close();
+    assertThrows(IllegalStateException.class, () -> map.get("key"));
+    assertThrows(IllegalStateException.class, () -> map.put("key", "value"));
+    assertThrows(IllegalStateException.class, map::size);
+    assertThrows(IllegalStateException.class, map::clear);
+  }
+}
@@ -0,0 +1,172 @@
+package com.zolstein.compacthashmap;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class PrimitiveCompactHashMapTest {
+
+  @Test
+  public void testIntIntNoValue() {
+    IntIntCompactHashMap map = new IntIntCompactHashMap(-1);
+    assertThat(map.noValue()).isEqualTo(-1);
+    assertThat(map.get(7)).isEqualTo(-1);
+    assertThat(map.getOrDefault(7, 100)).isEqualTo(100);
+    assertThat(map.put(7, 0)).isEqualTo(-1);
+    assertThat(map.get(7)).isEqualTo(0);
+    assertThat(map.getOrDefault(7, 100)).isEqualTo(0);
+    assertThat(map.put(7, 3)).isEqualTo(0);
+    assertThat(map.remove(7)).isEqualTo(3);
+    assertThat(map.remove(7)).isEqualTo(-1);
+    assertThat(map.isEmpty()).isTrue();
+
+    // A stored sentinel is still distinguishable through containsKey
+    map.put(8, -1);
+    assertThat(map.get(8)).isEqualTo(-1);
+    assertThat(map.containsKey(8)).isTrue();
+    assertThat(map.containsKey(9)).isFalse();
+  }
+
+  @Test
+  public void testDefaultNoValue() {
+    assertThat(new IntIntCompactHashMap().get(1)).isEqualTo(0);
+    assertThat(new LongLongCompactHashMap().get(1L)).isEqualTo(0L);
+    assertThat(new LongIntCompactHashMap().get(1L)).isEqualTo(0);
+  }
+
+  @Test
+  public void testIntIntIteration() {
+    IntIntCompactHashMap map = new IntIntCompactHashMap();
+    for (int i = 0; i < 100; i++) {
+      map.put(i, i * i);
+    }
+    Map<Integer, Integer> seen = new HashMap<>();
+    map.forEach((key, value) -> seen.put(key, value));
+    assertThat(seen).hasSize(100);
+    assertThat(seen.get(9)).isEqualTo(81);
+    assertThat(map.keysToArray()).hasLength(100);
+    assertThat(map.valuesToArray()[7]).isEqualTo(49);
+
+    // Remove the odd keys and double the rest through the cursor
+    IntIntCompactHashMap.Cursor cursor = map.cursor();
+    int visited = 0;
+    while (cursor.advance()) {
+      visited++;
+      if (cursor.key() % 2 == 1) {
+        cursor.remove();
+      } else {
+        assertThat(cursor.setValue(cursor.value() * 2)).isEqualTo(cursor.key() * cursor.key());
+      }
+    }
+    assertThat(visited).isEqualTo(100);
+    assertThat(map.size()).isEqualTo(50);
+    for (int i = 0; i < 100; i++) {
+      assertThat(map.containsKey(i)).isEqualTo(i % 2 == 0);
+      assertThat(map.get(i)).isEqualTo(i % 2 == 0 ? 2 * i * i : 0);
+    }
+  }
+
+  @Test
+  public void testIterationDetectsModification() {
+    LongLongCompactHashMap map = new LongLongCompactHashMap();
+    map.put(1L, 1L);
+    map.put(2L, 2L);
+    LongLongCompactHashMap.Cursor cursor = map.cursor();
+    assertThat(cursor.advance()).isTrue();
+    map.put(3L, 3L);
+    assertThrows(ConcurrentModificationException.class, cursor::advance);
+    assertThrows(
+        ConcurrentModificationException.class, () -> map.forEach((key, value) -> map.remove(key)));
+
+    LongIntCompactHashMap longInt = new LongIntCompactHashMap();
+    LongIntCompactHashMap.Cursor empty = longInt.cursor();
+    assertThat(empty.advance()).isFalse();
+    assertThrows(IllegalStateException.class, empty::key);
+    assertThrows(IllegalStateException.class, empty::remove);
+  }
+
+  @Test
+  public void testIntIntCounter() {
+    IntIntCompactHashMap map = new IntIntCompactHashMap();
+    for (int i = 0; i < 100000; i++) {
+      int key = i % 1000;
+      map.put(key, map.get(key) + 1);
+    }
+    assertThat(map.size()).isEqualTo(1000);
+    for (int key = 0; key < 1000; key++) {
+      assertThat(map.get(key)).isEqualTo(100);
+    }
+  }
+
+  @Test
+  public void pseudoRandomIntInt() {
+    Random random = new Random(0x8765432101234567L);
+    IntIntCompactHashMap map = new IntIntCompactHashMap(Integer.MIN_VALUE);
+    Map<Integer, Integer> expected = new HashMap<>();
+    for (int i = 0; i < 1000000; i++) {
+      int key = random.nextInt(100000) * 31;
+      if (random.nextBoolean()) {
+        Integer old = expected.remove(key);
+        assertThat(map.remove(key)).isEqualTo(old == null ? Integer.MIN_VALUE : old);
+      } else {
+        Integer old = expected.put(key, i);
+        assertThat(map.put(key, i)).isEqualTo(old == null ? Integer.MIN_VALUE : old);
+      }
+      assertThat(map.size()).isEqualTo(expected.size());
+    }
+    for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+      assertThat(map.get(entry.getKey())).isEqualTo(entry.getValue());
+    }
+  }
+
+  @Test
+  public void pseudoRandomLongLong() {
+    Random random = new Random(0x8765432101234567L);
+    Random hasher = new Random();
+    LongLongCompactHashMap map = new LongLongCompactHashMap(-1L);
+    Map<Long, Long> expected = new HashMap<>();
+    for (int i = 0; i < 1000000; i++) {
+      hasher.setSeed(random.nextInt(100000));
+      long key = hasher.nextLong();
+      if (random.nextBoolean()) {
+        Long old = expected.remove(key);
+        assertThat(map.remove(key)).isEqualTo(old == null ? -1L : old);
+      } else {
+        Long old = expected.put(key, (long) i);
+        assertThat(map.put(key, i)).isEqualTo(old == null ? -1L : old);
+      }
+      assertThat(map.size()).isEqualTo(expected.size());
+    }
+    for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+      assertThat(map.get(entry.getKey())).isEqualTo(entry.getValue());
+    }
+  }
+
+  @Test
+  public void pseudoRandomLongInt() {
+    Random random = new Random(0x8765432101234567L);
+    Random hasher = new Random();
+    LongIntCompactHashMap map = new LongIntCompactHashMap(-1);
+    Map<Long, Integer> expected = new HashMap<>();
+    for (int i = 0; i < 1000000; i++) {
+      hasher.setSeed(random.nextInt(100000));
+      long key = hasher.nextLong();
+      if (random.nextBoolean()) {
+        Integer old = expected.remove(key);
+        assertThat(map.remove(key)).isEqualTo(old == null ? -1 : old);
+      } else {
+        Integer old = expected.put(key, i);
+        assertThat(map.put(key, i)).isEqualTo(old == null ? -1 : old);
+      }
+      assertThat(map.size()).isEqualTo(expected.size());
+    }
+    for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+      assertThat(map.getOrDefault(entry.getKey(), -2)).isEqualTo(entry.getValue());
+    }
+  }
+}